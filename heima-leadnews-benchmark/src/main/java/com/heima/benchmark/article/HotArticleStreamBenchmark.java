@@ -0,0 +1,238 @@
+package com.heima.benchmark.article;
+
+import com.alibaba.fastjson.JSON;
+import com.heima.article.config.HotArticleStreamProperties;
+import com.heima.article.stream.HotArticleStreamHandler;
+import com.heima.common.constants.HotArticleConstants;
+import com.heima.model.mess.ArticleVisitStreamMess;
+import com.heima.model.mess.UpdateArticleMess;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.state.WindowStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热点文章stream拓扑单线程的处理能力，结果为每秒处理的行为消息数量
+ * string:原来的实现，聚合值为字符串，消息没有key，按文章id重新分区，不包含原来每条消息的System.out和info日志
+ * binary:ArticleBehaviorCount和二进制Serde，消息以文章id为key，不重新分区，每次更新都发送
+ * binary-final:同binary，每个窗口关闭后只发送一次
+ * 结束时输出每条消息平均发送的更新数量，即下游写入的放大倍数
+ * 都使用rocksdb窗口存储和默认的缓存配置，与线上一致，例如：
+ * -p topology=binary -p articles=1000
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotArticleStreamBenchmark {
+
+    /**
+     * 每次调用输入的消息数量
+     */
+    private static final int BATCH = 1000;
+
+    @Param({"string", "binary", "binary-final"})
+    public String topology;
+
+    /**
+     * 参与的文章数量，决定窗口存储中的key数量
+     */
+    @Param({"10000"})
+    public int articles;
+
+    private TopologyTestDriver driver;
+
+    private TestInputTopic<String, String> input;
+
+    private TestOutputTopic<String, String> output;
+
+    private String[] keys;
+
+    private String[] values;
+
+    private int next;
+
+    private long events;
+
+    private long updates;
+
+    @Setup
+    public void setup() throws IOException {
+        StreamsBuilder builder = new StreamsBuilder();
+        boolean keyed = topology.startsWith("binary");
+        if (keyed) {
+            HotArticleStreamProperties properties = new HotArticleStreamProperties();
+            properties.setEmitOnClose("binary-final".equals(topology));
+            HotArticleStreamHandler handler = new HotArticleStreamHandler();
+            setField(handler, "hotArticleStreamProperties", properties);
+            setField(handler, "meterRegistry", new SimpleMeterRegistry());
+            handler.kStream(builder);
+        } else {
+            stringTopology(builder);
+        }
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "hot-article-stream-benchmark");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("kafka-streams").toString());
+        props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        driver = new TopologyTestDriver(builder.build(), props);
+        //每条消息时间加1毫秒，窗口随输入滚动
+        input = driver.createInputTopic(HotArticleConstants.HOT_ARTICLE_SCORE_TOPIC,
+                new StringSerializer(), new StringSerializer(), Instant.now(), Duration.ofMillis(1));
+        output = driver.createOutputTopic(HotArticleConstants.HOT_ARTICLE_INCR_HANDLE_TOPIC,
+                new StringDeserializer(), new StringDeserializer());
+
+        //预先生成消息，不计入处理时间
+        Random random = new Random(1);
+        UpdateArticleMess.UpdateArticleType[] types = UpdateArticleMess.UpdateArticleType.values();
+        keys = new String[BATCH * 16];
+        values = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            UpdateArticleMess mess = new UpdateArticleMess();
+            mess.setArticleId(1500000000000000000L + random.nextInt(articles));
+            mess.setType(types[random.nextInt(types.length)]);
+            mess.setAdd(1);
+            keys[i] = keyed ? mess.getArticleId().toString() : null;
+            values[i] = JSON.toJSONString(mess);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        driver.close();
+        System.out.printf("%ntopology=%s events=%d updates=%d updates/event=%.3f%n",
+                topology, events, updates, (double) updates / Math.max(1, events));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int process() {
+        for (int i = 0; i < BATCH; i++) {
+            input.pipeInput(keys[next], values[next]);
+            next = (next + 1) % keys.length;
+        }
+        events += BATCH;
+        //丢弃输出，避免堆积
+        int emitted = output.readValuesToList().size();
+        updates += emitted;
+        return emitted;
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    /**
+     * 原来的拓扑，只去掉了System.out和info日志
+     */
+    private static void stringTopology(StreamsBuilder streamsBuilder) {
+        KStream<String, String> stream = streamsBuilder.stream(HotArticleConstants.HOT_ARTICLE_SCORE_TOPIC);
+        stream.map((key, value) -> {
+            UpdateArticleMess mess = JSON.parseObject(value, UpdateArticleMess.class);
+            return new KeyValue<>(mess.getArticleId().toString(), mess.getType().name() + ":" + mess.getAdd());
+        })
+                .groupBy((key, value) -> key)
+                .windowedBy(TimeWindows.of(Duration.ofSeconds(10)))
+                .aggregate(() -> "COLLECTION:0,COMMENT:0,LIKES:0,VIEWS:0", (key, value, aggValue) -> {
+                    int col = 0, com = 0, lik = 0, vie = 0;
+                    for (String agg : aggValue.split(",")) {
+                        String[] split = agg.split(":");
+                        switch (UpdateArticleMess.UpdateArticleType.valueOf(split[0])) {
+                            case COLLECTION:
+                                col = Integer.parseInt(split[1]);
+                                break;
+                            case COMMENT:
+                                com = Integer.parseInt(split[1]);
+                                break;
+                            case LIKES:
+                                lik = Integer.parseInt(split[1]);
+                                break;
+                            case VIEWS:
+                                vie = Integer.parseInt(split[1]);
+                                break;
+                        }
+                    }
+                    String[] valAry = value.split(":");
+                    switch (UpdateArticleMess.UpdateArticleType.valueOf(valAry[0])) {
+                        case COLLECTION:
+                            col += Integer.parseInt(valAry[1]);
+                            break;
+                        case COMMENT:
+                            com += Integer.parseInt(valAry[1]);
+                            break;
+                        case LIKES:
+                            lik += Integer.parseInt(valAry[1]);
+                            break;
+                        case VIEWS:
+                            vie += Integer.parseInt(valAry[1]);
+                            break;
+                    }
+                    return String.format("COLLECTION:%d,COMMENT:%d,LIKES:%d,VIEWS:%d", col, com, lik, vie);
+                }, Materialized.<String, String, WindowStore<Bytes, byte[]>>as("hot-atricle-stream-count-001"))
+                .toStream()
+                .map((key, value) -> new KeyValue<>(key.key(), formatObj(key.key(), value)))
+                .to(HotArticleConstants.HOT_ARTICLE_INCR_HANDLE_TOPIC);
+    }
+
+    private static String formatObj(String articleId, String value) {
+        ArticleVisitStreamMess mess = new ArticleVisitStreamMess();
+        mess.setArticleId(Long.valueOf(articleId));
+        for (String val : value.split(",")) {
+            String[] split = val.split(":");
+            switch (UpdateArticleMess.UpdateArticleType.valueOf(split[0])) {
+                case COLLECTION:
+                    mess.setCollect(Integer.parseInt(split[1]));
+                    break;
+                case COMMENT:
+                    mess.setComment(Integer.parseInt(split[1]));
+                    break;
+                case LIKES:
+                    mess.setLike(Integer.parseInt(split[1]));
+                    break;
+                case VIEWS:
+                    mess.setView(Integer.parseInt(split[1]));
+                    break;
+            }
+        }
+        return JSON.toJSONString(mess);
+    }
+}
@@ -0,0 +1,176 @@
+package com.heima.benchmark.article;
+
+import com.alibaba.fastjson.JSON;
+import com.github.fppt.jedismock.RedisServer;
+import com.heima.article.hot.ChannelTopK;
+import com.heima.article.hot.HotScoreModel;
+import com.heima.article.hot.HotScoreModels;
+import com.heima.article.hot.WeightedSumScoreModel;
+import com.heima.common.constants.ArticleConstants;
+import com.heima.common.redis.CacheService;
+import com.heima.model.article.pojos.ApArticle;
+import com.heima.model.article.vos.HotArticleVo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热点排行榜的刷新开销，结果为每次刷新的耗时
+ * full:每晚的全量计算，所有文章计算分值后整体替换排行榜，不包含从数据库读取文章的时间
+ * incremental:changed篇文章的行为数据变化后，一次脚本调用更新它们在频道和推荐中的排名
+ * gravity模型的分值不随时间变化，所以只需要增量更新，例如：
+ * -p articles=100000 -p model=gravity
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotRankBenchmark {
+
+    private static final int CHANNELS = 8;
+
+    @Param({"10000", "100000"})
+    public int articles;
+
+    /**
+     * 每次增量更新的文章数量，与消费者每批合并后的文章数量相当
+     */
+    @Param({"100"})
+    public int changed;
+
+    @Param({"sum", "gravity"})
+    public String model;
+
+    private RedisServer redisServer;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private CacheService cacheService;
+
+    private HotScoreModel scoreModel;
+
+    private List<ApArticle> articleList;
+
+    @Setup
+    public void setup() throws IOException {
+        redisServer = RedisServer.newRedisServer();
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redisServer.getHost(), redisServer.getBindPort()));
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        cacheService = new CacheService();
+        //不启动文章服务，直接注入redis连接
+        Field field = ReflectionUtils.findField(CacheService.class, "stringRedisTemplate");
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, cacheService, stringRedisTemplate);
+
+        scoreModel = HotScoreModels.create(model, 24);
+        //最近5天发布的文章
+        Random random = new Random(1);
+        long now = System.currentTimeMillis();
+        articleList = new ArrayList<>(articles);
+        for (int i = 0; i < articles; i++) {
+            ApArticle apArticle = new ApArticle();
+            apArticle.setId(1500000000000000000L + i);
+            apArticle.setChannelId(random.nextInt(CHANNELS) + 1);
+            apArticle.setTitle("article-" + i);
+            apArticle.setPublishTime(new Date(now - (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(5))));
+            apArticle.setViews(random.nextInt(10000));
+            apArticle.setLikes(random.nextInt(1000));
+            apArticle.setComment(random.nextInt(100));
+            apArticle.setCollection(random.nextInt(100));
+            articleList.add(apArticle);
+        }
+        fullRecompute();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Benchmark
+    public ChannelTopK fullRecompute() {
+        ChannelTopK topK = new ChannelTopK(ArticleConstants.HOT_ARTICLE_SIZE);
+        for (ApArticle apArticle : articleList) {
+            double score = scoreModel.score(apArticle);
+            topK.offer(apArticle, score, score);
+        }
+        Map<String, Set<ZSetOperations.TypedTuple<String>>> rankings = new HashMap<>();
+        Map<String, String> cards = new HashMap<>();
+        for (int channelId = 1; channelId <= CHANNELS; channelId++) {
+            rankings.put(ArticleConstants.HOT_ARTICLE_RANK + channelId, rank(topK.top(channelId), cards));
+        }
+        rankings.put(ArticleConstants.HOT_ARTICLE_RANK + ArticleConstants.DEFAULT_TAG, rank(topK.topAll(), cards));
+        cacheService.zReplaceWithHash(rankings, ArticleConstants.HOT_ARTICLE_CARD, cards);
+        return topK;
+    }
+
+    @Benchmark
+    public long incrementalRefresh() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Set<ZSetOperations.TypedTuple<String>>> rankings = new HashMap<>();
+        Map<String, String> cards = new HashMap<>();
+        for (int i = 0; i < changed; i++) {
+            ApArticle apArticle = articleList.get(random.nextInt(articleList.size()));
+            apArticle.setViews(apArticle.getViews() + 1);
+            double score = scoreModel.score(apArticle);
+            String id = apArticle.getId().toString();
+            cards.put(id, card(apArticle));
+            ZSetOperations.TypedTuple<String> tuple = new DefaultTypedTuple<>(id, score);
+            rankings.computeIfAbsent(ArticleConstants.HOT_ARTICLE_RANK + apArticle.getChannelId(), k -> new HashSet<>()).add(tuple);
+            rankings.computeIfAbsent(ArticleConstants.HOT_ARTICLE_RANK + ArticleConstants.DEFAULT_TAG, k -> new HashSet<>()).add(tuple);
+        }
+        return cacheService.zAddTopNWithHash(rankings, ArticleConstants.HOT_ARTICLE_CARD, cards, ArticleConstants.HOT_ARTICLE_SIZE);
+    }
+
+    private Set<ZSetOperations.TypedTuple<String>> rank(List<ChannelTopK.Scored> scoredList, Map<String, String> cards) {
+        Set<ZSetOperations.TypedTuple<String>> ranking = new HashSet<>();
+        for (ChannelTopK.Scored scored : scoredList) {
+            String id = scored.getArticle().getId().toString();
+            ranking.add(new DefaultTypedTuple<>(id, scored.getScore()));
+            cards.computeIfAbsent(id, k -> card(scored.getArticle()));
+        }
+        return ranking;
+    }
+
+    private String card(ApArticle apArticle) {
+        HotArticleVo hotArticleVo = new HotArticleVo();
+        BeanUtils.copyProperties(apArticle, hotArticleVo);
+        hotArticleVo.setScore(WeightedSumScoreModel.weighted(apArticle));
+        return JSON.toJSONString(hotArticleVo);
+    }
+}
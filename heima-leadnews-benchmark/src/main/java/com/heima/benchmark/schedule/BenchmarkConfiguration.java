@@ -0,0 +1,32 @@
+package com.heima.benchmark.schedule;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * 基准测试环境的额外配置
+ */
+@Configuration
+public class BenchmarkConfiguration {
+
+    /**
+     * 数据源换成h2可以接受的fetchSize
+     *
+     * @return
+     */
+    @Bean
+    public static BeanPostProcessor streamingFetchSizeAdapter() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof StreamingFetchSizeDataSource)) {
+                    return new StreamingFetchSizeDataSource((DataSource) bean);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,245 @@
+package com.heima.benchmark.schedule;
+
+import com.alibaba.fastjson.JSON;
+import com.heima.model.common.enums.TaskTypeEnum;
+import com.heima.model.schedule.dtos.Task;
+import com.heima.schedule.service.TaskService;
+import com.heima.schedule.shard.TaskShardRouter;
+import com.heima.schedule.store.TaskQueueStore;
+import com.heima.utils.common.TaskCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 延迟任务服务热点操作的吞吐量
+ * 通过store、shards、addBatchSize、codec比较不同的队列存储、分片数量、批量写入配置和任务编码，例如：
+ * -p store=memory -p shards=1,4
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScheduleBenchmark {
+
+    /**
+     * 批量操作每次的任务数量
+     */
+    private static final int BATCH = 100;
+
+    /**
+     * 添加的任务在1分钟后执行，会写入future
+     */
+    private static final long FUTURE_DELAY = 60 * 1000;
+
+    private static final TaskTypeEnum TASK_TYPE = TaskTypeEnum.NEWS_SCAN_TIME;
+
+    @Param({"redis", "memory"})
+    public String store;
+
+    @Param({"1", "4"})
+    public int shards;
+
+    @Param({"500"})
+    public int addBatchSize;
+
+    @Param({"2"})
+    public long addLingerMs;
+
+    /**
+     * 任务数据的编码  binary:TaskCodec  json:fastjson
+     */
+    @Param({"binary", "json"})
+    public String codec;
+
+    /**
+     * 任务参数的大小
+     */
+    @Param({"64"})
+    public int parameterBytes;
+
+    private ScheduleBenchmarkContext context;
+
+    private TaskService taskService;
+
+    private TaskQueueStore taskQueueStore;
+
+    private TaskShardRouter taskShardRouter;
+
+    private byte[] parameters;
+
+    /**
+     * 直接写入队列的任务id，不与数据库中的任务id冲突
+     */
+    private final AtomicLong seededId = new AtomicLong(Long.MAX_VALUE / 2);
+
+    /**
+     * 等待取消的任务id
+     */
+    private final ConcurrentLinkedQueue<Long> cancellable = new ConcurrentLinkedQueue<>();
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put("schedule.store.type", store);
+        overrides.put("schedule.shard.count", shards);
+        overrides.put("schedule.add.batch-size", addBatchSize);
+        overrides.put("schedule.add.linger-ms", addLingerMs);
+        overrides.put("schedule.store.codec", codec);
+        context = new ScheduleBenchmarkContext(overrides);
+        taskService = context.getBean(TaskService.class);
+        taskQueueStore = context.getBean(TaskQueueStore.class);
+        taskShardRouter = context.getBean(TaskShardRouter.class);
+        parameters = new byte[parameterBytes];
+        ThreadLocalRandom.current().nextBytes(parameters);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    /**
+     * 每轮开始前准备一批待取消的任务
+     */
+    @Setup(Level.Iteration)
+    public void prepareCancel() {
+        refillCancellable();
+    }
+
+    /**
+     * 每轮结束后清空队列，避免队列长度影响下一轮
+     */
+    @TearDown(Level.Iteration)
+    public void clearQueue() {
+        taskQueueStore.clear();
+        cancellable.clear();
+    }
+
+    @Benchmark
+    public long addTask() {
+        return taskService.addTask(task(System.currentTimeMillis() + FUTURE_DELAY));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<Long> addTasks() {
+        long executeTime = System.currentTimeMillis() + FUTURE_DELAY;
+        List<Task> tasks = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            tasks.add(task(executeTime));
+        }
+        return taskService.addTasks(tasks);
+    }
+
+    /**
+     * 写入一个可以拉取的任务再拉取，包含写入的开销
+     *
+     * @return
+     */
+    @Benchmark
+    public Task pollRoundTrip() {
+        seedReady();
+        return taskService.poll(TASK_TYPE.getTaskType(), TASK_TYPE.getPriority());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<Task> pollBatchRoundTrip() {
+        for (int i = 0; i < BATCH; i++) {
+            seedReady();
+        }
+        return taskService.poll(TASK_TYPE.getTaskType(), TASK_TYPE.getPriority(), BATCH);
+    }
+
+    @Benchmark
+    public boolean cancelTask() {
+        Long taskId = cancellable.poll();
+        while (taskId == null) {
+            refillCancellable();
+            taskId = cancellable.poll();
+        }
+        return taskService.cancelTask(taskId);
+    }
+
+    /**
+     * 写入一批到期的future任务，再把所有分片中到期的任务移动到ready
+     * refresh()加锁后不释放，锁过期前重复调用不会执行，所以这里直接调用它使用的migrateDue
+     *
+     * @return
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long refreshRoundTrip() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < BATCH; i++) {
+            long taskId = seededId.incrementAndGet();
+            Task task = task(now - 1);
+            task.setTaskId(taskId);
+            taskQueueStore.addFuture(queueKey(taskId), String.valueOf(taskId), encode(task), task.getExecuteTime());
+        }
+        long moved = 0;
+        for (int shard = 0; shard < taskShardRouter.shards(); shard++) {
+            moved += taskQueueStore.migrateDue(shard, now);
+        }
+        return moved;
+    }
+
+    private void seedReady() {
+        long taskId = seededId.incrementAndGet();
+        Task task = task(System.currentTimeMillis());
+        task.setTaskId(taskId);
+        taskQueueStore.addReady(queueKey(taskId), String.valueOf(taskId), encode(task));
+    }
+
+    private void refillCancellable() {
+        List<Task> tasks = new ArrayList<>(BATCH);
+        long executeTime = System.currentTimeMillis() + FUTURE_DELAY;
+        for (int i = 0; i < BATCH; i++) {
+            tasks.add(task(executeTime));
+        }
+        cancellable.addAll(taskService.addTasks(tasks));
+    }
+
+    private byte[] encode(Task task) {
+        return "json".equals(codec) ? JSON.toJSONBytes(task) : TaskCodec.encode(task);
+    }
+
+    private String queueKey(long taskId) {
+        return taskShardRouter.queueKey(TASK_TYPE.getTaskType(), TASK_TYPE.getPriority(), taskId);
+    }
+
+    private Task task(long executeTime) {
+        Task task = new Task();
+        task.setTaskType(TASK_TYPE.getTaskType());
+        task.setPriority(TASK_TYPE.getPriority());
+        task.setExecuteTime(executeTime);
+        task.setParameters(parameters);
+        return task;
+    }
+}
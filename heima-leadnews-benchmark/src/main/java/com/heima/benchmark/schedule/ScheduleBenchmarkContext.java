@@ -0,0 +1,63 @@
+package com.heima.benchmark.schedule;
+
+import com.github.fppt.jedismock.RedisServer;
+import com.heima.schedule.ScheduleApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 在进程内启动延迟任务服务
+ * redis由jedis-mock提供(支持lua脚本)，数据库为mysql模式的h2内存库，不注册nacos，不启动web服务
+ */
+public class ScheduleBenchmarkContext implements Closeable {
+
+    private final RedisServer redisServer;
+
+    private final ConfigurableApplicationContext context;
+
+    /**
+     * @param overrides 覆盖默认配置，如schedule.store.type、schedule.shard.count
+     * @throws IOException
+     */
+    public ScheduleBenchmarkContext(Map<String, Object> overrides) throws IOException {
+        redisServer = RedisServer.newRedisServer();
+        redisServer.start();
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.main.web-application-type", "none");
+        properties.put("spring.cloud.bootstrap.enabled", "false");
+        properties.put("spring.cloud.nacos.config.enabled", "false");
+        properties.put("spring.cloud.nacos.discovery.enabled", "false");
+        properties.put("spring.cloud.nacos.discovery.watch.enabled", "false");
+        properties.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:schedule_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.datasource.initialization-mode", "always");
+        properties.put("spring.datasource.schema", "classpath:schedule-schema.sql");
+        properties.put("spring.redis.host", redisServer.getHost());
+        properties.put("spring.redis.port", redisServer.getBindPort());
+        properties.put("logging.level.root", "warn");
+        properties.put("schedule.archive.enabled", "false");
+        properties.putAll(overrides);
+
+        context = new SpringApplicationBuilder(ScheduleApplication.class, BenchmarkConfiguration.class)
+                .properties(properties)
+                .run();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+}
@@ -0,0 +1,61 @@
+package com.heima.benchmark.schedule;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * TaskinfoMapper.queryFutureTime用Integer.MIN_VALUE的fetchSize让mysql驱动流式返回结果，h2不接受负数的fetchSize
+ * 忽略负数的fetchSize，其余调用原样转给h2
+ */
+public class StreamingFetchSizeDataSource extends DelegatingDataSource {
+
+    public StreamingFetchSizeDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (result instanceof Statement && method.getReturnType().isInterface()) {
+                        return wrap((Statement) result, method.getReturnType());
+                    }
+                    return result;
+                });
+    }
+
+    private Object wrap(Statement statement, Class<?> type) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{type},
+                (proxy, method, args) -> {
+                    if ("setFetchSize".equals(method.getName()) && (Integer) args[0] < 0) {
+                        return null;
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
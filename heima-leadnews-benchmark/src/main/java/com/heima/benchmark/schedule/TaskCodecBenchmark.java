@@ -0,0 +1,115 @@
+package com.heima.benchmark.schedule;
+
+import com.alibaba.fastjson.JSON;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.heima.common.protostuff.ProtostuffMessageCodec;
+import com.heima.model.common.dtos.ResponseResult;
+import com.heima.model.common.enums.TaskTypeEnum;
+import com.heima.model.schedule.dtos.Task;
+import com.heima.model.wemedia.pojos.WmNews;
+import com.heima.utils.common.ProtostuffUtil;
+import com.heima.utils.common.TaskCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务编码的开销，结果为每个任务的耗时
+ * redis:队列中保存的任务数据  http:批量拉取的响应体，json包含消费端把data转换为Task的过程
+ * 每个任务的字节数在启动时输出
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TaskCodecBenchmark {
+
+    /**
+     * 批量拉取响应中的任务数量
+     */
+    private static final int BATCH = 100;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Task task;
+
+    private byte[] encodedTask;
+
+    private ResponseResult response;
+
+    private byte[] encodedResponse;
+
+    @Setup
+    public void setup() throws IOException {
+        task = task(1580000000000000000L);
+        List<Task> tasks = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            tasks.add(task(task.getTaskId() + i));
+        }
+        response = ResponseResult.okResult(tasks);
+        encodedTask = encodeTask();
+        encodedResponse = encodeResponse();
+        System.out.printf("%nformat=%s redis=%d bytes/task http=%d bytes/task%n",
+                format, encodedTask.length, encodedResponse.length / BATCH);
+    }
+
+    @Benchmark
+    public byte[] encodeTask() {
+        return "json".equals(format) ? JSON.toJSONBytes(task) : TaskCodec.encode(task);
+    }
+
+    @Benchmark
+    public Task decodeTask() {
+        return "json".equals(format) ? JSON.parseObject(encodedTask, Task.class) : TaskCodec.decode(encodedTask);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] encodeResponse() throws IOException {
+        return "json".equals(format) ? objectMapper.writeValueAsBytes(response) : ProtostuffMessageCodec.toByteArray(response);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    @SuppressWarnings("unchecked")
+    public List<Task> decodeResponse() throws IOException {
+        if ("json".equals(format)) {
+            ResponseResult result = objectMapper.readValue(encodedResponse, ResponseResult.class);
+            return JSON.parseArray(JSON.toJSONString(result.getData()), Task.class);
+        }
+        ResponseResult result = (ResponseResult) ProtostuffMessageCodec.read(new ByteArrayInputStream(encodedResponse));
+        return (List<Task>) result.getData();
+    }
+
+    private Task task(long taskId) {
+        WmNews wmNews = new WmNews();
+        wmNews.setId(6232);
+        Task task = new Task();
+        task.setTaskId(taskId);
+        task.setTaskType(TaskTypeEnum.NEWS_SCAN_TIME.getTaskType());
+        task.setPriority(TaskTypeEnum.NEWS_SCAN_TIME.getPriority());
+        task.setExecuteTime(System.currentTimeMillis());
+        task.setParameters(ProtostuffUtil.serialize(wmNews));
+        return task;
+    }
+}
@@ -0,0 +1,103 @@
+package com.heima.benchmark.schedule;
+
+import com.heima.schedule.timer.WheelTimer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 时间轮挂入任务的开销和派发延迟
+ * schedule:挂入一个到期时间在窗口内的任务的耗时
+ * dispatch:一次性挂入taskCount个任务，到期时间均匀分布在窗口内，等待全部触发，实际触发时间与到期时间的差值分位数在每次调用后输出
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WheelTimerBenchmark {
+
+    private static final Runnable NOOP = () -> {
+    };
+
+    @Param({"10"})
+    public long tickMs;
+
+    @Param({"100000"})
+    public int taskCount;
+
+    @Param({"5"})
+    public int windowSeconds;
+
+    private WheelTimer timer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        timer = new WheelTimer("benchmark", tickMs, 64, 4);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        timer.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object schedule() {
+        return timer.schedule(System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(windowSeconds * 1000L), NOOP);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public long[] dispatch() throws InterruptedException {
+        long[] lags = new long[taskCount];
+        AtomicInteger index = new AtomicInteger(0);
+        CountDownLatch latch = new CountDownLatch(taskCount);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < taskCount; i++) {
+            long executeTime = start + ThreadLocalRandom.current().nextLong(windowSeconds * 1000L);
+            timer.schedule(executeTime, () -> {
+                lags[index.getAndIncrement()] = System.currentTimeMillis() - executeTime;
+                latch.countDown();
+            });
+        }
+        if (!latch.await(windowSeconds + 30, TimeUnit.SECONDS)) {
+            System.out.printf("%n超时，未触发任务数 %d%n", latch.getCount());
+        }
+
+        long[] sorted = Arrays.copyOf(lags, index.get());
+        Arrays.sort(sorted);
+        System.out.printf("%n派发延迟(ms) p50=%d p90=%d p99=%d p999=%d max=%d%n",
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+        return sorted;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(i, 0)];
+    }
+}
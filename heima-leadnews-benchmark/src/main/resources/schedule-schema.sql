@@ -0,0 +1,21 @@
+CREATE TABLE IF NOT EXISTS taskinfo (
+  task_id BIGINT NOT NULL,
+  execute_time TIMESTAMP(3) NOT NULL,
+  parameters LONGBLOB,
+  priority INT NOT NULL,
+  task_type INT NOT NULL,
+  PRIMARY KEY (task_id)
+);
+CREATE INDEX IF NOT EXISTS idx_taskinfo_time ON taskinfo (execute_time, task_id);
+
+CREATE TABLE IF NOT EXISTS taskinfo_logs (
+  task_id BIGINT NOT NULL,
+  execute_time TIMESTAMP(3) NOT NULL,
+  parameters LONGBLOB,
+  priority INT NOT NULL,
+  task_type INT NOT NULL,
+  version INT NOT NULL,
+  status INT DEFAULT 0,
+  PRIMARY KEY (task_id)
+);
+CREATE INDEX IF NOT EXISTS idx_taskinfo_logs_status_time ON taskinfo_logs (status, execute_time);
@@ -11,5 +11,48 @@ public class ArticleConstants {
     public static final Integer HOT_ARTICLE_COMMENT_WEIGHT = 5;
     public static final Integer HOT_ARTICLE_COLLECTION_WEIGHT = 8;
 
-    public static final String HOT_ARTICLE_FIRST_PAGE = "hot_article_first_page_";
-}
\ No newline at end of file
+    /**
+     * 热点文章排行榜，每个频道一个zset  member:文章id  score:分值
+     */
+    public static final String HOT_ARTICLE_RANK = "hot_article_rank_";
+    /**
+     * 排行榜中文章的数据，所有频道共用一个hash  field:文章id  value:HotArticleVo的json
+     * hot_article_card_refs记录文章所在的排行榜数量，不在任何排行榜中时才删除数据
+     */
+    public static final String HOT_ARTICLE_CARD = "hot_article_card";
+    /**
+     * 每个频道保留的热点文章数量
+     */
+    public static final int HOT_ARTICLE_SIZE = 30;
+
+    /**
+     * 频道的文章时间线，每个频道一个zset  member:文章id  score:发布时间
+     */
+    public static final String ARTICLE_TIMELINE = "article_timeline_";
+    /**
+     * 时间线中文章的数据，所有频道共用一个hash  field:文章id  value:ApArticle的json
+     * article_card_refs记录文章所在时间线的数量，article_card_floor记录每个时间线的下限
+     */
+    public static final String ARTICLE_CARD = "article_card";
+    /**
+     * 每个频道时间线保留的文章数量，更早的文章从数据库查询
+     */
+    public static final int ARTICLE_TIMELINE_SIZE = 1000;
+
+    /**
+     * 序列化后的首页列表响应  key:feed_page_频道:类型:条数:时间桶@频道版本号.全部频道版本号
+     */
+    public static final String FEED_PAGE = "feed_page_";
+    /**
+     * 首页列表缓存的版本号  field:频道，*表示所有频道  value:版本号
+     */
+    public static final String FEED_PAGE_VERSION = "article_feed_version";
+    /**
+     * 首页列表缓存失效通知的频道  消息:逗号分隔的频道，*表示所有频道
+     */
+    public static final String FEED_INVALIDATE_CHANNEL = "article_feed_invalidate";
+    /**
+     * 互动增速最快的文章，每个频道一个  value:ApArticle列表的json，按增速从高到低
+     */
+    public static final String ARTICLE_RISING = "article_rising_";
+}
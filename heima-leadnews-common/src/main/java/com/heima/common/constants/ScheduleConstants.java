@@ -12,4 +12,12 @@ public class ScheduleConstants {
     public static String FUTURE="future_";   //未来数据key前缀
 
     public static String TOPIC="topic_";     //当前数据key前缀
+
+    public static String INFLIGHT="inflight_";   //已拉取未确认的任务，分值为租约到期时间
+
+    public static String DATA="task_data_";   //任务数据hash key前缀，队列中只保存任务id
+
+    public static String READY_CHANNEL="schedule_task_ready";   //任务进入topic_的通知频道，消息为type_priority，*表示所有队列
+
+    public static String RELOAD_WATERMARK="schedule_reload_watermark";   //数据库同步到redis的水位线
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.heima.common.protostuff;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+
+/**
+ * application/x-protostuff的消息转换
+ * 需要添加在json之后，Accept为任意类型时仍然返回json，请求头中明确指定时才使用protostuff
+ * 请求体按声明的参数类型校验，只支持ProtostuffMessageCodec中列出的类型
+ */
+public class ProtostuffHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    public static final MediaType APPLICATION_PROTOSTUFF = MediaType.valueOf(ProtostuffMessageCodec.APPLICATION_PROTOSTUFF_VALUE);
+
+    public ProtostuffHttpMessageConverter() {
+        super(APPLICATION_PROTOSTUFF);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return true;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return ProtostuffMessageCodec.read(inputMessage.getBody(), clazz);
+        } catch (IOException | RuntimeException e) {
+            throw new HttpMessageNotReadableException("protostuff decode failed: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object value, HttpOutputMessage outputMessage) throws IOException {
+        try {
+            ProtostuffMessageCodec.write(value, outputMessage.getBody());
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotWritableException(e.getMessage(), e);
+        }
+    }
+}
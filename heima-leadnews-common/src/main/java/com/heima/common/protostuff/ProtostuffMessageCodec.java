@@ -0,0 +1,359 @@
+package com.heima.common.protostuff;
+
+import com.heima.model.common.dtos.ResponseResult;
+import com.heima.model.schedule.dtos.Task;
+import com.heima.utils.common.TaskCodec;
+import io.protostuff.Input;
+import io.protostuff.LinkedBuffer;
+import io.protostuff.Output;
+import io.protostuff.ProtostuffIOUtil;
+import io.protostuff.Schema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * application/x-protostuff消息体的编解码
+ * 格式：[byte 版本号][protostuff编码的Value]
+ * 只支持延迟任务接口用到的类型，每种类型使用固定的字段编号，消息中不带类名，解码时只会创建这些类型
+ * Value的字段编号：1 Task  2 Task列表  3 Long列表  4 Integer列表  5 Long  6 Integer  7 Boolean  8 String  9 ResponseResult  10 空列表
+ * ResponseResult的字段编号：1 code  2 errorMessage  3 host  4 data(Value)
+ * 集合统一按ArrayList解码
+ */
+public class ProtostuffMessageCodec {
+
+    public static final String APPLICATION_PROTOSTUFF_VALUE = "application/x-protostuff";
+
+    private static final byte VERSION_1 = 1;
+
+    private static final Schema<Task> TASK_SCHEMA = TaskCodec.schema();
+
+    private static final Schema<ResponseResult> RESULT_SCHEMA = new ResultSchema();
+
+    private static final Schema<Value> SCHEMA = new ValueSchema();
+
+    private static final ThreadLocal<LinkedBuffer> BUFFER = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(4096));
+
+    /**
+     * 编码
+     *
+     * @param value
+     * @param out
+     * @throws IOException
+     * @throws IllegalArgumentException 不支持的类型
+     */
+    public static void write(Object value, OutputStream out) throws IOException {
+        Value holder = new Value();
+        holder.value = value;
+        LinkedBuffer buffer = BUFFER.get();
+        try {
+            //先编码完整的消息，不支持的类型不会写出一半
+            byte[] body = ProtostuffIOUtil.toByteArray(holder, SCHEMA, buffer);
+            out.write(VERSION_1);
+            out.write(body);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * 编码
+     *
+     * @param value
+     * @return
+     * @throws IllegalArgumentException 不支持的类型
+     */
+    public static byte[] toByteArray(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try {
+            write(value, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static Object read(InputStream in) throws IOException {
+        int version = in.read();
+        if (version == -1) {
+            return null;
+        }
+        if (version != VERSION_1) {
+            throw new IOException("unsupported protostuff message version: " + version);
+        }
+        Value holder = SCHEMA.newMessage();
+        LinkedBuffer buffer = BUFFER.get();
+        try {
+            ProtostuffIOUtil.mergeFrom(in, holder, SCHEMA, buffer);
+        } finally {
+            buffer.clear();
+        }
+        return holder.value;
+    }
+
+    /**
+     * 解码为声明的类型
+     *
+     * @param in
+     * @param type 声明的类型
+     * @return
+     * @throws IOException 消息中的类型和声明的类型不一致
+     */
+    public static <T> T read(InputStream in, Class<T> type) throws IOException {
+        Object value = read(in);
+        if (value != null && !type.isInstance(value)) {
+            throw new IOException("expected " + type.getName() + " but was " + value.getClass().getName());
+        }
+        return type.cast(value);
+    }
+
+    private static class Value {
+
+        private Object value;
+    }
+
+    /**
+     * 按值的类型选择字段编号
+     */
+    private static class ValueSchema implements Schema<Value> {
+
+        private static final String[] FIELD_NAMES = {null, "task", "tasks", "longs", "ints", "long", "int", "bool", "string",
+                "result", "empty"};
+
+        @Override
+        public String getFieldName(int number) {
+            return number > 0 && number < FIELD_NAMES.length ? FIELD_NAMES[number] : null;
+        }
+
+        @Override
+        public int getFieldNumber(String name) {
+            for (int i = 1; i < FIELD_NAMES.length; i++) {
+                if (FIELD_NAMES[i].equals(name)) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public boolean isInitialized(Value message) {
+            return true;
+        }
+
+        @Override
+        public Value newMessage() {
+            return new Value();
+        }
+
+        @Override
+        public String messageName() {
+            return Value.class.getSimpleName();
+        }
+
+        @Override
+        public String messageFullName() {
+            return Value.class.getName();
+        }
+
+        @Override
+        public Class<? super Value> typeClass() {
+            return Value.class;
+        }
+
+        @Override
+        public void mergeFrom(Input input, Value message) throws IOException {
+            for (int number = input.readFieldNumber(this); number != 0; number = input.readFieldNumber(this)) {
+                switch (number) {
+                    case 1:
+                        message.value = input.mergeObject(null, TASK_SCHEMA);
+                        break;
+                    case 2:
+                        list(message).add(input.mergeObject(null, TASK_SCHEMA));
+                        break;
+                    case 3:
+                        list(message).add(input.readInt64());
+                        break;
+                    case 4:
+                        list(message).add(input.readInt32());
+                        break;
+                    case 5:
+                        message.value = input.readInt64();
+                        break;
+                    case 6:
+                        message.value = input.readInt32();
+                        break;
+                    case 7:
+                        message.value = input.readBool();
+                        break;
+                    case 8:
+                        message.value = input.readString();
+                        break;
+                    case 9:
+                        message.value = input.mergeObject(null, RESULT_SCHEMA);
+                        break;
+                    case 10:
+                        input.readBool();
+                        list(message);
+                        break;
+                    default:
+                        input.handleUnknownField(number, this);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<Object> list(Value message) throws IOException {
+            if (message.value == null) {
+                message.value = new ArrayList<>();
+            }
+            if (!(message.value instanceof ArrayList)) {
+                throw new IOException("unexpected list element after " + message.value.getClass().getSimpleName());
+            }
+            return (List<Object>) message.value;
+        }
+
+        @Override
+        public void writeTo(Output output, Value message) throws IOException {
+            Object value = message.value;
+            if (value == null) {
+                return;
+            }
+            if (value instanceof Task) {
+                output.writeObject(1, (Task) value, TASK_SCHEMA, false);
+            } else if (value instanceof Collection) {
+                Collection<?> values = (Collection<?>) value;
+                if (values.isEmpty()) {
+                    output.writeBool(10, true, false);
+                }
+                for (Object element : values) {
+                    if (element instanceof Task) {
+                        output.writeObject(2, (Task) element, TASK_SCHEMA, true);
+                    } else if (element instanceof Long) {
+                        output.writeInt64(3, (Long) element, true);
+                    } else if (element instanceof Integer) {
+                        output.writeInt32(4, (Integer) element, true);
+                    } else {
+                        throw new IllegalArgumentException("unsupported protostuff list element: "
+                                + (element == null ? null : element.getClass().getName()));
+                    }
+                }
+            } else if (value instanceof Long) {
+                output.writeInt64(5, (Long) value, false);
+            } else if (value instanceof Integer) {
+                output.writeInt32(6, (Integer) value, false);
+            } else if (value instanceof Boolean) {
+                output.writeBool(7, (Boolean) value, false);
+            } else if (value instanceof String) {
+                output.writeString(8, (String) value, false);
+            } else if (value instanceof ResponseResult) {
+                output.writeObject(9, (ResponseResult) value, RESULT_SCHEMA, false);
+            } else {
+                throw new IllegalArgumentException("unsupported protostuff message type: " + value.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * ResponseResult的data按Value编码
+     */
+    private static class ResultSchema implements Schema<ResponseResult> {
+
+        private static final String[] FIELD_NAMES = {null, "code", "errorMessage", "host", "data"};
+
+        @Override
+        public String getFieldName(int number) {
+            return number > 0 && number < FIELD_NAMES.length ? FIELD_NAMES[number] : null;
+        }
+
+        @Override
+        public int getFieldNumber(String name) {
+            for (int i = 1; i < FIELD_NAMES.length; i++) {
+                if (FIELD_NAMES[i].equals(name)) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public boolean isInitialized(ResponseResult message) {
+            return true;
+        }
+
+        @Override
+        public ResponseResult newMessage() {
+            ResponseResult result = new ResponseResult();
+            //code按消息中的值，默认构造的200不能保留
+            result.setCode(null);
+            return result;
+        }
+
+        @Override
+        public String messageName() {
+            return ResponseResult.class.getSimpleName();
+        }
+
+        @Override
+        public String messageFullName() {
+            return ResponseResult.class.getName();
+        }
+
+        @Override
+        public Class<? super ResponseResult> typeClass() {
+            return ResponseResult.class;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void mergeFrom(Input input, ResponseResult message) throws IOException {
+            for (int number = input.readFieldNumber(this); number != 0; number = input.readFieldNumber(this)) {
+                switch (number) {
+                    case 1:
+                        message.setCode(input.readInt32());
+                        break;
+                    case 2:
+                        message.setErrorMessage(input.readString());
+                        break;
+                    case 3:
+                        message.setHost(input.readString());
+                        break;
+                    case 4:
+                        message.setData(input.mergeObject(null, SCHEMA).value);
+                        break;
+                    default:
+                        input.handleUnknownField(number, this);
+                }
+            }
+        }
+
+        @Override
+        public void writeTo(Output output, ResponseResult message) throws IOException {
+            if (message.getCode() != null) {
+                output.writeInt32(1, message.getCode(), false);
+            }
+            if (message.getErrorMessage() != null) {
+                output.writeString(2, message.getErrorMessage(), false);
+            }
+            if (message.getHost() != null) {
+                output.writeString(3, message.getHost(), false);
+            }
+            if (message.getData() != null) {
+                Value data = new Value();
+                data.value = message.getData();
+                output.writeObject(4, data, SCHEMA, false);
+            }
+        }
+    }
+}
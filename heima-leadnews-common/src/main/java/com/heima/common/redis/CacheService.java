@@ -6,7 +6,9 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.connection.*;
 import org.springframework.data.redis.core.*;
 import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
@@ -395,6 +397,62 @@ public class CacheService extends CachingConfigurerSupport {
         stringRedisTemplate.opsForHash().putAll(key, maps);
     }
 
+    /**
+     * 写入二进制的值，值不经过字符串序列化
+     *
+     * @param key
+     * @param hashKey
+     * @param value
+     */
+    public void hPutBytes(String key, String hashKey, byte[] value) {
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.hSet(rawString(key), rawString(hashKey), value));
+    }
+
+    /**
+     * 批量写入二进制的值
+     *
+     * @param key
+     * @param maps
+     */
+    public void hPutAllBytes(String key, Map<String, byte[]> maps) {
+        Map<byte[], byte[]> raw = new LinkedHashMap<>(maps.size());
+        for (Map.Entry<String, byte[]> entry : maps.entrySet()) {
+            raw.put(rawString(entry.getKey()), entry.getValue());
+        }
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.hMSet(rawString(key), raw);
+            return null;
+        });
+    }
+
+    /**
+     * 批量写入二进制的值，只写入不存在的hashKey，一次网络往返
+     *
+     * @param key
+     * @param maps
+     * @return 写入成功的hashKey
+     */
+    public List<String> hPutAllBytesIfAbsent(String key, Map<String, byte[]> maps) {
+        List<String> fields = new ArrayList<>(maps.keySet());
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String field : fields) {
+                connection.hSetNX(rawString(key), rawString(field), maps.get(field));
+            }
+            return null;
+        });
+        List<String> written = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            if (Boolean.TRUE.equals(results.get(i))) {
+                written.add(fields.get(i));
+            }
+        }
+        return written;
+    }
+
+    private byte[] rawString(String value) {
+        return stringRedisTemplate.getStringSerializer().serialize(value);
+    }
+
     /**
      * 仅当hashKey不存在时才设置
      *
@@ -1247,6 +1305,22 @@ public class CacheService extends CachingConfigurerSupport {
                 start, end);
     }
 
+    /**
+     * 根据Score值分页查询集合元素及其score值, 从大到小排序
+     *
+     * @param key
+     * @param min
+     * @param max
+     * @param offset
+     * @param count
+     * @return
+     */
+    public Set<TypedTuple<String>> zReverseRangeByScoreWithScores(String key, double min,
+                                                                   double max, long offset, long count) {
+        return stringRedisTemplate.opsForZSet().reverseRangeByScoreWithScores(key, min, max,
+                offset, count);
+    }
+
     /**
      * 根据score值获取集合元素数量
      *
@@ -1434,6 +1508,574 @@ public class CacheService extends CachingConfigurerSupport {
         return objects;
     }
 
+    /**
+     * 从zset中移除member，移除成功再放入list的右侧，保证并发时只移动一次
+     */
+    private static final DefaultRedisScript<Long> Z_MOVE_TO_LIST_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('zrem', KEYS[1], ARGV[1]) == 1 then " +
+                    "redis.call('rpush', KEYS[2], ARGV[1]) " +
+                    "return 1 " +
+                    "end " +
+                    "return 0", Long.class);
+
+    /**
+     * 把zset中的一个member原子的移动到list中
+     *
+     * @param zsetKey
+     * @param listKey
+     * @param value
+     * @return 是否移动成功  false表示member已经不在zset中(已被移动或者删除)
+     */
+    public boolean zMoveToList(String zsetKey, String listKey, String value) {
+        Long result = stringRedisTemplate.execute(Z_MOVE_TO_LIST_SCRIPT, Arrays.asList(zsetKey, listKey), value);
+        return result != null && result == 1L;
+    }
+
+    /**
+     * 从list的右侧一次弹出最多N个元素
+     */
+    private static final DefaultRedisScript<List> L_RIGHT_POP_BATCH_SCRIPT = new DefaultRedisScript<>(
+            "local result = {} " +
+                    "for i = 1, tonumber(ARGV[1]) do " +
+                    "local value = redis.call('rpop', KEYS[1]) " +
+                    "if not value then break end " +
+                    "result[i] = value " +
+                    "end " +
+                    "return result", List.class);
+
+    /**
+     * 批量移除并获取列表右侧的元素，一次网络往返
+     *
+     * @param key
+     * @param count 最多弹出的数量
+     * @return 弹出的元素，按弹出顺序排列
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> lRightPopBatch(String key, int count) {
+        List<String> result = stringRedisTemplate.execute(L_RIGHT_POP_BATCH_SCRIPT, Collections.singletonList(key), String.valueOf(count));
+        return result == null ? new ArrayList<>() : result;
+    }
+
+    /**
+     * 批量弹出list右侧的元素，并从hash中取出删除以元素为field的值
+     * hash中没有对应值的元素(已取消的任务)直接丢弃
+     * KEYS[1] list  KEYS[2] hash  ARGV[1] 最多返回的数量
+     */
+    private static final DefaultRedisScript<List> L_RIGHT_POP_BATCH_WITH_HASH_SCRIPT = new DefaultRedisScript<>(
+            "local result = {} " +
+                    "local count = tonumber(ARGV[1]) " +
+                    "while #result < count do " +
+                    "local field = redis.call('rpop', KEYS[1]) " +
+                    "if not field then break end " +
+                    "local value = redis.call('hget', KEYS[2], field) " +
+                    "if value then " +
+                    "redis.call('hdel', KEYS[2], field) " +
+                    "result[#result + 1] = value " +
+                    "end " +
+                    "end " +
+                    "return result", List.class);
+
+    /**
+     * 批量弹出list右侧的元素，返回以元素为field存放在hash中的值，一次网络往返
+     *
+     * @param key     list的key
+     * @param hashKey 存放值的hash的key
+     * @param count   最多返回的数量
+     * @return hash中的值，按弹出顺序排列
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> lRightPopBatchWithHash(String key, String hashKey, int count) {
+        List<String> result = stringRedisTemplate.execute(L_RIGHT_POP_BATCH_WITH_HASH_SCRIPT, Arrays.asList(key, hashKey), String.valueOf(count));
+        return result == null ? new ArrayList<>() : result;
+    }
+
+    /**
+     * 批量弹出list右侧的元素放入zset，分值为租约到期时间，返回元素和以元素为field存放在hash中的值(保留在hash中)
+     * hash中没有对应值的元素(已取消的任务)直接丢弃
+     * KEYS[1] list  KEYS[2] hash  KEYS[3] zset  ARGV[1] 最多返回的数量  ARGV[2] 租约到期时间
+     * 返回 field1, value1, field2, value2...
+     */
+    private static final DefaultRedisScript<List> L_RIGHT_POP_BATCH_LEASE_SCRIPT = new DefaultRedisScript<>(
+            "local result = {} " +
+                    "local count = tonumber(ARGV[1]) * 2 " +
+                    "while #result < count do " +
+                    "local field = redis.call('rpop', KEYS[1]) " +
+                    "if not field then break end " +
+                    "local value = redis.call('hget', KEYS[2], field) " +
+                    "if value then " +
+                    "redis.call('zadd', KEYS[3], ARGV[2], field) " +
+                    "result[#result + 1] = field " +
+                    "result[#result + 1] = value " +
+                    "end " +
+                    "end " +
+                    "return result", List.class);
+
+    /**
+     * 批量弹出list右侧的元素并放入zset，分值为租约到期时间，一次网络往返
+     * 到期未确认的元素可以用zMigrateToList放回list
+     *
+     * @param key      list的key
+     * @param hashKey  存放值的hash的key
+     * @param zsetKey  租约zset的key
+     * @param count    最多返回的数量
+     * @param deadline 租约到期时间
+     * @return 元素和hash中的值，按弹出顺序排列
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> lRightPopBatchLease(String key, String hashKey, String zsetKey, int count, long deadline) {
+        List<String> result = stringRedisTemplate.execute(L_RIGHT_POP_BATCH_LEASE_SCRIPT, Arrays.asList(key, hashKey, zsetKey),
+                String.valueOf(count), String.valueOf(deadline));
+        Map<String, String> leased = new LinkedHashMap<>();
+        if (result != null) {
+            for (int i = 0; i + 1 < result.size(); i += 2) {
+                leased.put(result.get(i), result.get(i + 1));
+            }
+        }
+        return leased;
+    }
+
+    /**
+     * 同lRightPopBatchWithHash，hash中的值按二进制原样返回
+     *
+     * @param key     list的key
+     * @param hashKey 存放值的hash的key
+     * @param count   最多返回的数量
+     * @return hash中的值，按弹出顺序排列
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<byte[]> lRightPopBatchWithHashBytes(String key, String hashKey, int count) {
+        List<byte[]> result = stringRedisTemplate.execute(L_RIGHT_POP_BATCH_WITH_HASH_SCRIPT, stringRedisTemplate.getStringSerializer(),
+                (RedisSerializer) RedisSerializer.byteArray(), Arrays.asList(key, hashKey), String.valueOf(count));
+        return result == null ? new ArrayList<>() : result;
+    }
+
+    /**
+     * 同lRightPopBatchLease，hash中的值按二进制原样返回
+     *
+     * @param key      list的key
+     * @param hashKey  存放值的hash的key
+     * @param zsetKey  租约zset的key
+     * @param count    最多返回的数量
+     * @param deadline 租约到期时间
+     * @return 元素和hash中的值，按弹出顺序排列
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Map<String, byte[]> lRightPopBatchLeaseBytes(String key, String hashKey, String zsetKey, int count, long deadline) {
+        List<byte[]> result = stringRedisTemplate.execute(L_RIGHT_POP_BATCH_LEASE_SCRIPT, stringRedisTemplate.getStringSerializer(),
+                (RedisSerializer) RedisSerializer.byteArray(), Arrays.asList(key, hashKey, zsetKey), String.valueOf(count), String.valueOf(deadline));
+        Map<String, byte[]> leased = new LinkedHashMap<>();
+        if (result != null) {
+            for (int i = 0; i + 1 < result.size(); i += 2) {
+                leased.put(stringRedisTemplate.getStringSerializer().deserialize(result.get(i)), result.get(i + 1));
+            }
+        }
+        return leased;
+    }
+
+    /**
+     * 从zset和hash中同时删除一批field，返回hash中删除的数量
+     * KEYS[1] zset  KEYS[2] hash  ARGV field
+     */
+    private static final DefaultRedisScript<Long> Z_REMOVE_WITH_HASH_SCRIPT = new DefaultRedisScript<>(
+            "local removed = 0 " +
+                    "for i = 1, #ARGV do " +
+                    "redis.call('zrem', KEYS[1], ARGV[i]) " +
+                    "removed = removed + redis.call('hdel', KEYS[2], ARGV[i]) " +
+                    "end " +
+                    "return removed", Long.class);
+
+    /**
+     * 从zset和hash中同时删除一批field
+     *
+     * @param zsetKey
+     * @param hashKey
+     * @param fields
+     * @return hash中删除的数量
+     */
+    public long zRemoveWithHash(String zsetKey, String hashKey, Collection<String> fields) {
+        if (fields.isEmpty()) {
+            return 0;
+        }
+        Long result = stringRedisTemplate.execute(Z_REMOVE_WITH_HASH_SCRIPT, Arrays.asList(zsetKey, hashKey), fields.toArray());
+        return result == null ? 0 : result;
+    }
+
+    /**
+     * 把zset中分值小于等于ARGV[1]的成员分块移动到list中，只返回移动的数量
+     * KEYS成对出现: zset1, list1, zset2, list2 ...
+     * ARGV[1] 最大分值  ARGV[2] 单次调用最多移动的数量  ARGV[3] 每块的数量(受lua unpack参数个数限制)
+     */
+    private static final DefaultRedisScript<Long> Z_MIGRATE_TO_LIST_SCRIPT = new DefaultRedisScript<>(
+            "local moved = 0 " +
+                    "local limit = tonumber(ARGV[2]) " +
+                    "local chunk = tonumber(ARGV[3]) " +
+                    "for i = 1, #KEYS, 2 do " +
+                    "while moved < limit do " +
+                    "local n = math.min(chunk, limit - moved) " +
+                    "local items = redis.call('zrangebyscore', KEYS[i], '-inf', ARGV[1], 'LIMIT', 0, n) " +
+                    "if #items == 0 then break end " +
+                    "redis.call('rpush', KEYS[i + 1], unpack(items)) " +
+                    "redis.call('zrem', KEYS[i], unpack(items)) " +
+                    "moved = moved + #items " +
+                    "if #items < n then break end " +
+                    "end " +
+                    "if moved >= limit then break end " +
+                    "end " +
+                    "return moved", Long.class);
+
+    /**
+     * 单次脚本调用最多移动的数量，避免长时间阻塞redis
+     */
+    private static final int MIGRATE_LIMIT = 1000;
+
+    /**
+     * lua unpack每次传入的参数个数
+     */
+    private static final int MIGRATE_CHUNK = 100;
+
+    /**
+     * 在redis服务端把zset中到期的成员移动到list中，数据不经过应用
+     * 每次脚本调用最多移动MIGRATE_LIMIT个，超出时分多次调用
+     *
+     * @param zsetKey
+     * @param listKey
+     * @param maxScore 最大分值(包含)
+     * @return 移动的数量
+     */
+    public long zMigrateToList(String zsetKey, String listKey, double maxScore) {
+        return zMigrateToList(Arrays.asList(zsetKey, listKey), maxScore);
+    }
+
+    /**
+     * 把所有匹配前缀的zset中到期的成员移动到对应前缀的list中
+     * 例如 future_100_50 到 topic_100_50，所有队列在同一次脚本调用中完成
+     *
+     * @param zsetPrefix
+     * @param listPrefix
+     * @param maxScore   最大分值(包含)
+     * @return 移动的数量
+     */
+    public long zMigrateToListByPrefix(String zsetPrefix, String listPrefix, double maxScore) {
+        return zMigrateToListByPattern(zsetPrefix, listPrefix, "*", maxScore);
+    }
+
+    /**
+     * 把zsetPrefix + pattern匹配的所有zset中到期的成员移动到同后缀的list中
+     * redis集群下pattern匹配的key需要在同一个slot
+     *
+     * @param zsetPrefix zset的key前缀
+     * @param listPrefix list的key前缀
+     * @param pattern    前缀之后部分的匹配模式
+     * @param maxScore   最大分值
+     * @return 移动的数量
+     */
+    public long zMigrateToListByPattern(String zsetPrefix, String listPrefix, String pattern, double maxScore) {
+        Set<String> zsetKeys = scan(zsetPrefix + pattern);
+        if (zsetKeys.isEmpty()) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>(zsetKeys.size() * 2);
+        for (String zsetKey : zsetKeys) {
+            keys.add(zsetKey);
+            keys.add(listPrefix + zsetKey.substring(zsetPrefix.length()));
+        }
+        return zMigrateToList(keys, maxScore);
+    }
+
+    private long zMigrateToList(List<String> keys, double maxScore) {
+        long total = 0;
+        Long moved;
+        do {
+            moved = stringRedisTemplate.execute(Z_MIGRATE_TO_LIST_SCRIPT, keys,
+                    String.valueOf((long) maxScore), String.valueOf(MIGRATE_LIMIT), String.valueOf(MIGRATE_CHUNK));
+            if (moved == null) {
+                break;
+            }
+            total += moved;
+        } while (moved >= MIGRATE_LIMIT);
+        return total;
+    }
+
+    /**
+     * 管道批量添加zset元素，一次网络往返写入多个key
+     *
+     * @param values key -> 元素集合
+     */
+    public void zAddWithPipeline(Map<String, Set<TypedTuple<String>>> values) {
+        stringRedisTemplate.executePipelined(new RedisCallback<Object>() {
+            @Nullable
+            @Override
+            public Object doInRedis(RedisConnection redisConnection) throws DataAccessException {
+                StringRedisConnection stringRedisConnection = (StringRedisConnection) redisConnection;
+                for (Map.Entry<String, Set<TypedTuple<String>>> entry : values.entrySet()) {
+                    for (TypedTuple<String> tuple : entry.getValue()) {
+                        stringRedisConnection.zAdd(entry.getKey(), tuple.getScore(), tuple.getValue());
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 批量更新排行榜中成员的分值，每个排行榜只保留分值最高的N个，成员数据只保存仍在排行榜中的成员
+     * 引用计数记录成员所在的排行榜数量，包括这次没有传入的排行榜，降到0时才删除成员数据
+     * 下限记录每个排行榜被裁剪掉的最高分值，分值高于下限的成员都在排行榜中
+     * KEYS[1] 成员数据hash  KEYS[2] 引用计数hash  KEYS[3] 下限hash  KEYS[4..n] 排行榜zset
+     * ARGV[1] 保留的数量，之后每个排行榜依次为: 成员数量c, c组(分值, 成员)，最后是若干组(成员, 成员数据)
+     */
+    private static final DefaultRedisScript<Long> Z_ADD_TOP_N_WITH_HASH_SCRIPT = new DefaultRedisScript<>(
+            "local hash = KEYS[1] " +
+                    "local refs = KEYS[2] " +
+                    "local floors = KEYS[3] " +
+                    "local trim = -tonumber(ARGV[1]) - 1 " +
+                    "local pos = 2 " +
+                    "local evicted = {} " +
+                    "for i = 4, #KEYS do " +
+                    "local n = tonumber(ARGV[pos]) " +
+                    "pos = pos + 1 " +
+                    "for j = 1, n do " +
+                    "if redis.call('zadd', KEYS[i], ARGV[pos], ARGV[pos + 1]) == 1 then " +
+                    "redis.call('hincrby', refs, ARGV[pos + 1], 1) " +
+                    "end " +
+                    "pos = pos + 2 " +
+                    "end " +
+                    "local removed = redis.call('zrange', KEYS[i], 0, trim, 'withscores') " +
+                    "if #removed > 0 then " +
+                    "redis.call('zremrangebyrank', KEYS[i], 0, trim) " +
+                    "for k = 1, #removed, 2 do " +
+                    "redis.call('hincrby', refs, removed[k], -1) " +
+                    "evicted[removed[k]] = true " +
+                    "end " +
+                    "local top = removed[#removed] " +
+                    "local old = redis.call('hget', floors, KEYS[i]) " +
+                    "if not old or tonumber(top) > tonumber(old) then redis.call('hset', floors, KEYS[i], top) end " +
+                    "end " +
+                    "end " +
+                    "local function ranked(member) " +
+                    "return tonumber(redis.call('hget', refs, member) or '0') > 0 " +
+                    "end " +
+                    "local count = 0 " +
+                    "for k = pos, #ARGV, 2 do " +
+                    "if ranked(ARGV[k]) then " +
+                    "redis.call('hset', hash, ARGV[k], ARGV[k + 1]) " +
+                    "count = count + 1 " +
+                    "end " +
+                    "end " +
+                    "for member in pairs(evicted) do " +
+                    "if not ranked(member) then " +
+                    "redis.call('hdel', hash, member) " +
+                    "redis.call('hdel', refs, member) " +
+                    "end " +
+                    "end " +
+                    "return count", Long.class);
+
+    /**
+     * 原子的更新多个排行榜中一个成员的分值，并裁剪到size个
+     * 成员还在任意一个排行榜中时保存成员数据，被挤出所有排行榜的成员删除数据
+     * 共用hash的排行榜只能通过这里、zReplaceWithHash和zRemoveTopNWithHash修改，否则引用计数不准确
+     * redis集群下所有key需要在同一个slot
+     *
+     * @param zsetKeys 排行榜
+     * @param hashKey  成员数据，多个排行榜共用
+     * @param member
+     * @param score
+     * @param size     每个排行榜保留的数量
+     * @param value    成员数据
+     * @return 成员是否在排行榜中
+     */
+    public boolean zAddTopNWithHash(Collection<String> zsetKeys, String hashKey, String member, double score, int size, String value) {
+        Map<String, Set<TypedTuple<String>>> zsets = new LinkedHashMap<>();
+        for (String zsetKey : zsetKeys) {
+            zsets.put(zsetKey, Collections.singleton(new DefaultTypedTuple<>(member, score)));
+        }
+        return zAddTopNWithHash(zsets, hashKey, Collections.singletonMap(member, value), size) > 0;
+    }
+
+    /**
+     * 在一次脚本调用中更新多个排行榜中一批成员的分值，并裁剪到size个
+     * 成员还在任意一个排行榜中时保存成员数据，被挤出所有排行榜的成员删除数据
+     * redis集群下所有key需要在同一个slot
+     *
+     * @param zsets   排行榜 -> 需要更新的成员和分值
+     * @param hashKey 成员数据，多个排行榜共用
+     * @param values  成员 -> 成员数据
+     * @param size    每个排行榜保留的数量
+     * @return 仍在排行榜中的成员数量
+     */
+    public long zAddTopNWithHash(Map<String, Set<TypedTuple<String>>> zsets, String hashKey, Map<String, String> values, int size) {
+        if (zsets.isEmpty()) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>(zsets.size() + 3);
+        List<String> args = new ArrayList<>();
+        keys.add(hashKey);
+        keys.add(refsKey(hashKey));
+        keys.add(floorKey(hashKey));
+        args.add(String.valueOf(size));
+        for (Map.Entry<String, Set<TypedTuple<String>>> entry : zsets.entrySet()) {
+            keys.add(entry.getKey());
+            args.add(String.valueOf(entry.getValue().size()));
+            for (TypedTuple<String> tuple : entry.getValue()) {
+                args.add(String.valueOf(tuple.getScore()));
+                args.add(tuple.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            args.add(entry.getKey());
+            args.add(entry.getValue());
+        }
+        Long result = stringRedisTemplate.execute(Z_ADD_TOP_N_WITH_HASH_SCRIPT, keys, args.toArray());
+        return result == null ? 0 : result;
+    }
+
+    /**
+     * 在一个事务中替换多个zset以及它们共用的hash，按新的zset重建引用计数
+     * zsets需要包含共用这个hash的所有zset
+     *
+     * @param zsets   key -> 元素集合，集合为空时只删除key
+     * @param hashKey
+     * @param values  hash的全部数据
+     */
+    public void zReplaceWithHash(Map<String, Set<TypedTuple<String>>> zsets, String hashKey, Map<String, String> values) {
+        Map<String, String> refs = new HashMap<>();
+        for (Set<TypedTuple<String>> tuples : zsets.values()) {
+            for (TypedTuple<String> tuple : tuples) {
+                refs.merge(tuple.getValue(), "1", (a, b) -> String.valueOf(Integer.parseInt(a) + 1));
+            }
+        }
+        stringRedisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<Object> execute(RedisOperations operations) throws DataAccessException {
+                operations.multi();
+                for (Map.Entry<String, Set<TypedTuple<String>>> entry : zsets.entrySet()) {
+                    operations.delete(entry.getKey());
+                    if (!entry.getValue().isEmpty()) {
+                        operations.opsForZSet().add(entry.getKey(), entry.getValue());
+                    }
+                }
+                operations.delete(hashKey);
+                if (!values.isEmpty()) {
+                    operations.opsForHash().putAll(hashKey, values);
+                }
+                operations.delete(refsKey(hashKey));
+                if (!refs.isEmpty()) {
+                    operations.opsForHash().putAll(refsKey(hashKey), refs);
+                }
+                operations.delete(floorKey(hashKey));
+                return operations.exec();
+            }
+        });
+    }
+
+    /**
+     * 排行榜成员数据的引用计数  field:成员  value:成员所在的排行榜数量
+     *
+     * @param hashKey 成员数据
+     * @return
+     */
+    private String refsKey(String hashKey) {
+        return hashKey + "_refs";
+    }
+
+    /**
+     * 排行榜的下限  field:排行榜  value:裁剪掉的最高分值，分值高于下限的成员都在排行榜中
+     *
+     * @param hashKey 成员数据
+     * @return
+     */
+    private String floorKey(String hashKey) {
+        return hashKey + "_floor";
+    }
+
+    /**
+     * 排行榜的下限，分值高于下限的成员都在排行榜中
+     *
+     * @param hashKey 成员数据
+     * @param zsetKey 排行榜
+     * @return 没有记录时返回null
+     */
+    public Double zTopNFloor(String hashKey, String zsetKey) {
+        Object floor = stringRedisTemplate.opsForHash().get(floorKey(hashKey), zsetKey);
+        return floor == null ? null : Double.valueOf(floor.toString());
+    }
+
+    /**
+     * 下限只升高不降低
+     * KEYS[1] 下限hash  ARGV[1] 排行榜  ARGV[2] 下限
+     */
+    private static final DefaultRedisScript<Long> Z_RAISE_FLOOR_SCRIPT = new DefaultRedisScript<>(
+            "local old = redis.call('hget', KEYS[1], ARGV[1]) " +
+                    "if not old or tonumber(ARGV[2]) > tonumber(old) then " +
+                    "redis.call('hset', KEYS[1], ARGV[1], ARGV[2]) " +
+                    "return 1 " +
+                    "end " +
+                    "return 0", Long.class);
+
+    /**
+     * 记录排行榜的下限，已经记录了更高的下限时不修改
+     *
+     * @param hashKey 成员数据
+     * @param zsetKey 排行榜
+     * @param floor
+     */
+    public void zTopNRaiseFloor(String hashKey, String zsetKey, double floor) {
+        stringRedisTemplate.execute(Z_RAISE_FLOOR_SCRIPT, Collections.singletonList(floorKey(hashKey)),
+                zsetKey, (long) floor == floor ? String.valueOf((long) floor) : String.valueOf(floor));
+    }
+
+    /**
+     * 从多个排行榜中删除一批成员，不在任何排行榜中的成员删除数据，不影响下限
+     * KEYS[1] 成员数据hash  KEYS[2] 引用计数hash  KEYS[3..n] 排行榜zset  ARGV 成员
+     */
+    private static final DefaultRedisScript<Long> Z_REMOVE_TOP_N_WITH_HASH_SCRIPT = new DefaultRedisScript<>(
+            "local removed = 0 " +
+                    "for i = 3, #KEYS do " +
+                    "for _, member in ipairs(ARGV) do " +
+                    "if redis.call('zrem', KEYS[i], member) == 1 then " +
+                    "redis.call('hincrby', KEYS[2], member, -1) " +
+                    "end " +
+                    "end " +
+                    "end " +
+                    "for _, member in ipairs(ARGV) do " +
+                    "if tonumber(redis.call('hget', KEYS[2], member) or '0') <= 0 then " +
+                    "removed = removed + redis.call('hdel', KEYS[1], member) " +
+                    "redis.call('hdel', KEYS[2], member) " +
+                    "end " +
+                    "end " +
+                    "return removed", Long.class);
+
+    /**
+     * 从多个排行榜中删除一批成员，成员还在其他排行榜中时保留数据
+     *
+     * @param zsetKeys 排行榜
+     * @param hashKey  成员数据
+     * @param members
+     * @return 删除数据的成员数量
+     */
+    public long zRemoveTopNWithHash(Collection<String> zsetKeys, String hashKey, Collection<String> members) {
+        if (zsetKeys.isEmpty() || members.isEmpty()) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>(zsetKeys.size() + 2);
+        keys.add(hashKey);
+        keys.add(refsKey(hashKey));
+        keys.addAll(zsetKeys);
+        Long result = stringRedisTemplate.execute(Z_REMOVE_TOP_N_WITH_HASH_SCRIPT, keys, members.toArray());
+        return result == null ? 0 : result;
+    }
+
+    /**
+     * 发布消息到频道
+     *
+     * @param channel
+     * @param message
+     */
+    public void publish(String channel, String message) {
+        stringRedisTemplate.convertAndSend(channel, message);
+    }
+
     /**
      * 加锁
      *
@@ -1464,4 +2106,25 @@ public class CacheService extends CachingConfigurerSupport {
         return null;
     }
 
-}
\ No newline at end of file
+    /**
+     * 释放锁，只有持有锁的token才能释放
+     */
+    private static final DefaultRedisScript<Long> UN_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('del', KEYS[1]) " +
+                    "end " +
+                    "return 0", Long.class);
+
+    /**
+     * 解锁
+     *
+     * @param name
+     * @param token tryLock返回的token
+     * @return
+     */
+    public boolean unLock(String name, String token) {
+        Long result = stringRedisTemplate.execute(UN_LOCK_SCRIPT, Collections.singletonList(name + "_lock"), token);
+        return result != null && result > 0;
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.heima.apis.schedule;
 
+import com.heima.apis.schedule.config.ScheduleFeignConfiguration;
 import com.heima.model.common.dtos.ResponseResult;
 import com.heima.model.schedule.dtos.Task;
 import org.springframework.cloud.openfeign.FeignClient;
@@ -7,8 +8,11 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 
-@FeignClient("leadnews-schedule")
+import java.util.List;
+
+@FeignClient(value = "leadnews-schedule", configuration = ScheduleFeignConfiguration.class)
 public interface IScheduleClient {
 
     /**
@@ -20,6 +24,15 @@ public interface IScheduleClient {
     @PostMapping("/api/v1/task/add")
     public ResponseResult addTask(@RequestBody Task task);
 
+    /**
+     * 批量添加任务
+     *
+     * @param tasks 任务对象
+     * @return 任务id，与tasks顺序一致
+     */
+    @PostMapping("/api/v1/task/add/batch")
+    public ResponseResult addTasks(@RequestBody List<Task> tasks);
+
     /**
      * 取消任务
      *
@@ -38,4 +51,47 @@ public interface IScheduleClient {
      */
     @GetMapping("/api/v1/task/{type}/{priority}")
     public ResponseResult poll(@PathVariable("type") int type, @PathVariable("priority") int priority);
+
+    /**
+     * 按照类型和优先级批量拉取任务
+     *
+     * @param type
+     * @param priority
+     * @param maxCount 最多拉取的数量
+     * @return
+     */
+    @GetMapping("/api/v1/task/{type}/{priority}/{maxCount}")
+    public ResponseResult poll(@PathVariable("type") int type, @PathVariable("priority") int priority, @PathVariable("maxCount") int maxCount);
+
+    /**
+     * 跨任务类型批量拉取任务，按配置的权重在各类型的队列之间分配
+     *
+     * @param types    任务类型
+     * @param maxCount 最多拉取的数量
+     * @return
+     */
+    @GetMapping("/api/v1/task/any/{maxCount}")
+    public ResponseResult pollAny(@RequestParam("types") List<Integer> types, @PathVariable("maxCount") int maxCount);
+
+    /**
+     * 租约模式批量拉取任务，执行完成后需要调用ack确认
+     *
+     * @param type
+     * @param priority
+     * @param maxCount 最多拉取的数量
+     * @return
+     */
+    @GetMapping("/api/v1/task/lease/{type}/{priority}/{maxCount}")
+    public ResponseResult lease(@PathVariable("type") int type, @PathVariable("priority") int priority, @PathVariable("maxCount") int maxCount);
+
+    /**
+     * 批量确认租约模式拉取的任务
+     *
+     * @param type
+     * @param priority
+     * @param taskIds  任务id
+     * @return 确认成功的数量
+     */
+    @PostMapping("/api/v1/task/ack/{type}/{priority}")
+    public ResponseResult ack(@PathVariable("type") int type, @PathVariable("priority") int priority, @RequestBody List<Long> taskIds);
 }
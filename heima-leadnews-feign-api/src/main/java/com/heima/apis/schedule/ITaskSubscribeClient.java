@@ -0,0 +1,30 @@
+package com.heima.apis.schedule;
+
+import com.heima.apis.schedule.config.ScheduleFeignConfiguration;
+import com.heima.model.common.dtos.ResponseResult;
+import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * 长轮询订阅延迟任务
+ * 请求会在服务端挂起最多waitMs，单独的contextId便于配置更长的读超时
+ */
+@FeignClient(value = "leadnews-schedule", contextId = "taskSubscribeClient", configuration = ScheduleFeignConfiguration.class)
+public interface ITaskSubscribeClient {
+
+    /**
+     * 订阅任务，有任务时立即返回，否则最多等待waitMs后返回空列表
+     * 返回的任务执行完成后需要调用IScheduleClient.ack确认
+     *
+     * @param type
+     * @param priority
+     * @param maxCount 最多拉取的数量
+     * @param waitMs   没有任务时最长等待时间
+     * @return
+     */
+    @GetMapping("/api/v1/task/subscribe/{type}/{priority}/{maxCount}")
+    public ResponseResult subscribe(@PathVariable("type") int type, @PathVariable("priority") int priority,
+                                    @PathVariable("maxCount") int maxCount, @RequestParam("waitMs") long waitMs);
+}
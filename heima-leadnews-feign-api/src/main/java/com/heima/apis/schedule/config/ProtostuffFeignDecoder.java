@@ -0,0 +1,52 @@
+package com.heima.apis.schedule.config;
+
+import com.heima.common.protostuff.ProtostuffMessageCodec;
+import feign.Response;
+import feign.codec.DecodeException;
+import feign.codec.Decoder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * 响应为application/x-protostuff时按protostuff解码，其余交给默认的解码器
+ */
+public class ProtostuffFeignDecoder implements Decoder {
+
+    private static final MediaType APPLICATION_PROTOSTUFF = MediaType.valueOf(ProtostuffMessageCodec.APPLICATION_PROTOSTUFF_VALUE);
+
+    private final Decoder delegate;
+
+    public ProtostuffFeignDecoder(Decoder delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Object decode(Response response, Type type) throws IOException {
+        if (!isProtostuff(response) || response.body() == null) {
+            return delegate.decode(response, type);
+        }
+        try (InputStream in = response.body().asInputStream()) {
+            return ProtostuffMessageCodec.read(in);
+        } catch (RuntimeException e) {
+            throw new DecodeException(response.status(), "protostuff decode failed", response.request(), e);
+        }
+    }
+
+    private boolean isProtostuff(Response response) {
+        Collection<String> contentTypes = response.headers().get(HttpHeaders.CONTENT_TYPE);
+        if (contentTypes == null) {
+            return false;
+        }
+        for (String contentType : contentTypes) {
+            if (APPLICATION_PROTOSTUFF.equalsTypeAndSubtype(MediaType.parseMediaType(contentType))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
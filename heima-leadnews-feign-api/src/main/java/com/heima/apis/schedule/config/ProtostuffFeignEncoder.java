@@ -0,0 +1,20 @@
+package com.heima.apis.schedule.config;
+
+import com.heima.common.protostuff.ProtostuffMessageCodec;
+import feign.RequestTemplate;
+import feign.codec.Encoder;
+import org.springframework.http.HttpHeaders;
+
+import java.lang.reflect.Type;
+
+/**
+ * 请求体按application/x-protostuff编码
+ */
+public class ProtostuffFeignEncoder implements Encoder {
+
+    @Override
+    public void encode(Object object, Type bodyType, RequestTemplate template) {
+        template.header(HttpHeaders.CONTENT_TYPE, ProtostuffMessageCodec.APPLICATION_PROTOSTUFF_VALUE);
+        template.body(ProtostuffMessageCodec.toByteArray(object), null);
+    }
+}
@@ -0,0 +1,39 @@
+package com.heima.apis.schedule.config;
+
+import com.heima.common.protostuff.ProtostuffMessageCodec;
+import feign.RequestInterceptor;
+import feign.codec.Decoder;
+import feign.codec.Encoder;
+import feign.optionals.OptionalDecoder;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * 延迟任务服务的feign配置，只在@FeignClient(configuration)中引用，不要被组件扫描到
+ * feign.protostuff.enabled=true时请求和响应使用application/x-protostuff，任务参数不再经过base64，需要延迟任务服务先升级
+ */
+public class ScheduleFeignConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "feign.protostuff", name = "enabled", havingValue = "true")
+    public Encoder protostuffFeignEncoder() {
+        return new ProtostuffFeignEncoder();
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "feign.protostuff", name = "enabled", havingValue = "true")
+    public Decoder protostuffFeignDecoder(ObjectFactory<HttpMessageConverters> messageConverters) {
+        return new OptionalDecoder(new ResponseEntityDecoder(new ProtostuffFeignDecoder(new SpringDecoder(messageConverters))));
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "feign.protostuff", name = "enabled", havingValue = "true")
+    public RequestInterceptor protostuffAcceptInterceptor() {
+        return template -> template.header(HttpHeaders.ACCEPT, ProtostuffMessageCodec.APPLICATION_PROTOSTUFF_VALUE);
+    }
+}
@@ -24,6 +24,12 @@ public class AuthorizeFilter implements Ordered, GlobalFilter {
         ServerHttpRequest request = exchange.getRequest();
         ServerHttpResponse response = exchange.getResponse();
 
+        //内部接口只在服务之间调用，不允许从网关访问
+        if(isInnerPath(request.getURI().getPath())){
+            response.setStatusCode(HttpStatus.FORBIDDEN);
+            return response.setComplete();
+        }
+
         //2.判断是否是登录
         if(request.getURI().getPath().contains("/login")){
             //放行
@@ -71,6 +77,28 @@ public class AuthorizeFilter implements Ordered, GlobalFilter {
         return chain.filter(exchange);
     }
 
+    /**
+     * 路径中是否有inner段
+     * 每段去掉;之后的矩阵参数再整段比较，/article/inner;x/...和/article//inner/...都会被拦截
+     * @param path 解码后的路径
+     * @return
+     */
+    static boolean isInnerPath(String path) {
+        if (path == null) {
+            return false;
+        }
+        for (String segment : path.split("/")) {
+            int semicolon = segment.indexOf(';');
+            if (semicolon >= 0) {
+                segment = segment.substring(0, semicolon);
+            }
+            if ("inner".equalsIgnoreCase(segment.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 优先级设置  值越小  优先级越高
      * @return
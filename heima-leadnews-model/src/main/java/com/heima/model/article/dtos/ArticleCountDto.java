@@ -0,0 +1,14 @@
+package com.heima.model.article.dtos;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ArticleCountDto {
+
+    // 文章id
+    List<Long> articleIds;
+    // 统计最近多少毫秒的互动，为空时统计状态存储中保留的所有窗口
+    Long rangeMs;
+}
@@ -0,0 +1,265 @@
+package com.heima.article.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.heima.article.config.FeedCacheProperties;
+import com.heima.common.constants.ArticleConstants;
+import com.heima.common.redis.CacheService;
+import com.heima.model.article.dtos.ArticleHomeDto;
+import com.heima.model.common.dtos.ResponseResult;
+import com.heima.model.common.enums.AppHttpCodeEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 首页列表的两级缓存  进程内caffeine + redis，缓存的是序列化后的响应，命中时直接写出
+ * redis中的key带有频道的版本号，列表变化时增加版本号，旧版本的缓存不再被读取，等待过期
+ * 同时通过redis发布订阅通知所有实例清除对应频道的进程内缓存
+ */
+@Component
+@Slf4j
+public class FeedPageCache implements MessageListener {
+
+    @Autowired
+    private CacheService cacheService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FeedCacheProperties feedCacheProperties;
+
+    private Cache<String, byte[]> pages;
+
+    /**
+     * 等待发送失效通知的频道
+     */
+    private final Set<String> dirtyTags = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 只有热点分值变化的频道，按scoreInvalidateIntervalMs合并发送
+     */
+    private final Set<String> scoreDirtyTags = ConcurrentHashMap.newKeySet();
+
+    private volatile long lastScoreFlush;
+
+    /**
+     * 每次清除进程内缓存加一，加载期间发生过清除的结果不放入进程内缓存
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private static final String ALL_TAGS = "*";
+
+    @PostConstruct
+    public void init() {
+        pages = Caffeine.newBuilder()
+                .maximumSize(feedCacheProperties.getLocalMaxSize())
+                .expireAfterWrite(feedCacheProperties.getLocalTtlMs(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 查询缓存，没有命中时加载并缓存
+     *
+     * @param dto
+     * @param loadType  1 加载更多   2 加载最新
+     * @param firstPage true 首页，结果与请求时间无关
+     * @param loader    加载响应，会使用补全时间后的dto
+     * @return 序列化后的响应
+     */
+    public byte[] get(ArticleHomeDto dto, Short loadType, boolean firstPage, Supplier<ResponseResult> loader) {
+        if (!feedCacheProperties.isEnabled()) {
+            return serialize(loader.get());
+        }
+        String key = key(dto, loadType, firstPage);
+        byte[] page = pages.getIfPresent(key);
+        if (page != null) {
+            return page;
+        }
+        long loadGeneration = generation.get();
+        //加载前读取版本号，加载期间发生变化时结果写入旧版本的key，不会被读取
+        String redisKey = ArticleConstants.FEED_PAGE + key + "@" + version(dto.getTag());
+        String cached = cacheService.get(redisKey);
+        if (cached != null) {
+            page = cached.getBytes(StandardCharsets.UTF_8);
+        } else {
+            ResponseResult result = loader.get();
+            page = serialize(result);
+            if (result.getCode() == null || result.getCode() != AppHttpCodeEnum.SUCCESS.getCode()) {
+                return page;
+            }
+            cacheService.setEx(redisKey, new String(page, StandardCharsets.UTF_8),
+                    feedCacheProperties.getRedisTtlMs(), TimeUnit.MILLISECONDS);
+        }
+        if (generation.get() == loadGeneration) {
+            pages.put(key, page);
+        }
+        return page;
+    }
+
+    /**
+     * 缓存key  频道:类型:条数:时间
+     * 请求中的时间原样作为key，任何对齐都会让查询范围多出或者少掉客户端边界上的文章
+     * 没有传时间时使用当前时间，向下对齐后写回dto，这时客户端还没有文章，对齐不会造成重复
+     *
+     * @param dto
+     * @param loadType
+     * @param firstPage
+     * @return
+     */
+    private String key(ArticleHomeDto dto, Short loadType, boolean firstPage) {
+        if (StringUtils.isBlank(dto.getTag())) {
+            dto.setTag(ArticleConstants.DEFAULT_TAG);
+        }
+        String prefix = dto.getTag() + ":" + (firstPage ? "first" : loadType) + ":" + dto.getSize();
+        if (firstPage) {
+            return prefix;
+        }
+        boolean loadNew = ArticleConstants.LOADTYPE_LOAD_NEW.equals(loadType);
+        Date time = loadNew ? dto.getMaxBehotTime() : dto.getMinBehotTime();
+        if (time == null) {
+            long bucketMs = Math.max(1, feedCacheProperties.getBucketMs());
+            time = new Date(Math.floorDiv(System.currentTimeMillis(), bucketMs) * bucketMs);
+            if (loadNew) {
+                dto.setMaxBehotTime(time);
+            } else {
+                dto.setMinBehotTime(time);
+            }
+        }
+        return prefix + ":" + time.getTime();
+    }
+
+    /**
+     * 频道和全部频道的版本号
+     *
+     * @param tag
+     * @return 频道版本号.全部频道版本号
+     */
+    private String version(String tag) {
+        List<Object> versions = cacheService.hMultiGet(ArticleConstants.FEED_PAGE_VERSION, Arrays.<Object>asList(tag, ALL_TAGS));
+        return (versions.get(0) == null ? "0" : versions.get(0)) + "." + (versions.get(1) == null ? "0" : versions.get(1));
+    }
+
+    private byte[] serialize(ResponseResult result) {
+        try {
+            return objectMapper.writeValueAsBytes(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 文章所在频道和推荐的列表发生变化
+     *
+     * @param channelId
+     */
+    public void invalidate(Integer channelId) {
+        if (channelId != null) {
+            dirtyTags.add(channelId.toString());
+        }
+        dirtyTags.add(ArticleConstants.DEFAULT_TAG);
+    }
+
+    /**
+     * 文章所在频道和推荐的热点分值发生变化，列表中的文章没有增减
+     * 分值随行为数据频繁变化，合并后按scoreInvalidateIntervalMs发送
+     *
+     * @param channelId
+     */
+    public void invalidateScores(Integer channelId) {
+        if (channelId != null) {
+            scoreDirtyTags.add(channelId.toString());
+        }
+        scoreDirtyTags.add(ArticleConstants.DEFAULT_TAG);
+    }
+
+    /**
+     * 所有频道的列表发生变化
+     */
+    public void invalidateAll() {
+        dirtyTags.add(ALL_TAGS);
+    }
+
+    /**
+     * 合并发送失效通知，先增加redis中的版本号再通知各实例清除进程内缓存
+     */
+    @Scheduled(fixedDelayString = "${article.feed-cache.invalidate-delay-ms:500}")
+    public void flushInvalidation() {
+        long now = System.currentTimeMillis();
+        if (!scoreDirtyTags.isEmpty() && now - lastScoreFlush >= feedCacheProperties.getScoreInvalidateIntervalMs()) {
+            lastScoreFlush = now;
+            drain(scoreDirtyTags, dirtyTags);
+        }
+        if (dirtyTags.isEmpty()) {
+            return;
+        }
+        List<String> tags = new ArrayList<>();
+        drain(dirtyTags, tags);
+        try {
+            for (String tag : tags) {
+                cacheService.hIncrBy(ArticleConstants.FEED_PAGE_VERSION, tag, 1);
+            }
+            evictLocal(tags);
+            cacheService.publish(ArticleConstants.FEED_INVALIDATE_CHANNEL, String.join(",", tags));
+        } catch (Exception e) {
+            //下次重试
+            dirtyTags.addAll(tags);
+            log.error("首页列表缓存失效通知异常", e);
+        }
+    }
+
+    /**
+     * 收到失效通知
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (StringUtils.isNotBlank(body)) {
+            evictLocal(Arrays.asList(body.split(",")));
+        }
+    }
+
+    private void drain(Set<String> from, Collection<String> to) {
+        Iterator<String> iterator = from.iterator();
+        while (iterator.hasNext()) {
+            to.add(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private void evictLocal(List<String> tags) {
+        generation.incrementAndGet();
+        if (tags.contains(ALL_TAGS)) {
+            pages.invalidateAll();
+            return;
+        }
+        for (String tag : tags) {
+            String prefix = tag + ":";
+            pages.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.heima.article.config;
+
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * 实时互动查询转发到其他实例时使用的RestTemplate
+ */
+@Configuration
+public class ArticleCountQueryConfig {
+
+    @Bean
+    public RestTemplate articleCountRestTemplate(RestTemplateBuilder builder, HotArticleStreamProperties properties) {
+        Duration timeout = Duration.ofMillis(properties.getQueryTimeoutMs());
+        return builder.setConnectTimeout(timeout)
+                .setReadTimeout(timeout)
+                .build();
+    }
+}
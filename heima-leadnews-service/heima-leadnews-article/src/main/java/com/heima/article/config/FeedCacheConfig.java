@@ -0,0 +1,25 @@
+package com.heima.article.config;
+
+import com.heima.article.cache.FeedPageCache;
+import com.heima.common.constants.ArticleConstants;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 订阅首页列表缓存失效通知
+ */
+@Configuration
+public class FeedCacheConfig {
+
+    @Bean
+    public RedisMessageListenerContainer feedInvalidateListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                         FeedPageCache feedPageCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(feedPageCache, new ChannelTopic(ArticleConstants.FEED_INVALIDATE_CHANNEL));
+        return container;
+    }
+}
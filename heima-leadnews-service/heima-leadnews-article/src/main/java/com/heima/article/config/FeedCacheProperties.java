@@ -0,0 +1,51 @@
+package com.heima.article.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 首页列表缓存配置
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "article.feed-cache")
+public class FeedCacheProperties {
+
+    /**
+     * 是否开启缓存，关闭后每次请求都查询
+     */
+    private boolean enabled = true;
+
+    /**
+     * 进程内缓存的最大条数
+     */
+    private long localMaxSize = 10000;
+
+    /**
+     * 进程内缓存的过期时间，失效通知丢失时的兜底
+     */
+    private long localTtlMs = 30000;
+
+    /**
+     * redis中缓存的过期时间
+     */
+    private long redisTtlMs = 60000;
+
+    /**
+     * 加载更多、加载最新请求没有传时间时，当前时间按这个宽度对齐后作为缓存key
+     */
+    private long bucketMs = 1000;
+
+    /**
+     * 失效通知合并发送的间隔，热点分值频繁变化时避免每条消息都清空缓存
+     */
+    private long invalidateDelayMs = 500;
+
+    /**
+     * 只有热点分值变化时失效通知的最小间隔，列表中文章的分值和行为数量最多延迟这么久
+     */
+    private long scoreInvalidateIntervalMs = 10000;
+}
@@ -0,0 +1,55 @@
+package com.heima.article.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 热点文章计算配置
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "article.hot")
+public class HotArticleProperties {
+
+    /**
+     * 计算分值的线程数，大于1时按批读取后用fork/join并行计算
+     */
+    private int parallelism = 1;
+
+    /**
+     * 并行计算时每批读取的文章数量，决定计算过程中占用的内存
+     */
+    private int chunkSize = 10000;
+
+    /**
+     * 默认的分值模型，推荐和没有单独配置的频道使用
+     */
+    private Score score = new Score();
+
+    /**
+     * 按频道配置的分值模型  key:频道id，__all__为推荐
+     * 修改后已经在排行榜中的分值不会重算，需要等待下次全量计算
+     */
+    private Map<String, Score> channelScore = new HashMap<>();
+
+    @Getter
+    @Setter
+    public static class Score {
+
+        /**
+         * sum:加权求和，不随时间衰减  gravity:按半衰期随时间衰减
+         */
+        private String model = "gravity";
+
+        /**
+         * gravity模型热度衰减一半的时间
+         */
+        private double halfLifeHours = 24;
+    }
+}
@@ -0,0 +1,62 @@
+package com.heima.article.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
+
+/**
+ * 文章行为聚合stream配置
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "article.stream")
+@Validated
+public class HotArticleStreamProperties {
+
+    /**
+     * 聚合时间窗口的长度
+     */
+    @Min(1)
+    private long windowMs = 10000;
+
+    /**
+     * 窗口结束后继续接收迟到消息的时间，窗口在结束后再过这个时间才发送结果
+     */
+    @Min(0)
+    private long graceMs = 1000;
+
+    /**
+     * true 每个窗口只在关闭后发送一次最终结果
+     * false 每次缓存刷新都发送窗口当前的累计值，下游按增量累加，同一窗口的消息会被重复计算
+     */
+    private boolean emitOnClose = true;
+
+    /**
+     * 窗口在状态存储中的保留时间，也是实时互动查询的最大范围，不能小于窗口长度加宽限期
+     */
+    private long retentionMs = 24 * 60 * 60 * 1000;
+
+    /**
+     * 一次查询的最大文章数量
+     */
+    private int queryMaxSize = 100;
+
+    /**
+     * 转发查询到其他实例的超时时间
+     */
+    private long queryTimeoutMs = 1000;
+
+    /**
+     * 保留时间不足时窗口还没有关闭就被删除
+     */
+    @AssertTrue(message = "retention-ms不能小于window-ms加grace-ms")
+    public boolean isRetentionValid() {
+        return retentionMs >= windowMs + graceMs;
+    }
+}
@@ -2,6 +2,7 @@ package com.heima.article.config;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.StreamsConfig;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -27,6 +28,10 @@ public class KafkaStreamConfig {
     private static final int MAX_MESSAGE_SIZE = 16* 1024 * 1024;
     private String hosts;
     private String group;
+    /**
+     * 当前实例提供查询接口的地址 host:port，多个实例时用于把实时互动查询转发到状态存储所在的实例
+     */
+    private String applicationServer;
     @Bean(name = KafkaStreamsDefaultConfiguration.DEFAULT_STREAMS_CONFIG_BEAN_NAME)
     public KafkaStreamsConfiguration defaultKafkaStreamsConfig() {
         Map<String, Object> props = new HashMap<>();
@@ -36,6 +41,9 @@ public class KafkaStreamConfig {
         props.put(StreamsConfig.RETRIES_CONFIG, 10);
         props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
         props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        if (StringUtils.isNotBlank(applicationServer)) {
+            props.put(StreamsConfig.APPLICATION_SERVER_CONFIG, applicationServer);
+        }
         return new KafkaStreamsConfiguration(props);
     }
 }
\ No newline at end of file
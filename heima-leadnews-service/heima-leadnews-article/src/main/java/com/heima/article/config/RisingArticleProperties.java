@@ -0,0 +1,66 @@
+package com.heima.article.config;
+
+import com.heima.common.constants.ArticleConstants;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+
+/**
+ * 互动增速排行配置
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "article.rising")
+@Validated
+public class RisingArticleProperties {
+
+    /**
+     * 是否计算增速排行
+     */
+    private boolean enabled = true;
+
+    /**
+     * 最近多少分钟的互动作为当前速度
+     */
+    @Min(1)
+    private int recentMinutes = 5;
+
+    /**
+     * 当前速度之前多少分钟的互动作为基准速度
+     */
+    @Min(1)
+    private int baselineMinutes = 60;
+
+    /**
+     * 最近的加权互动至少达到这个值才参与排行，过滤偶然的几次访问
+     */
+    private int minRecent = 10;
+
+    /**
+     * 每个频道保留的文章数量
+     */
+    private int size = ArticleConstants.HOT_ARTICLE_SIZE;
+
+    /**
+     * 计算和发布的间隔
+     */
+    @Min(1)
+    private long publishIntervalMs = 60000;
+
+    /**
+     * redis中排行的有效期，stream停止后过期
+     */
+    private long ttlMs = 10 * 60 * 1000;
+
+    /**
+     * 参与计算的分钟数
+     */
+    public int totalMinutes() {
+        return recentMinutes + baselineMinutes;
+    }
+}
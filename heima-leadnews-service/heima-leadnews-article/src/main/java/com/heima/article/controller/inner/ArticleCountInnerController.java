@@ -0,0 +1,31 @@
+package com.heima.article.controller.inner;
+
+import com.heima.article.service.ArticleCountService;
+import com.heima.model.article.dtos.ArticleCountDto;
+import com.heima.model.common.dtos.ResponseResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 实例之间转发的实时互动查询，/inner开头的路径在网关中拒绝访问
+ */
+@RestController
+@RequestMapping("/inner/article/count")
+public class ArticleCountInnerController {
+
+    @Autowired
+    private ArticleCountService articleCountService;
+
+    /**
+     * 只查询当前实例，由其他实例转发调用
+     * @param dto
+     * @return
+     */
+    @PostMapping("/local")
+    public ResponseResult localCount(@RequestBody ArticleCountDto dto) {
+        return articleCountService.localCount(dto);
+    }
+}
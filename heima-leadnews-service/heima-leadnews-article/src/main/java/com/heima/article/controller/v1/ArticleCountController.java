@@ -0,0 +1,28 @@
+package com.heima.article.controller.v1;
+
+import com.heima.article.service.ArticleCountService;
+import com.heima.model.article.dtos.ArticleCountDto;
+import com.heima.model.common.dtos.ResponseResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/article/count")
+public class ArticleCountController {
+
+    @Autowired
+    private ArticleCountService articleCountService;
+
+    /**
+     * 文章最近的实时互动，不查询数据库
+     * @param dto
+     * @return
+     */
+    @PostMapping
+    public ResponseResult count(@RequestBody ArticleCountDto dto) {
+        return articleCountService.count(dto);
+    }
+}
@@ -1,10 +1,14 @@
 package com.heima.article.controller.v1;
 
+import com.heima.article.cache.FeedPageCache;
 import com.heima.article.service.ApArticleService;
+import com.heima.article.service.ArticleRisingService;
 import com.heima.common.constants.ArticleConstants;
 import com.heima.model.article.dtos.ArticleHomeDto;
 import com.heima.model.common.dtos.ResponseResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -17,15 +21,22 @@ public class ArticleHomeController {
     @Autowired
     private ApArticleService apArticleService;
 
+    @Autowired
+    private FeedPageCache feedPageCache;
+
+    @Autowired
+    private ArticleRisingService articleRisingService;
+
     /**
      * 加载首页
      * @param dto
      * @return
      */
     @PostMapping("/load")
-    public ResponseResult load(@RequestBody ArticleHomeDto dto) {
+    public ResponseEntity<byte[]> load(@RequestBody ArticleHomeDto dto) {
 //        return apArticleService.load(dto, ArticleConstants.LOADTYPE_LOAD_MORE);
-        return apArticleService.load2(dto, ArticleConstants.LOADTYPE_LOAD_MORE, true);
+        return page(feedPageCache.get(dto, ArticleConstants.LOADTYPE_LOAD_MORE, true,
+                () -> apArticleService.load2(dto, ArticleConstants.LOADTYPE_LOAD_MORE, true)));
     }
 
     /**
@@ -34,8 +45,9 @@ public class ArticleHomeController {
      * @return
      */
     @PostMapping("/loadmore")
-    public ResponseResult loadMore(@RequestBody ArticleHomeDto dto) {
-        return apArticleService.load(dto, ArticleConstants.LOADTYPE_LOAD_MORE);
+    public ResponseEntity<byte[]> loadMore(@RequestBody ArticleHomeDto dto) {
+        return page(feedPageCache.get(dto, ArticleConstants.LOADTYPE_LOAD_MORE, false,
+                () -> apArticleService.load(dto, ArticleConstants.LOADTYPE_LOAD_MORE)));
     }
 
     /**
@@ -44,7 +56,27 @@ public class ArticleHomeController {
      * @return
      */
     @PostMapping("/loadnew")
-    public ResponseResult loadNew(@RequestBody ArticleHomeDto dto) {
-        return apArticleService.load(dto, ArticleConstants.LOADTYPE_LOAD_NEW);
+    public ResponseEntity<byte[]> loadNew(@RequestBody ArticleHomeDto dto) {
+        return page(feedPageCache.get(dto, ArticleConstants.LOADTYPE_LOAD_NEW, false,
+                () -> apArticleService.load(dto, ArticleConstants.LOADTYPE_LOAD_NEW)));
+    }
+
+    /**
+     * 互动增速最快的文章
+     * @param dto
+     * @return
+     */
+    @PostMapping("/rising")
+    public ResponseResult rising(@RequestBody ArticleHomeDto dto) {
+        return articleRisingService.load(dto);
+    }
+
+    /**
+     * 直接写出缓存中序列化好的响应
+     * @param body
+     * @return
+     */
+    private ResponseEntity<byte[]> page(byte[] body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 }
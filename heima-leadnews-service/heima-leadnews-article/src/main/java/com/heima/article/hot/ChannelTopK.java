@@ -0,0 +1,194 @@
+package com.heima.article.hot;
+
+import com.heima.model.article.pojos.ApArticle;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 按频道保留分值最高的k篇文章，每个频道一个小顶堆，另外一个堆保留所有频道中分值最高的k篇
+ * 频道和推荐可以使用不同的分值模型，所以分别计算
+ * 占用的内存只与频道数量和k有关，与参与计算的文章数量无关
+ */
+public class ChannelTopK {
+
+    private static final Comparator<Scored> BY_SCORE = Comparator.comparingDouble(Scored::getScore);
+
+    private final int k;
+
+    /**
+     * key:频道id
+     */
+    private final Map<Integer, PriorityQueue<Scored>> heaps = new HashMap<>();
+
+    private final PriorityQueue<Scored> all;
+
+    public ChannelTopK(int k) {
+        this.k = k;
+        this.all = new PriorityQueue<>(k + 1, BY_SCORE);
+    }
+
+    /**
+     * 加入一篇文章
+     *
+     * @param apArticle
+     * @param channelScore 所属频道排行榜中的分值
+     * @param allScore     推荐排行榜中的分值
+     */
+    public void offer(ApArticle apArticle, double channelScore, double allScore) {
+        push(heap(apArticle.getChannelId()), apArticle, channelScore);
+        push(all, apArticle, allScore);
+    }
+
+    /**
+     * 合并另一个结果
+     *
+     * @param other
+     * @return this
+     */
+    public ChannelTopK merge(ChannelTopK other) {
+        for (Map.Entry<Integer, PriorityQueue<Scored>> entry : other.heaps.entrySet()) {
+            PriorityQueue<Scored> heap = heap(entry.getKey());
+            for (Scored scored : entry.getValue()) {
+                push(heap, scored.getArticle(), scored.getScore());
+            }
+        }
+        for (Scored scored : other.all) {
+            push(all, scored.getArticle(), scored.getScore());
+        }
+        return this;
+    }
+
+    /**
+     * 频道中分值最高的文章，按分值从高到低
+     *
+     * @param channelId
+     * @return
+     */
+    public List<Scored> top(Integer channelId) {
+        PriorityQueue<Scored> heap = heaps.get(channelId);
+        return heap == null ? new ArrayList<>() : sorted(heap);
+    }
+
+    /**
+     * 所有频道中分值最高的文章，按分值从高到低
+     *
+     * @return
+     */
+    public List<Scored> topAll() {
+        return sorted(all);
+    }
+
+    private PriorityQueue<Scored> heap(Integer channelId) {
+        return heaps.computeIfAbsent(channelId, c -> new PriorityQueue<>(k + 1, BY_SCORE));
+    }
+
+    /**
+     * 没有进入前k时不创建对象
+     */
+    private void push(PriorityQueue<Scored> heap, ApArticle apArticle, double score) {
+        if (heap.size() >= k && score <= heap.peek().getScore()) {
+            return;
+        }
+        heap.offer(new Scored(apArticle, score));
+        if (heap.size() > k) {
+            heap.poll();
+        }
+    }
+
+    private List<Scored> sorted(PriorityQueue<Scored> heap) {
+        List<Scored> list = new ArrayList<>(heap);
+        list.sort(BY_SCORE.reversed());
+        return list;
+    }
+
+    /**
+     * 用fork/join并行计算一批文章的结果
+     *
+     * @param articles
+     * @param channelScorer 所属频道排行榜中的分值
+     * @param allScorer     推荐排行榜中的分值
+     * @param k
+     * @return
+     */
+    public static RecursiveTask<ChannelTopK> task(List<ApArticle> articles, ToDoubleFunction<ApArticle> channelScorer,
+                                                  ToDoubleFunction<ApArticle> allScorer, int k) {
+        return new CollectTask(articles, 0, articles.size(), channelScorer, allScorer, k);
+    }
+
+    /**
+     * 文章和它在排行榜中的分值
+     */
+    public static class Scored {
+
+        private final ApArticle article;
+
+        private final double score;
+
+        Scored(ApArticle article, double score) {
+            this.article = article;
+            this.score = score;
+        }
+
+        public ApArticle getArticle() {
+            return article;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private static class CollectTask extends RecursiveTask<ChannelTopK> {
+
+        /**
+         * 小于这个数量时不再拆分
+         */
+        private static final int THRESHOLD = 2048;
+
+        private final List<ApArticle> articles;
+
+        private final int from;
+
+        private final int to;
+
+        private final ToDoubleFunction<ApArticle> channelScorer;
+
+        private final ToDoubleFunction<ApArticle> allScorer;
+
+        private final int k;
+
+        CollectTask(List<ApArticle> articles, int from, int to, ToDoubleFunction<ApArticle> channelScorer,
+                    ToDoubleFunction<ApArticle> allScorer, int k) {
+            this.articles = articles;
+            this.from = from;
+            this.to = to;
+            this.channelScorer = channelScorer;
+            this.allScorer = allScorer;
+            this.k = k;
+        }
+
+        @Override
+        protected ChannelTopK compute() {
+            if (to - from <= THRESHOLD) {
+                ChannelTopK topK = new ChannelTopK(k);
+                for (int i = from; i < to; i++) {
+                    ApArticle apArticle = articles.get(i);
+                    topK.offer(apArticle, channelScorer.applyAsDouble(apArticle), allScorer.applyAsDouble(apArticle));
+                }
+                return topK;
+            }
+            int mid = (from + to) >>> 1;
+            CollectTask left = new CollectTask(articles, from, mid, channelScorer, allScorer, k);
+            left.fork();
+            ChannelTopK right = new CollectTask(articles, mid, to, channelScorer, allScorer, k).compute();
+            return right.merge(left.join());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.heima.article.hot;
+
+import com.heima.model.article.pojos.ApArticle;
+
+/**
+ * 按半衰期随时间衰减的热度  热度 = 加权和 * 2^(-文章年龄 / 半衰期)
+ * 排行榜中保存的是热度的对数再加上所有文章共同的 当前时间 / 半衰期 * ln2：
+ * ln(1 + 加权和) + 发布时间(小时) / 半衰期 * ln2
+ * 所有文章的热度按相同的比例衰减，排序不变，因此分值只在文章数据变化时更新，不需要定时重算
+ */
+public class GravityScoreModel implements HotScoreModel {
+
+    private static final double LN2 = Math.log(2);
+
+    private static final double MILLIS_PER_HOUR = 60 * 60 * 1000;
+
+    /**
+     * 每小时增加的分值
+     */
+    private final double perHour;
+
+    /**
+     * @param halfLifeHours 热度衰减一半的时间
+     */
+    public GravityScoreModel(double halfLifeHours) {
+        this.perHour = LN2 / halfLifeHours;
+    }
+
+    @Override
+    public double score(ApArticle apArticle) {
+        double weighted = Math.max(0, WeightedSumScoreModel.weighted(apArticle));
+        return Math.log1p(weighted) + hours(apArticle) * perHour;
+    }
+
+    /**
+     * 发布时间，没有时依次使用创建时间、当前时间
+     *
+     * @param apArticle
+     * @return
+     */
+    private double hours(ApArticle apArticle) {
+        long time;
+        if (apArticle.getPublishTime() != null) {
+            time = apArticle.getPublishTime().getTime();
+        } else if (apArticle.getCreatedTime() != null) {
+            time = apArticle.getCreatedTime().getTime();
+        } else {
+            time = System.currentTimeMillis();
+        }
+        return time / MILLIS_PER_HOUR;
+    }
+}
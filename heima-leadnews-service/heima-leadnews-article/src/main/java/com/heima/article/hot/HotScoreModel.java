@@ -0,0 +1,19 @@
+package com.heima.article.hot;
+
+import com.heima.model.article.pojos.ApArticle;
+
+/**
+ * 热点文章分值模型
+ * 返回的分值保存在排行榜中，只能依赖文章自身的数据，不能依赖计算时的时间，
+ * 这样已经写入的分值不会过期，只需要在文章数据变化时更新
+ */
+public interface HotScoreModel {
+
+    /**
+     * 排行榜中的分值，越大越靠前
+     *
+     * @param apArticle
+     * @return
+     */
+    double score(ApArticle apArticle);
+}
@@ -0,0 +1,45 @@
+package com.heima.article.hot;
+
+import com.heima.article.config.HotArticleProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 按排行榜选择分值模型，没有单独配置的频道和推荐使用默认模型
+ * 同一个排行榜中的文章必须使用同一个模型计算，分值才能比较
+ */
+@Component
+public class HotScoreModels {
+
+    public static final String MODEL_SUM = "sum";
+
+    public static final String MODEL_GRAVITY = "gravity";
+
+    @Autowired
+    private HotArticleProperties hotArticleProperties;
+
+    /**
+     * 排行榜使用的分值模型
+     *
+     * @param tag 频道id，推荐为__all__
+     * @return
+     */
+    public HotScoreModel forTag(String tag) {
+        HotArticleProperties.Score score = hotArticleProperties.getChannelScore().get(tag);
+        return create(score == null ? hotArticleProperties.getScore() : score);
+    }
+
+    public static HotScoreModel create(HotArticleProperties.Score score) {
+        return create(score.getModel(), score.getHalfLifeHours());
+    }
+
+    public static HotScoreModel create(String model, double halfLifeHours) {
+        if (MODEL_SUM.equals(model)) {
+            return new WeightedSumScoreModel();
+        }
+        if (MODEL_GRAVITY.equals(model)) {
+            return new GravityScoreModel(halfLifeHours);
+        }
+        throw new IllegalArgumentException("不支持的热点分值模型:" + model);
+    }
+}
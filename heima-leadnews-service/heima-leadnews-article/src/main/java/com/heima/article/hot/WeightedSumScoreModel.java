@@ -0,0 +1,38 @@
+package com.heima.article.hot;
+
+import com.heima.common.constants.ArticleConstants;
+import com.heima.model.article.pojos.ApArticle;
+
+/**
+ * 阅读、点赞、评论、收藏加权求和，不随时间衰减
+ */
+public class WeightedSumScoreModel implements HotScoreModel {
+
+    @Override
+    public double score(ApArticle apArticle) {
+        return weighted(apArticle);
+    }
+
+    /**
+     * 计算文章的具体分值
+     *
+     * @param apArticle
+     * @return
+     */
+    public static int weighted(ApArticle apArticle) {
+        int score = 0;
+        if (apArticle.getLikes() != null) {
+            score += apArticle.getLikes() * ArticleConstants.HOT_ARTICLE_LIKE_WEIGHT;
+        }
+        if (apArticle.getViews() != null) {
+            score += apArticle.getViews();
+        }
+        if (apArticle.getComment() != null) {
+            score += apArticle.getComment() * ArticleConstants.HOT_ARTICLE_COMMENT_WEIGHT;
+        }
+        if (apArticle.getCollection() != null) {
+            score += apArticle.getCollection() * ArticleConstants.HOT_ARTICLE_COLLECTION_WEIGHT;
+        }
+        return score;
+    }
+}
@@ -10,6 +10,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 @Slf4j
 public class ArticleIncrHandleListener {
@@ -17,12 +20,22 @@ public class ArticleIncrHandleListener {
     @Autowired
     private ApArticleService apArticleService;
 
-    @KafkaListener(topics = HotArticleConstants.HOT_ARTICLE_INCR_HANDLE_TOPIC)
-    public void onMessage(String mess){
-        if(StringUtils.isNotBlank(mess)){
-            ArticleVisitStreamMess articleVisitStreamMess = JSON.parseObject(mess, ArticleVisitStreamMess.class);
-            apArticleService.updateScore(articleVisitStreamMess);
-
+    /**
+     * 批量消费，一次拉取的消息合并后更新数据库和热点文章
+     * @param messages
+     */
+    @KafkaListener(topics = HotArticleConstants.HOT_ARTICLE_INCR_HANDLE_TOPIC,
+            containerFactory = "batchKafkaListenerContainerFactory",
+            properties = "max.poll.records=${article.score.batch-size:500}")
+    public void onMessage(List<String> messages){
+        List<ArticleVisitStreamMess> messList = new ArrayList<>(messages.size());
+        for (String mess : messages) {
+            if(StringUtils.isNotBlank(mess)){
+                messList.add(JSON.parseObject(mess, ArticleVisitStreamMess.class));
+            }
+        }
+        if (!messList.isEmpty()) {
+            apArticleService.updateScores(messList);
         }
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package com.heima.article.listener;
 
 import com.alibaba.fastjson.JSON;
 import com.heima.article.service.ApArticleConfigService;
+import com.heima.article.service.ArticleTimelineService;
 import com.heima.common.constants.WmNewsMessageConstants;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
@@ -19,11 +20,16 @@ public class ArticleIsDownListener {
     @Autowired
     private ApArticleConfigService apArticleConfigService;
 
+    @Autowired
+    private ArticleTimelineService articleTimelineService;
+
     @KafkaListener(topics = WmNewsMessageConstants.WM_NEWS_UP_OR_DOWN_TOPIC)
     public void onMessage(String message) {
         if (StringUtils.isNotBlank(message)) {
             Map map = JSON.parseObject(message, Map.class);
             apArticleConfigService.updateByMap(map);
+            //0 下架 1 上架
+            articleTimelineService.upOrDown(Long.valueOf(map.get("articleId").toString()), !map.get("enable").equals(1));
         }
     }
 }
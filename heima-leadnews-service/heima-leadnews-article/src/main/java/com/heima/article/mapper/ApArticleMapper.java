@@ -3,8 +3,10 @@ package com.heima.article.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.heima.model.article.dtos.ArticleHomeDto;
 import com.heima.model.article.pojos.ApArticle;
+import com.heima.model.mess.ArticleVisitStreamMess;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.util.Date;
 import java.util.List;
@@ -21,9 +23,16 @@ public interface ApArticleMapper extends BaseMapper<ApArticle> {
     public List<ApArticle> loadArticleList(ArticleHomeDto dto, Short type);
 
     /**
-     * 查找前5天的文章
+     * 查找前5天的文章，流式返回，需要在事务中遍历
      * @param dayParam
      * @return
      */
-    public List<ApArticle> findArticleListByLast5days(@Param("dayParam") Date dayParam);
+    public Cursor<ApArticle> findArticleListByLast5days(@Param("dayParam") Date dayParam);
+
+    /**
+     * 一条语句累加多篇文章的阅读、点赞、评论、收藏数量
+     * @param messList 每篇文章合并后的增量，文章id不能重复
+     * @return
+     */
+    public int incrBehaviors(@Param("messList") List<ArticleVisitStreamMess> messList);
 }
@@ -9,6 +9,7 @@ import com.heima.model.mess.ArticleVisitStreamMess;
 import org.springframework.web.bind.annotation.RequestBody;
 
 import java.io.IOException;
+import java.util.List;
 
 public interface ApArticleService extends IService<ApArticle> {
 
@@ -45,4 +46,10 @@ public interface ApArticleService extends IService<ApArticle> {
      */
     public void updateScore(ArticleVisitStreamMess mess);
 
+    /**
+     * 批量更新文章的分值  同一篇文章的增量合并后一次写入，热点文章数据一次更新
+     * @param messList
+     */
+    public void updateScores(List<ArticleVisitStreamMess> messList);
+
 }
\ No newline at end of file
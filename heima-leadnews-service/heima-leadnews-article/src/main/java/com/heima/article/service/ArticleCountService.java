@@ -0,0 +1,23 @@
+package com.heima.article.service;
+
+import com.heima.model.article.dtos.ArticleCountDto;
+import com.heima.model.common.dtos.ResponseResult;
+
+public interface ArticleCountService {
+
+    /**
+     * 查询文章最近的实时互动，不在当前实例的文章转发到状态存储所在的实例
+     *
+     * @param dto
+     * @return
+     */
+    public ResponseResult count(ArticleCountDto dto);
+
+    /**
+     * 只查询当前实例的状态存储，由其他实例转发调用
+     *
+     * @param dto
+     * @return
+     */
+    public ResponseResult localCount(ArticleCountDto dto);
+}
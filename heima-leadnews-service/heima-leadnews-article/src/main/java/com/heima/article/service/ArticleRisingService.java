@@ -0,0 +1,35 @@
+package com.heima.article.service;
+
+import com.heima.model.article.dtos.ArticleHomeDto;
+import com.heima.model.common.dtos.ResponseResult;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface ArticleRisingService {
+
+    /**
+     * 加载频道互动增速最快的文章，只读取redis
+     *
+     * @param dto
+     * @return
+     */
+    public ResponseResult load(ArticleHomeDto dto);
+
+    /**
+     * 从redis中的文章数据查询文章所属的频道
+     *
+     * @param articleIds
+     * @return key:文章id  value:频道id，没有查询到的文章不包含在结果中
+     */
+    public Map<Long, Integer> channels(Collection<Long> articleIds);
+
+    /**
+     * 发布频道的增速排行
+     *
+     * @param tag        频道id，推荐为__all__
+     * @param articleIds 按增速从高到低
+     */
+    public void publish(String tag, List<Long> articleIds);
+}
@@ -0,0 +1,33 @@
+package com.heima.article.service;
+
+import com.heima.model.article.dtos.ArticleHomeDto;
+import com.heima.model.article.pojos.ApArticle;
+
+import java.util.List;
+
+public interface ArticleTimelineService {
+
+    /**
+     * 从频道时间线加载文章列表
+     *
+     * @param dto
+     * @param loadType 1为加载更多  2为加载最新
+     * @return 时间线无法回答时返回null，由数据库查询
+     */
+    public List<ApArticle> load(ArticleHomeDto dto, Short loadType);
+
+    /**
+     * 文章发布或修改后加入所属频道和推荐的时间线
+     *
+     * @param apArticle
+     */
+    public void add(ApArticle apArticle);
+
+    /**
+     * 文章上下架后更新时间线
+     *
+     * @param articleId
+     * @param isDown    true 下架  false 上架
+     */
+    public void upOrDown(Long articleId, boolean isDown);
+}
@@ -4,11 +4,16 @@ import com.alibaba.fastjson.JSON;
 import com.baomidou.mybatisplus.core.toolkit.StringUtils;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.heima.article.cache.FeedPageCache;
+import com.heima.article.hot.HotScoreModel;
+import com.heima.article.hot.HotScoreModels;
+import com.heima.article.hot.WeightedSumScoreModel;
 import com.heima.article.mapper.ApArticleConfigMapper;
 import com.heima.article.mapper.ApArticleContentMapper;
 import com.heima.article.mapper.ApArticleMapper;
 import com.heima.article.service.ApArticleService;
 import com.heima.article.service.ArticleFreemarkerService;
+import com.heima.article.service.ArticleTimelineService;
 import com.heima.common.constants.ArticleConstants;
 import com.heima.common.redis.CacheService;
 import com.heima.model.article.dtos.ArticleDto;
@@ -25,14 +30,23 @@ import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.units.qual.A;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Service
 @Transactional
@@ -54,6 +68,15 @@ public class ApArticleServiceImpl extends ServiceImpl<ApArticleMapper, ApArticle
     @Autowired
     private CacheService cacheService;
 
+    @Autowired
+    private ArticleTimelineService articleTimelineService;
+
+    @Autowired
+    private FeedPageCache feedPageCache;
+
+    @Autowired
+    private HotScoreModels hotScoreModels;
+
     private final static short MAX_PAGE_SIZE = 50;
 
     /**
@@ -92,8 +115,11 @@ public class ApArticleServiceImpl extends ServiceImpl<ApArticleMapper, ApArticle
         if (dto.getMinBehotTime() == null) {
             dto.setMinBehotTime(new Date());
         }
-        //2.查询
-        List<ApArticle> articleList = apArticleMapper.loadArticleList(dto, loadType);
+        //2.查询  优先从频道时间线查询，时间线无法回答时查询数据库
+        List<ApArticle> articleList = articleTimelineService.load(dto, loadType);
+        if (articleList == null) {
+            articleList = apArticleMapper.loadArticleList(dto, loadType);
+        }
         //3.结果返回
         return ResponseResult.okResult(articleList);
     }
@@ -137,6 +163,16 @@ public class ApArticleServiceImpl extends ServiceImpl<ApArticleMapper, ApArticle
             apArticleContentMapper.updateById(apArticleContent);
         }
 
+        //事务提交后再更新频道时间线和排行榜，回滚的文章不会出现在redis中
+        boolean isNew = dto.getId() == null;
+        afterCommit(() -> {
+            articleTimelineService.add(article);
+            //新发布的文章按发布时间计算分值，直接进入排行榜，不用等待全量计算
+            if (isNew && article.getChannelId() != null) {
+                updateHotRank(Collections.singletonList(article));
+            }
+        });
+
         //异步调用 生成静态文件并上传到minIO中
         articleFreemarkerService.buildArticleToMinIO(article, dto.getContent());
 
@@ -144,6 +180,32 @@ public class ApArticleServiceImpl extends ServiceImpl<ApArticleMapper, ApArticle
         return ResponseResult.okResult(article.getId());
     }
 
+    /**
+     * 当前事务提交后执行，没有事务时直接执行
+     * 文章已经提交，执行失败只记录日志，不影响保存的结果
+     *
+     * @param action
+     */
+    private void afterCommit(Runnable action) {
+        Runnable safeAction = () -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                log.error("文章保存后更新时间线和排行榜异常", e);
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            safeAction.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                safeAction.run();
+            }
+        });
+    }
+
     /**
      * 加载文章列表
      *
@@ -155,11 +217,9 @@ public class ApArticleServiceImpl extends ServiceImpl<ApArticleMapper, ApArticle
     @Override
     public ResponseResult load2(ArticleHomeDto dto, Short type, boolean firstPage) {
         if (firstPage) {
-            String jsonStr = cacheService.get(ArticleConstants.HOT_ARTICLE_FIRST_PAGE + dto.getTag());
-            if (StringUtils.isNotBlank(jsonStr)) {
-                List<HotArticleVo> hotArticleVoList = JSON.parseArray(jsonStr, HotArticleVo.class);
-                ResponseResult responseResult = ResponseResult.okResult(hotArticleVoList);
-                return responseResult;
+            List<HotArticleVo> hotArticleVoList = loadHotArticles(dto.getTag());
+            if (!hotArticleVoList.isEmpty()) {
+                return ResponseResult.okResult(hotArticleVoList);
             }
         }
         return load(dto, type);
@@ -172,109 +232,100 @@ public class ApArticleServiceImpl extends ServiceImpl<ApArticleMapper, ApArticle
      */
     @Override
     public void updateScore(ArticleVisitStreamMess mess) {
-        //1.更新文章的阅读、点赞、收藏、评论的数量
-        ApArticle apArticle = updateArticle(mess);
-        //2.计算文章的分值
-        Integer score = computeScore(apArticle);
-        score = score * 3;
-
-        //3.替换当前文章对应频道的热点数据
-        replaceDataToRedis(apArticle, score, ArticleConstants.HOT_ARTICLE_FIRST_PAGE + apArticle.getChannelId());
-
-        //4.替换推荐对应的热点数据
-        replaceDataToRedis(apArticle, score, ArticleConstants.HOT_ARTICLE_FIRST_PAGE + ArticleConstants.DEFAULT_TAG);
-
+        updateScores(Collections.singletonList(mess));
     }
 
     /**
-     * 替换数据并且存入到redis
+     * 批量更新文章的分值  同一篇文章的增量合并后一次写入，热点文章数据一次更新
      *
-     * @param apArticle
-     * @param score
-     * @param s
+     * @param messList
      */
-    private void replaceDataToRedis(ApArticle apArticle, Integer score, String s) {
-        String articleListStr = cacheService.get(s);
-        if (StringUtils.isNotBlank(articleListStr)) {
-            List<HotArticleVo> hotArticleVoList = JSON.parseArray(articleListStr, HotArticleVo.class);
-
-            boolean flag = true;
-
-            //如果缓存中存在该文章，只更新分值
-            for (HotArticleVo hotArticleVo : hotArticleVoList) {
-                if (hotArticleVo.getId().equals(apArticle.getId())) {
-                    hotArticleVo.setScore(score);
-                    flag = false;
-                    break;
-                }
-            }
-
-            //如果缓存中不存在，查询缓存中分值最小的一条数据，进行分值的比较，如果当前文章的分值大于缓存中的数据，就替换
-            if (flag) {
-                if (hotArticleVoList.size() >= 30) {
-                    //按照分值进行排序
-                    hotArticleVoList = hotArticleVoList.stream().sorted(Comparator.comparing(HotArticleVo::getScore).reversed()).collect(Collectors.toList());
-                    HotArticleVo lastHot = hotArticleVoList.get(hotArticleVoList.size() - 1);
-                    if (lastHot.getScore() < score) {
-                        hotArticleVoList.remove(lastHot);
-                        HotArticleVo hot = new HotArticleVo();
-                        BeanUtils.copyProperties(apArticle, hot);
-                        hot.setScore(score);
-                        hotArticleVoList.add(hot);
-                    }
-
-
-                } else {
-                    HotArticleVo hot = new HotArticleVo();
-                    BeanUtils.copyProperties(apArticle, hot);
-                    hot.setScore(score);
-                    hotArticleVoList.add(hot);
-                }
+    @Override
+    public void updateScores(List<ArticleVisitStreamMess> messList) {
+        //1.合并同一篇文章的增量，按文章id排序，多个消费者同时更新时按相同的顺序加行锁
+        Map<Long, ArticleVisitStreamMess> merged = new TreeMap<>();
+        for (ArticleVisitStreamMess mess : messList) {
+            if (mess == null || mess.getArticleId() == null) {
+                continue;
             }
-            //缓存到redis
-            hotArticleVoList = hotArticleVoList.stream().sorted(Comparator.comparing(HotArticleVo::getScore).reversed()).collect(Collectors.toList());
-            cacheService.set(s, JSON.toJSONString(hotArticleVoList));
-
+            ArticleVisitStreamMess delta = merged.computeIfAbsent(mess.getArticleId(), id -> {
+                ArticleVisitStreamMess m = new ArticleVisitStreamMess();
+                m.setArticleId(id);
+                return m;
+            });
+            delta.setView(delta.getView() + mess.getView());
+            delta.setLike(delta.getLike() + mess.getLike());
+            delta.setComment(delta.getComment() + mess.getComment());
+            delta.setCollect(delta.getCollect() + mess.getCollect());
+        }
+        if (merged.isEmpty()) {
+            return;
         }
+        //2.一条语句累加所有文章的阅读、点赞、评论、收藏数量
+        apArticleMapper.incrBehaviors(new ArrayList<>(merged.values()));
+        //3.读取累加后的数量
+        List<ApArticle> articleList = apArticleMapper.selectBatchIds(merged.keySet());
+        //4.一次更新所有文章在对应频道和推荐中的排名
+        updateHotRank(articleList);
     }
 
     /**
-     * 更新文章行为数量
+     * 从排行榜读取频道的热点文章，按分值从高到低
      *
-     * @param mess
+     * @param tag 频道
+     * @return
      */
-    private ApArticle updateArticle(ArticleVisitStreamMess mess) {
-        ApArticle apArticle = getById(mess.getArticleId());
-        apArticle.setCollection(apArticle.getCollection() == null ? 0 : apArticle.getCollection() + mess.getCollect());
-        apArticle.setComment(apArticle.getComment() == null ? 0 : apArticle.getComment() + mess.getComment());
-        apArticle.setLikes(apArticle.getLikes() == null ? 0 : apArticle.getLikes() + mess.getLike());
-        apArticle.setViews(apArticle.getViews() == null ? 0 : apArticle.getViews() + mess.getView());
-        updateById(apArticle);
-        return apArticle;
-
+    private List<HotArticleVo> loadHotArticles(String tag) {
+        Set<ZSetOperations.TypedTuple<String>> ranking = cacheService.zReverseRangeWithScores(
+                ArticleConstants.HOT_ARTICLE_RANK + tag, 0, ArticleConstants.HOT_ARTICLE_SIZE - 1);
+        List<HotArticleVo> hotArticleVoList = new ArrayList<>();
+        if (ranking == null || ranking.isEmpty()) {
+            return hotArticleVoList;
+        }
+        List<Object> ids = new ArrayList<>(ranking.size());
+        for (ZSetOperations.TypedTuple<String> tuple : ranking) {
+            ids.add(tuple.getValue());
+        }
+        List<Object> cards = cacheService.hMultiGet(ArticleConstants.HOT_ARTICLE_CARD, ids);
+        for (Object card : cards) {
+            //排行榜和文章数据不在同一次读取中，文章刚被挤出时数据可能已经删除
+            if (card == null) {
+                continue;
+            }
+            hotArticleVoList.add(JSON.parseObject(card.toString(), HotArticleVo.class));
+        }
+        return hotArticleVoList;
     }
 
     /**
-     * 计算文章的具体分值
+     * 更新文章在所属频道和推荐中的分值，每个排行榜只保留分值最高的文章
      *
-     * @param apArticle
-     * @return
+     * @param articleList
      */
-    private Integer computeScore(ApArticle apArticle) {
-        Integer score = 0;
-        if (apArticle.getLikes() != null) {
-            score += apArticle.getLikes() * ArticleConstants.HOT_ARTICLE_LIKE_WEIGHT;
-        }
-        if (apArticle.getViews() != null) {
-            score += apArticle.getViews();
-        }
-        if (apArticle.getComment() != null) {
-            score += apArticle.getComment() * ArticleConstants.HOT_ARTICLE_COMMENT_WEIGHT;
+    private void updateHotRank(List<ApArticle> articleList) {
+        Map<String, Set<ZSetOperations.TypedTuple<String>>> rankings = new HashMap<>();
+        Map<String, String> cards = new HashMap<>();
+        HotScoreModel allModel = hotScoreModels.forTag(ArticleConstants.DEFAULT_TAG);
+        for (ApArticle apArticle : articleList) {
+            HotArticleVo hot = new HotArticleVo();
+            BeanUtils.copyProperties(apArticle, hot);
+            hot.setScore(WeightedSumScoreModel.weighted(apArticle));
+            String id = apArticle.getId().toString();
+            cards.put(id, JSON.toJSONString(hot));
+
+            //频道和推荐按各自的模型计算分值，与全量计算的结果一致
+            HotScoreModel channelModel = hotScoreModels.forTag(String.valueOf(apArticle.getChannelId()));
+            rankings.computeIfAbsent(ArticleConstants.HOT_ARTICLE_RANK + apArticle.getChannelId(), k -> new HashSet<>())
+                    .add(new DefaultTypedTuple<>(id, channelModel.score(apArticle)));
+            rankings.computeIfAbsent(ArticleConstants.HOT_ARTICLE_RANK + ArticleConstants.DEFAULT_TAG, k -> new HashSet<>())
+                    .add(new DefaultTypedTuple<>(id, allModel.score(apArticle)));
         }
-        if (apArticle.getCollection() != null) {
-            score += apArticle.getCollection() * ArticleConstants.HOT_ARTICLE_COLLECTION_WEIGHT;
+        long ranked = cacheService.zAddTopNWithHash(rankings, ArticleConstants.HOT_ARTICLE_CARD, cards, ArticleConstants.HOT_ARTICLE_SIZE);
+        //都不在排行榜中时不影响首页，只是分值变化时合并后延迟通知
+        if (ranked > 0) {
+            for (ApArticle apArticle : articleList) {
+                feedPageCache.invalidateScores(apArticle.getChannelId());
+            }
         }
-
-        return score;
     }
 }
@@ -0,0 +1,252 @@
+package com.heima.article.service.impl;
+
+import com.heima.article.config.HotArticleStreamProperties;
+import com.heima.article.config.KafkaStreamConfig;
+import com.heima.article.service.ArticleCountService;
+import com.heima.article.stream.ArticleBehaviorCount;
+import com.heima.article.stream.HotArticleStreamHandler;
+import com.heima.model.article.dtos.ArticleCountDto;
+import com.heima.model.common.dtos.ResponseResult;
+import com.heima.model.common.enums.AppHttpCodeEnum;
+import com.heima.model.mess.ArticleVisitStreamMess;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyQueryMetadata;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StoreQueryParameters;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.state.HostInfo;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 从HotArticleStreamHandler的窗口状态存储中查询文章的实时互动
+ * 状态存储按文章id分区保存在各个实例，其他实例的文章按application.server转发查询
+ */
+@Service
+@Slf4j
+public class ArticleCountServiceImpl implements ArticleCountService {
+
+    private static final String LOCAL_COUNT_PATH = "/inner/article/count/local";
+
+    private static final ParameterizedTypeReference<ResponseResult<List<ArticleVisitStreamMess>>> COUNT_TYPE =
+            new ParameterizedTypeReference<ResponseResult<List<ArticleVisitStreamMess>>>() {
+            };
+
+    @Autowired
+    private StreamsBuilderFactoryBean streamsBuilderFactoryBean;
+
+    @Autowired
+    private KafkaStreamConfig kafkaStreamConfig;
+
+    @Autowired
+    private HotArticleStreamProperties hotArticleStreamProperties;
+
+    @Autowired
+    @Qualifier("articleCountRestTemplate")
+    private RestTemplate restTemplate;
+
+    /**
+     * 查询文章最近的实时互动，不在当前实例的文章转发到状态存储所在的实例
+     *
+     * @param dto
+     * @return
+     */
+    @Override
+    public ResponseResult count(ArticleCountDto dto) {
+        ResponseResult invalid = check(dto);
+        if (invalid != null) {
+            return invalid;
+        }
+        KafkaStreams kafkaStreams = streamsBuilderFactoryBean.getKafkaStreams();
+        if (kafkaStreams == null || kafkaStreams.state() != KafkaStreams.State.RUNNING) {
+            return unavailable();
+        }
+
+        //1.按状态存储所在的实例分组，没有配置application.server时只有一个实例
+        HostInfo self = StringUtils.isBlank(kafkaStreamConfig.getApplicationServer()) ? null
+                : HostInfo.buildFromEndpoint(kafkaStreamConfig.getApplicationServer());
+        List<Long> localIds = new ArrayList<>();
+        Map<HostInfo, List<Long>> remoteIds = new HashMap<>();
+        for (Long articleId : dto.getArticleIds()) {
+            if (self == null) {
+                localIds.add(articleId);
+                continue;
+            }
+            KeyQueryMetadata metadata = kafkaStreams.queryMetadataForKey(HotArticleStreamHandler.STORE_NAME,
+                    articleId.toString(), Serdes.String().serializer());
+            if (metadata == null || KeyQueryMetadata.NOT_AVAILABLE.equals(metadata)) {
+                //正在重新分配分区
+                return unavailable();
+            }
+            if (self.equals(metadata.getActiveHost())) {
+                localIds.add(articleId);
+            } else {
+                remoteIds.computeIfAbsent(metadata.getActiveHost(), host -> new ArrayList<>()).add(articleId);
+            }
+        }
+
+        //2.查询当前实例
+        long rangeMs = rangeMs(dto);
+        Map<Long, ArticleVisitStreamMess> counts = new HashMap<>();
+        if (!localIds.isEmpty()) {
+            try {
+                for (ArticleVisitStreamMess mess : localCount(kafkaStreams, localIds, rangeMs)) {
+                    counts.put(mess.getArticleId(), mess);
+                }
+            } catch (InvalidStateStoreException e) {
+                log.warn("文章互动状态存储暂时不可用:{}", e.getMessage());
+                return unavailable();
+            }
+        }
+
+        //3.转发到其他实例
+        for (Map.Entry<HostInfo, List<Long>> entry : remoteIds.entrySet()) {
+            List<ArticleVisitStreamMess> remote = remoteCount(entry.getKey(), entry.getValue(), rangeMs);
+            if (remote == null) {
+                return unavailable();
+            }
+            for (ArticleVisitStreamMess mess : remote) {
+                counts.put(mess.getArticleId(), mess);
+            }
+        }
+
+        //4.按请求的顺序返回
+        List<ArticleVisitStreamMess> result = new ArrayList<>(dto.getArticleIds().size());
+        for (Long articleId : dto.getArticleIds()) {
+            ArticleVisitStreamMess mess = counts.get(articleId);
+            result.add(mess == null ? new ArticleBehaviorCount().toMess(articleId) : mess);
+        }
+        return ResponseResult.okResult(result);
+    }
+
+    /**
+     * 只查询当前实例的状态存储，由其他实例转发调用
+     *
+     * @param dto
+     * @return
+     */
+    @Override
+    public ResponseResult localCount(ArticleCountDto dto) {
+        ResponseResult invalid = check(dto);
+        if (invalid != null) {
+            return invalid;
+        }
+        KafkaStreams kafkaStreams = streamsBuilderFactoryBean.getKafkaStreams();
+        if (kafkaStreams == null || kafkaStreams.state() != KafkaStreams.State.RUNNING) {
+            return unavailable();
+        }
+        try {
+            return ResponseResult.okResult(localCount(kafkaStreams, dto.getArticleIds(), rangeMs(dto)));
+        } catch (InvalidStateStoreException e) {
+            log.warn("文章互动状态存储暂时不可用:{}", e.getMessage());
+            return unavailable();
+        }
+    }
+
+    private List<ArticleVisitStreamMess> localCount(KafkaStreams kafkaStreams, List<Long> articleIds, long rangeMs) {
+        ReadOnlyWindowStore<String, ArticleBehaviorCount> store = kafkaStreams.store(StoreQueryParameters.fromNameAndType(
+                HotArticleStreamHandler.STORE_NAME, QueryableStoreTypes.<String, ArticleBehaviorCount>windowStore()));
+        long now = System.currentTimeMillis();
+        return count(store, articleIds, now - rangeMs, now);
+    }
+
+    /**
+     * 累加每篇文章开始时间在[from, to]内的所有窗口
+     *
+     * @param store
+     * @param articleIds
+     * @param from
+     * @param to
+     * @return 与articleIds一一对应，没有互动的文章各项为0
+     */
+    public static List<ArticleVisitStreamMess> count(ReadOnlyWindowStore<String, ArticleBehaviorCount> store,
+                                                     List<Long> articleIds, long from, long to) {
+        List<ArticleVisitStreamMess> result = new ArrayList<>(articleIds.size());
+        for (Long articleId : articleIds) {
+            ArticleBehaviorCount total = new ArticleBehaviorCount();
+            try (WindowStoreIterator<ArticleBehaviorCount> iterator = store.fetch(articleId.toString(),
+                    Instant.ofEpochMilli(from), Instant.ofEpochMilli(to))) {
+                while (iterator.hasNext()) {
+                    KeyValue<Long, ArticleBehaviorCount> window = iterator.next();
+                    total.setCollect(total.getCollect() + window.value.getCollect());
+                    total.setComment(total.getComment() + window.value.getComment());
+                    total.setLike(total.getLike() + window.value.getLike());
+                    total.setView(total.getView() + window.value.getView());
+                }
+            }
+            result.add(total.toMess(articleId));
+        }
+        return result;
+    }
+
+    /**
+     * 转发到状态存储所在的实例
+     *
+     * @return 查询失败返回null
+     */
+    private List<ArticleVisitStreamMess> remoteCount(HostInfo host, List<Long> articleIds, long rangeMs) {
+        ArticleCountDto dto = new ArticleCountDto();
+        dto.setArticleIds(articleIds);
+        dto.setRangeMs(rangeMs);
+        String url = "http://" + host.host() + ":" + host.port() + LOCAL_COUNT_PATH;
+        try {
+            ResponseResult<List<ArticleVisitStreamMess>> result = restTemplate.exchange(url, HttpMethod.POST,
+                    new HttpEntity<>(dto), COUNT_TYPE).getBody();
+            if (result == null || result.getCode() == null
+                    || result.getCode() != AppHttpCodeEnum.SUCCESS.getCode() || result.getData() == null) {
+                log.warn("实例{}查询文章实时互动失败:{}", host, result == null ? null : result.getErrorMessage());
+                return null;
+            }
+            return result.getData();
+        } catch (RestClientException e) {
+            log.error("转发文章实时互动查询到实例{}异常", host, e);
+            return null;
+        }
+    }
+
+    private ResponseResult check(ArticleCountDto dto) {
+        if (dto == null || dto.getArticleIds() == null || dto.getArticleIds().isEmpty()
+                || dto.getArticleIds().contains(null)) {
+            return ResponseResult.errorResult(AppHttpCodeEnum.PARAM_INVALID);
+        }
+        if (dto.getArticleIds().size() > hotArticleStreamProperties.getQueryMaxSize()) {
+            return ResponseResult.errorResult(AppHttpCodeEnum.PARAM_INVALID,
+                    "一次最多查询" + hotArticleStreamProperties.getQueryMaxSize() + "篇文章");
+        }
+        if (dto.getRangeMs() != null && dto.getRangeMs() <= 0) {
+            return ResponseResult.errorResult(AppHttpCodeEnum.PARAM_INVALID);
+        }
+        return null;
+    }
+
+    /**
+     * 查询范围不超过窗口的保留时间
+     */
+    private long rangeMs(ArticleCountDto dto) {
+        long retentionMs = hotArticleStreamProperties.getRetentionMs();
+        return dto.getRangeMs() == null ? retentionMs : Math.min(dto.getRangeMs(), retentionMs);
+    }
+
+    private ResponseResult unavailable() {
+        return ResponseResult.errorResult(AppHttpCodeEnum.SERVER_ERROR, "文章实时互动暂时不可用，请稍后重试");
+    }
+}
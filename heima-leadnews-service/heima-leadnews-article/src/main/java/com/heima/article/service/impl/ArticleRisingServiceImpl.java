@@ -0,0 +1,130 @@
+package com.heima.article.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.heima.article.config.RisingArticleProperties;
+import com.heima.article.service.ArticleRisingService;
+import com.heima.common.constants.ArticleConstants;
+import com.heima.common.redis.CacheService;
+import com.heima.model.article.dtos.ArticleHomeDto;
+import com.heima.model.article.pojos.ApArticle;
+import com.heima.model.common.dtos.ResponseResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 互动增速排行，由RisingArticleStreamHandler计算后发布到redis
+ * 文章数据来自时间线和热点排行中的文章数据，都没有的文章不进入排行
+ */
+@Service
+@Slf4j
+public class ArticleRisingServiceImpl implements ArticleRisingService {
+
+    @Autowired
+    private CacheService cacheService;
+
+    @Autowired
+    private RisingArticleProperties risingArticleProperties;
+
+    /**
+     * 加载频道互动增速最快的文章，只读取redis
+     *
+     * @param dto
+     * @return
+     */
+    @Override
+    public ResponseResult load(ArticleHomeDto dto) {
+        String tag = dto == null || StringUtils.isBlank(dto.getTag()) ? ArticleConstants.DEFAULT_TAG : dto.getTag();
+        String json = cacheService.get(ArticleConstants.ARTICLE_RISING + tag);
+        List<ApArticle> articleList = json == null ? new ArrayList<>() : JSON.parseArray(json, ApArticle.class);
+        if (dto != null && dto.getSize() != null && dto.getSize() > 0 && articleList.size() > dto.getSize()) {
+            articleList = articleList.subList(0, dto.getSize());
+        }
+        return ResponseResult.okResult(articleList);
+    }
+
+    /**
+     * 从redis中的文章数据查询文章所属的频道
+     *
+     * @param articleIds
+     * @return key:文章id  value:频道id，没有查询到的文章不包含在结果中
+     */
+    @Override
+    public Map<Long, Integer> channels(Collection<Long> articleIds) {
+        List<Long> ids = new ArrayList<>(articleIds);
+        List<Object> cards = cards(ids);
+        Map<Long, Integer> channels = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Object card = cards.get(i);
+            if (card != null) {
+                ApArticle apArticle = JSON.parseObject(card.toString(), ApArticle.class);
+                if (apArticle.getChannelId() != null) {
+                    channels.put(ids.get(i), apArticle.getChannelId());
+                }
+            }
+        }
+        return channels;
+    }
+
+    /**
+     * 发布频道的增速排行
+     *
+     * @param tag        频道id，推荐为__all__
+     * @param articleIds 按增速从高到低
+     */
+    @Override
+    public void publish(String tag, List<Long> articleIds) {
+        List<Object> cards = cards(articleIds);
+        List<ApArticle> articleList = new ArrayList<>(articleIds.size());
+        for (Object card : cards) {
+            //文章已经从时间线和热点排行中移除
+            if (card != null) {
+                articleList.add(JSON.parseObject(card.toString(), ApArticle.class));
+            }
+        }
+        cacheService.setEx(ArticleConstants.ARTICLE_RISING + tag, JSON.toJSONString(articleList),
+                risingArticleProperties.getTtlMs(), TimeUnit.MILLISECONDS);
+        log.debug("频道{}的增速排行已发布，文章数量:{}", tag, articleList.size());
+    }
+
+    /**
+     * 批量读取文章数据，先查时间线再查热点排行
+     *
+     * @param articleIds
+     * @return 与articleIds一一对应，没有的为null
+     */
+    private List<Object> cards(List<Long> articleIds) {
+        List<Object> fields = new ArrayList<>(articleIds.size());
+        for (Long articleId : articleIds) {
+            fields.add(articleId.toString());
+        }
+        if (fields.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Object> cards = new ArrayList<>(cacheService.hMultiGet(ArticleConstants.ARTICLE_CARD, fields));
+        List<Object> missing = new ArrayList<>();
+        for (int i = 0; i < cards.size(); i++) {
+            if (cards.get(i) == null) {
+                missing.add(fields.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<Object> hotCards = cacheService.hMultiGet(ArticleConstants.HOT_ARTICLE_CARD, missing);
+            int j = 0;
+            for (int i = 0; i < cards.size(); i++) {
+                if (cards.get(i) == null) {
+                    cards.set(i, hotCards.get(j++));
+                }
+            }
+        }
+        return cards;
+    }
+}
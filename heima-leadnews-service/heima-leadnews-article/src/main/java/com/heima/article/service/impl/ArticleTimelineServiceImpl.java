@@ -0,0 +1,214 @@
+package com.heima.article.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.heima.article.cache.FeedPageCache;
+import com.heima.article.mapper.ApArticleMapper;
+import com.heima.article.service.ArticleTimelineService;
+import com.heima.common.constants.ArticleConstants;
+import com.heima.common.redis.CacheService;
+import com.heima.model.article.dtos.ArticleHomeDto;
+import com.heima.model.article.pojos.ApArticle;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 频道文章时间线
+ * 每个频道和推荐各有一个按发布时间排序的zset，只保留最新的ARTICLE_TIMELINE_SIZE篇，文章数据保存在共用的hash中
+ * 每个时间线记录一个下限，发布时间大于下限的文章都在时间线中，查询范围超出下限时查询数据库
+ * 频道第一次访问时从数据库初始化，之后由文章发布和上下架维护
+ */
+@Service
+@Slf4j
+public class ArticleTimelineServiceImpl implements ArticleTimelineService {
+
+    @Autowired
+    private ApArticleMapper apArticleMapper;
+
+    @Autowired
+    private CacheService cacheService;
+
+    @Autowired
+    private FeedPageCache feedPageCache;
+
+    /**
+     * 从频道时间线加载文章列表
+     *
+     * @param dto
+     * @param loadType 1为加载更多  2为加载最新
+     * @return 时间线无法回答时返回null，由数据库查询
+     */
+    @Override
+    public List<ApArticle> load(ArticleHomeDto dto, Short loadType) {
+        String tag = dto.getTag();
+        String key = ArticleConstants.ARTICLE_TIMELINE + tag;
+        Double floor = cacheService.zTopNFloor(ArticleConstants.ARTICLE_CARD, key);
+        if (floor == null) {
+            floor = warm(tag);
+            if (floor == null) {
+                return null;
+            }
+        }
+        //查询范围的下界
+        double min;
+        double max;
+        if (ArticleConstants.LOADTYPE_LOAD_NEW.equals(loadType)) {
+            //比maxBehotTime新的文章中最新的size篇
+            min = dto.getMaxBehotTime().getTime() + 1;
+            max = Double.POSITIVE_INFINITY;
+        } else {
+            min = Double.NEGATIVE_INFINITY;
+            max = dto.getMinBehotTime().getTime() - 1;
+        }
+        Set<ZSetOperations.TypedTuple<String>> timeline = cacheService.zReverseRangeByScoreWithScores(key, min, max, 0, dto.getSize());
+        List<String> ids = new ArrayList<>(timeline.size());
+        double covered = min;
+        for (ZSetOperations.TypedTuple<String> tuple : timeline) {
+            ids.add(tuple.getValue());
+            if (ids.size() == dto.getSize()) {
+                //取满一页时只需要最后一篇之前的文章都在时间线中
+                covered = tuple.getScore();
+            }
+        }
+        //下限及更早的文章可能已经被裁剪或者没有初始化，查询数据库
+        if (covered <= floor) {
+            return null;
+        }
+        return hydrate(ids);
+    }
+
+    /**
+     * 批量读取文章数据，保持时间线中的顺序
+     *
+     * @param ids
+     * @return 文章数据缺失时返回null，由数据库查询
+     */
+    private List<ApArticle> hydrate(List<String> ids) {
+        List<ApArticle> articleList = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return articleList;
+        }
+        List<Object> cards = cacheService.hMultiGet(ArticleConstants.ARTICLE_CARD, ids);
+        for (Object card : cards) {
+            //文章刚从时间线中移除时数据可能已经删除，返回不完整的一页会让客户端停止翻页
+            if (card == null) {
+                return null;
+            }
+            articleList.add(JSON.parseObject(card.toString(), ApArticle.class));
+        }
+        return articleList;
+    }
+
+    /**
+     * 从数据库初始化频道的时间线，多个实例只有一个执行，没有拿到锁的请求直接查询数据库
+     * 数据库返回不足ARTICLE_TIMELINE_SIZE篇时时间线是完整的，下限为-1，否则下限为最早一篇的发布时间
+     *
+     * @param tag
+     * @return 时间线的下限，初始化失败时返回null
+     */
+    private Double warm(String tag) {
+        String key = ArticleConstants.ARTICLE_TIMELINE + tag;
+        String token = cacheService.tryLock(key, 1000 * 30);
+        if (token == null) {
+            return null;
+        }
+        try {
+            Double floor = cacheService.zTopNFloor(ArticleConstants.ARTICLE_CARD, key);
+            if (floor != null) {
+                return floor;
+            }
+            ArticleHomeDto dto = new ArticleHomeDto();
+            dto.setTag(tag);
+            dto.setSize(ArticleConstants.ARTICLE_TIMELINE_SIZE);
+            List<ApArticle> articleList = apArticleMapper.loadArticleList(dto, null);
+
+            Set<ZSetOperations.TypedTuple<String>> timeline = new HashSet<>();
+            Map<String, String> cards = new HashMap<>();
+            floor = -1D;
+            for (ApArticle apArticle : articleList) {
+                if (apArticle.getPublishTime() == null) {
+                    continue;
+                }
+                String id = apArticle.getId().toString();
+                double score = apArticle.getPublishTime().getTime();
+                timeline.add(new DefaultTypedTuple<>(id, score));
+                cards.put(id, JSON.toJSONString(apArticle));
+                if (articleList.size() >= ArticleConstants.ARTICLE_TIMELINE_SIZE && (floor < 0 || score < floor)) {
+                    floor = score;
+                }
+            }
+            //和文章发布走同一个脚本，保证共用的文章数据引用计数正确，最后写下限
+            if (!cards.isEmpty()) {
+                cacheService.zAddTopNWithHash(Collections.singletonMap(key, timeline), ArticleConstants.ARTICLE_CARD, cards,
+                        ArticleConstants.ARTICLE_TIMELINE_SIZE);
+            }
+            cacheService.zTopNRaiseFloor(ArticleConstants.ARTICLE_CARD, key, floor);
+            log.info("频道{}的时间线已初始化，文章数量:{}，下限:{}", tag, timeline.size(), floor);
+            return cacheService.zTopNFloor(ArticleConstants.ARTICLE_CARD, key);
+        } catch (Exception e) {
+            log.error("频道{}的时间线初始化异常", tag, e);
+            return null;
+        } finally {
+            cacheService.unLock(key, token);
+        }
+    }
+
+    /**
+     * 文章发布或修改后加入所属频道和推荐的时间线
+     *
+     * @param apArticle
+     */
+    @Override
+    public void add(ApArticle apArticle) {
+        if (apArticle.getPublishTime() == null || apArticle.getChannelId() == null) {
+            return;
+        }
+        cacheService.zAddTopNWithHash(timelineKeys(apArticle), ArticleConstants.ARTICLE_CARD, apArticle.getId().toString(),
+                apArticle.getPublishTime().getTime(), ArticleConstants.ARTICLE_TIMELINE_SIZE, JSON.toJSONString(apArticle));
+        feedPageCache.invalidate(apArticle.getChannelId());
+    }
+
+    /**
+     * 文章上下架后更新时间线
+     *
+     * @param articleId
+     * @param isDown    true 下架  false 上架
+     */
+    @Override
+    public void upOrDown(Long articleId, boolean isDown) {
+        ApArticle apArticle = apArticleMapper.selectById(articleId);
+        if (apArticle == null) {
+            return;
+        }
+        if (!isDown) {
+            add(apArticle);
+            return;
+        }
+        //不修改下限，下架的文章数据库也查询不到
+        cacheService.zRemoveTopNWithHash(timelineKeys(apArticle), ArticleConstants.ARTICLE_CARD,
+                Collections.singletonList(articleId.toString()));
+        feedPageCache.invalidate(apArticle.getChannelId());
+    }
+
+    /**
+     * 文章所在的时间线  所属频道和推荐
+     *
+     * @param apArticle
+     * @return
+     */
+    private List<String> timelineKeys(ApArticle apArticle) {
+        return Arrays.asList(ArticleConstants.ARTICLE_TIMELINE + apArticle.getChannelId(),
+                ArticleConstants.ARTICLE_TIMELINE + ArticleConstants.DEFAULT_TAG);
+    }
+}
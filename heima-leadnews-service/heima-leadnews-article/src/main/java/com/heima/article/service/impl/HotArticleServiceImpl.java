@@ -2,6 +2,12 @@ package com.heima.article.service.impl;
 
 import com.alibaba.fastjson.JSON;
 import com.heima.apis.wemedia.IWemediaClient;
+import com.heima.article.cache.FeedPageCache;
+import com.heima.article.config.HotArticleProperties;
+import com.heima.article.hot.ChannelTopK;
+import com.heima.article.hot.HotScoreModel;
+import com.heima.article.hot.HotScoreModels;
+import com.heima.article.hot.WeightedSumScoreModel;
 import com.heima.article.mapper.ApArticleMapper;
 import com.heima.article.service.HotArticleService;
 import com.heima.common.constants.ArticleConstants;
@@ -12,18 +18,26 @@ import com.heima.model.common.dtos.ResponseResult;
 import com.heima.model.wemedia.pojos.WmChannel;
 import io.swagger.models.auth.In;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.joda.time.DateTime;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToDoubleFunction;
 
 @Service
 @Slf4j
@@ -39,6 +53,15 @@ public class HotArticleServiceImpl implements HotArticleService {
     @Autowired
     private CacheService cacheService;
 
+    @Autowired
+    private FeedPageCache feedPageCache;
+
+    @Autowired
+    private HotArticleProperties hotArticleProperties;
+
+    @Autowired
+    private HotScoreModels hotScoreModels;
+
     /**
      * 计算热点文章
      */
@@ -46,70 +69,74 @@ public class HotArticleServiceImpl implements HotArticleService {
     @Override
     public void computeHotArticle() {
         log.info("热文章推送");
-        //1.查询前5天的文章数据
+        //1.查询前5天的文章数据，流式计算分值，每个频道只保留30条分值较高的文章
         Date dateParam = DateTime.now().minusDays(5).toDate();
-        List<ApArticle> apArticleList = apArticleMapper.findArticleListByLast5days(dateParam);
-
-        //2.计算文章的分值
-        List<HotArticleVo> hotArticleVoList = computeArticleScore(apArticleList);
+        ChannelTopK topK;
+        try {
+            topK = computeArticleScore(dateParam);
+        } catch (Exception e) {
+            log.error("热点文章计算异常", e);
+            return;
+        }
 
-        //3.为每个频道缓存30条分值较高的文章
-        cacheTagToRedis(hotArticleVoList);
+        //2.为每个频道缓存30条分值较高的文章
+        cacheTagToRedis(topK);
     }
 
     /**
      * 计算文章分值
      *
-     * @param apArticleList
-     * @return
+     * @param dateParam
+     * @return 每个频道分值较高的文章
      */
-    private List<HotArticleVo> computeArticleScore(List<ApArticle> apArticleList) {
-
-        List<HotArticleVo> hotArticleVoList = new LinkedList<>();
-
-        if (apArticleList != null && apArticleList.size() > 0) {
-            for (ApArticle apArticle : apArticleList) {
-                HotArticleVo hotArticleVo = new HotArticleVo();
-                BeanUtils.copyProperties(apArticle, hotArticleVo);
-                Integer score = computeScore(apArticle);
-                hotArticleVo.setScore(score);
-                hotArticleVoList.add(hotArticleVo);
+    private ChannelTopK computeArticleScore(Date dateParam) throws Exception {
+        ChannelTopK topK = new ChannelTopK(ArticleConstants.HOT_ARTICLE_SIZE);
+        //频道的分值模型  key:频道id
+        Map<Integer, HotScoreModel> channelModels = new ConcurrentHashMap<>();
+        ToDoubleFunction<ApArticle> channelScorer = apArticle -> channelModels
+                .computeIfAbsent(apArticle.getChannelId(), channelId -> hotScoreModels.forTag(String.valueOf(channelId)))
+                .score(apArticle);
+        HotScoreModel allModel = hotScoreModels.forTag(ArticleConstants.DEFAULT_TAG);
+        ToDoubleFunction<ApArticle> allScorer = allModel::score;
+
+        int parallelism = hotArticleProperties.getParallelism();
+        try (Cursor<ApArticle> cursor = apArticleMapper.findArticleListByLast5days(dateParam)) {
+            if (parallelism <= 1) {
+                for (ApArticle apArticle : cursor) {
+                    topK.offer(apArticle, channelScorer.applyAsDouble(apArticle), allScorer.applyAsDouble(apArticle));
+                }
+                return topK;
+            }
+            //按批读取，每批用fork/join并行计算后合并
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                int chunkSize = Math.max(1, hotArticleProperties.getChunkSize());
+                List<ApArticle> chunk = new ArrayList<>(chunkSize);
+                for (ApArticle apArticle : cursor) {
+                    chunk.add(apArticle);
+                    if (chunk.size() >= chunkSize) {
+                        topK.merge(pool.invoke(ChannelTopK.task(chunk, channelScorer, allScorer, ArticleConstants.HOT_ARTICLE_SIZE)));
+                        chunk = new ArrayList<>(chunkSize);
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    topK.merge(pool.invoke(ChannelTopK.task(chunk, channelScorer, allScorer, ArticleConstants.HOT_ARTICLE_SIZE)));
+                }
+            } finally {
+                pool.shutdown();
             }
         }
-
-        return hotArticleVoList;
-    }
-
-    /**
-     * 计算单个文章分值
-     *
-     * @param apArticle
-     * @return
-     */
-    private Integer computeScore(ApArticle apArticle) {
-        Integer score = 0;
-        if (apArticle.getLikes() != null) {
-            score += apArticle.getLikes() * ArticleConstants.HOT_ARTICLE_LIKE_WEIGHT;
-        }
-        if (apArticle.getViews() != null) {
-            score += apArticle.getViews();
-        }
-        if (apArticle.getComment() != null) {
-            score += apArticle.getComment() * ArticleConstants.HOT_ARTICLE_COMMENT_WEIGHT;
-        }
-        if (apArticle.getCollection() != null) {
-            score += apArticle.getCollection() * ArticleConstants.HOT_ARTICLE_COLLECTION_WEIGHT;
-        }
-
-        return score;
+        return topK;
     }
 
     /**
      * 为每个频道缓存30条分值较高的文章
      *
-     * @param hotArticleVoList
+     * @param topK
      */
-    private void cacheTagToRedis(List<HotArticleVo> hotArticleVoList) {
+    private void cacheTagToRedis(ChannelTopK topK) {
+        Map<String, Set<ZSetOperations.TypedTuple<String>>> rankings = new HashMap<>();
+        Map<String, String> cards = new HashMap<>();
         //每个频道缓存30条分值较高的文章
         ResponseResult responseResult = wemediaClient.getChannels();
         if (responseResult.getCode().equals(200)) {
@@ -118,29 +145,41 @@ public class HotArticleServiceImpl implements HotArticleService {
             //检索出每个频道的文章
             if (wmChannels != null && wmChannels.size() > 0) {
                 for (WmChannel wmChannel : wmChannels) {
-                    List<HotArticleVo> hotArticleVos = hotArticleVoList.stream().filter(
-                            x -> x.getChannelId().equals(wmChannel.getId())).collect(Collectors.toList());
-                    //给文章进行排序，取30条分值较高的文章存入redis  key：频道id   value：30条分值较高的文章
-                    sortAndCache(hotArticleVos, ArticleConstants.HOT_ARTICLE_FIRST_PAGE + wmChannel.getId());
+                    //取30条分值较高的文章存入redis  key：频道id   value：30条分值较高的文章
+                    rankings.put(ArticleConstants.HOT_ARTICLE_RANK + wmChannel.getId(), rank(topK.top(wmChannel.getId()), cards));
                 }
             }
         }
 
         //设置推荐数据
-        //给文章进行排序，取30条分值较高的文章存入redis  key：频道id   value：30条分值较高的文章
-        sortAndCache(hotArticleVoList, ArticleConstants.HOT_ARTICLE_FIRST_PAGE+ArticleConstants.DEFAULT_TAG);
+        //取30条分值较高的文章存入redis  key：频道id   value：30条分值较高的文章
+        rankings.put(ArticleConstants.HOT_ARTICLE_RANK + ArticleConstants.DEFAULT_TAG, rank(topK.topAll(), cards));
+
+        //排行榜和文章数据在一个事务中整体替换
+        cacheService.zReplaceWithHash(rankings, ArticleConstants.HOT_ARTICLE_CARD, cards);
+        feedPageCache.invalidateAll();
     }
 
     /**
-     * 排序并且缓存数据
-     * @param hotArticleVos
-     * @param key
+     * 生成排行榜，排行榜中文章的数据放入cards
+     * 排行榜中保存模型计算的分值，文章数据中的score为加权和
+     *
+     * @param scoredList 分值较高的文章
+     * @param cards
+     * @return
      */
-    private void sortAndCache(List<HotArticleVo> hotArticleVos, String key) {
-        hotArticleVos = hotArticleVos.stream().sorted(Comparator.comparing(HotArticleVo::getScore).reversed()).collect(Collectors.toList());
-        if (hotArticleVos.size() > 30) {
-            hotArticleVos = hotArticleVos.subList(0, 30);
+    private Set<ZSetOperations.TypedTuple<String>> rank(List<ChannelTopK.Scored> scoredList, Map<String, String> cards) {
+        Set<ZSetOperations.TypedTuple<String>> ranking = new HashSet<>();
+        for (ChannelTopK.Scored scored : scoredList) {
+            String id = scored.getArticle().getId().toString();
+            ranking.add(new DefaultTypedTuple<>(id, scored.getScore()));
+            cards.computeIfAbsent(id, k -> {
+                HotArticleVo hotArticleVo = new HotArticleVo();
+                BeanUtils.copyProperties(scored.getArticle(), hotArticleVo);
+                hotArticleVo.setScore(WeightedSumScoreModel.weighted(scored.getArticle()));
+                return JSON.toJSONString(hotArticleVo);
+            });
         }
-        cacheService.set(key, JSON.toJSONString(hotArticleVos));
+        return ranking;
     }
 }
@@ -0,0 +1,47 @@
+package com.heima.article.stream;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serdes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ArticleBehaviorCount的二进制编码，固定16字节  收藏、评论、点赞、阅读各4字节
+ * 用于窗口状态存储和它的changelog
+ */
+public class ArticleBehaviorCountSerde extends Serdes.WrapperSerde<ArticleBehaviorCount> {
+
+    private static final int SIZE = 4 * Integer.BYTES;
+
+    public ArticleBehaviorCountSerde() {
+        super((topic, count) -> encode(count), (topic, bytes) -> decode(bytes));
+    }
+
+    public static byte[] encode(ArticleBehaviorCount count) {
+        if (count == null) {
+            return null;
+        }
+        return ByteBuffer.allocate(SIZE)
+                .putInt(count.getCollect())
+                .putInt(count.getComment())
+                .putInt(count.getLike())
+                .putInt(count.getView())
+                .array();
+    }
+
+    public static ArticleBehaviorCount decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length != SIZE) {
+            throw new SerializationException("文章行为聚合数据长度错误:" + bytes.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        ArticleBehaviorCount count = new ArticleBehaviorCount();
+        count.setCollect(buffer.getInt());
+        count.setComment(buffer.getInt());
+        count.setLike(buffer.getInt());
+        count.setView(buffer.getInt());
+        return count;
+    }
+}
@@ -0,0 +1,132 @@
+package com.heima.article.stream;
+
+import com.heima.common.constants.ArticleConstants;
+import com.heima.model.mess.UpdateArticleMess;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 一篇文章最近一段时间每分钟的加权互动，按分钟滑动，相当于步长1分钟的跳跃窗口
+ * buckets是环形数组，下标为 分钟 % 长度，只有(lastMinute - 长度, lastMinute]内的分钟有效
+ */
+@Getter
+@Setter
+public class ArticleVelocity {
+
+    private static final long MINUTE = 60 * 1000;
+
+    /**
+     * 文章所属频道，0为还没有查询到
+     */
+    private int channelId;
+
+    /**
+     * 是否已经发送过大于0的增速，降到0以下时需要再发送一次从排行中移除
+     */
+    private boolean published;
+
+    /**
+     * 最近一次互动所在的分钟
+     */
+    private long lastMinute;
+
+    private int[] buckets;
+
+    public ArticleVelocity() {
+    }
+
+    public ArticleVelocity(int minutes) {
+        this.buckets = new int[minutes];
+    }
+
+    /**
+     * 累加一条行为消息
+     *
+     * @param mess
+     * @param timestamp 消息时间
+     */
+    public void add(UpdateArticleMess mess, long timestamp) {
+        if (mess == null || mess.getType() == null || mess.getAdd() == null) {
+            return;
+        }
+        long minute = timestamp / MINUTE;
+        if (minute <= lastMinute - buckets.length) {
+            return;
+        }
+        if (minute > lastMinute) {
+            //清空跳过的分钟
+            long from = Math.max(lastMinute + 1, minute - buckets.length + 1);
+            for (long m = from; m <= minute; m++) {
+                buckets[index(m)] = 0;
+            }
+            lastMinute = minute;
+        }
+        buckets[index(minute)] += mess.getAdd() * weight(mess.getType());
+    }
+
+    /**
+     * 当前速度相对基准速度的增长，按泊松分布的标准差归一化，互动多的文章需要更大的增长
+     *
+     * @param now            当前时间
+     * @param recentMinutes  当前速度的分钟数
+     * @param minRecent      当前互动的最小值，不足时返回0
+     * @return
+     */
+    public double rising(long now, int recentMinutes, int minRecent) {
+        if (recentMinutes <= 0 || recentMinutes >= buckets.length) {
+            //修改分钟数配置后还没有重新统计的文章，没有基准速度
+            return 0;
+        }
+        long nowMinute = now / MINUTE;
+        long recent = 0;
+        long baseline = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            long value = count(nowMinute - i);
+            if (i < recentMinutes) {
+                recent += value;
+            } else {
+                baseline += value;
+            }
+        }
+        if (recent < minRecent) {
+            return 0;
+        }
+        double recentRate = (double) recent / recentMinutes;
+        double baselineRate = (double) baseline / (buckets.length - recentMinutes);
+        return Math.max(0, (recentRate - baselineRate) / Math.sqrt(baselineRate + 1));
+    }
+
+    /**
+     * 最近一次互动距离now超过了所有分钟，可以删除
+     *
+     * @param now
+     * @return
+     */
+    public boolean expired(long now) {
+        return lastMinute <= now / MINUTE - buckets.length;
+    }
+
+    private long count(long minute) {
+        if (minute > lastMinute || minute <= lastMinute - buckets.length) {
+            return 0;
+        }
+        return buckets[index(minute)];
+    }
+
+    private int index(long minute) {
+        return (int) Math.floorMod(minute, (long) buckets.length);
+    }
+
+    private static int weight(UpdateArticleMess.UpdateArticleType type) {
+        switch (type) {
+            case LIKES:
+                return ArticleConstants.HOT_ARTICLE_LIKE_WEIGHT;
+            case COMMENT:
+                return ArticleConstants.HOT_ARTICLE_COMMENT_WEIGHT;
+            case COLLECTION:
+                return ArticleConstants.HOT_ARTICLE_COLLECTION_WEIGHT;
+            default:
+                return 1;
+        }
+    }
+}
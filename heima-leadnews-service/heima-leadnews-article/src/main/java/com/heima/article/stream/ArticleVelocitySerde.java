@@ -0,0 +1,58 @@
+package com.heima.article.stream;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serdes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ArticleVelocity的二进制编码  频道id 4字节、是否已发送 1字节、最后一分钟 8字节、分钟数 2字节、每分钟的互动各4字节
+ */
+public class ArticleVelocitySerde extends Serdes.WrapperSerde<ArticleVelocity> {
+
+    private static final int HEADER = Integer.BYTES + 1 + Long.BYTES + Short.BYTES;
+
+    public ArticleVelocitySerde() {
+        super((topic, velocity) -> encode(velocity), (topic, bytes) -> decode(bytes));
+    }
+
+    public static byte[] encode(ArticleVelocity velocity) {
+        if (velocity == null) {
+            return null;
+        }
+        int[] buckets = velocity.getBuckets();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + buckets.length * Integer.BYTES)
+                .putInt(velocity.getChannelId())
+                .put((byte) (velocity.isPublished() ? 1 : 0))
+                .putLong(velocity.getLastMinute())
+                .putShort((short) buckets.length);
+        for (int bucket : buckets) {
+            buffer.putInt(bucket);
+        }
+        return buffer.array();
+    }
+
+    public static ArticleVelocity decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length < HEADER) {
+            throw new SerializationException("文章互动速度数据长度错误:" + bytes.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        ArticleVelocity velocity = new ArticleVelocity();
+        velocity.setChannelId(buffer.getInt());
+        velocity.setPublished(buffer.get() == 1);
+        velocity.setLastMinute(buffer.getLong());
+        int length = buffer.getShort();
+        if (bytes.length != HEADER + length * Integer.BYTES) {
+            throw new SerializationException("文章互动速度数据长度错误:" + bytes.length);
+        }
+        int[] buckets = new int[length];
+        for (int i = 0; i < length; i++) {
+            buckets[i] = buffer.getInt();
+        }
+        velocity.setBuckets(buckets);
+        return velocity;
+    }
+}
@@ -1,148 +1,96 @@
 package com.heima.article.stream;
 
 import com.alibaba.fastjson.JSON;
+import com.heima.article.config.HotArticleStreamProperties;
 import com.heima.common.constants.HotArticleConstants;
-import com.heima.model.mess.ArticleVisitStreamMess;
 import com.heima.model.mess.UpdateArticleMess;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsBuilder;
-import org.apache.kafka.streams.kstream.*;
+import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Suppressed;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.state.WindowStore;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
 
+/**
+ * 按时间窗口聚合文章的行为消息，发送给文章服务更新分值
+ * article.stream.events:收到的行为消息数量  article.stream.updates:发送的聚合结果数量，两者的比例即下游写入的放大倍数
+ */
 @Configuration
 @Slf4j
 public class HotArticleStreamHandler {
 
+    /**
+     * 窗口状态存储，值为ArticleBehaviorCountSerde编码，ArticleCountService从中查询实时互动
+     * 旧版本的存储中保存的是字符串，改名后不再从旧的changelog恢复
+     */
+    public static final String STORE_NAME = "hot-article-stream-count-002";
+
+    @Autowired
+    private HotArticleStreamProperties hotArticleStreamProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Bean
     public KStream<String, String> kStream(StreamsBuilder streamsBuilder) {
-        //接收消息
+        Counter events = Counter.builder("article.stream.events")
+                .description("收到的文章行为消息数量")
+                .register(meterRegistry);
+        Counter updates = Counter.builder("article.stream.updates")
+                .description("发送给文章服务的聚合结果数量")
+                .register(meterRegistry);
+
+        //接收消息  生产者以文章id作为key发送，同一篇文章在同一个分区，不需要重新分区
+        //没有key的消息会被跳过，需要先升级行为服务
         KStream<String, String> stream = streamsBuilder.stream(HotArticleConstants.HOT_ARTICLE_SCORE_TOPIC);
-        //聚合流式处理
-        stream.map((key, value) -> {
-            UpdateArticleMess mess = JSON.parseObject(value, UpdateArticleMess.class);
-            //重置消息的key:1234343434   和  value: likes:1
-            return new KeyValue<>(mess.getArticleId().toString(), mess.getType().name() + ":" + mess.getAdd());
-        })
+        KTable<Windowed<String>, ArticleBehaviorCount> table = stream
+                .peek((key, value) -> events.increment())
                 //按照文章id进行聚合
-                .groupBy((key, value) -> key)
+                .groupByKey(Grouped.with(Serdes.String(), Serdes.String()))
                 //时间窗口
-                .windowedBy(TimeWindows.of(Duration.ofSeconds(10)))
-                /**
-                 * 自行的完成聚合的计算
-                 */
-                .aggregate(new Initializer<String>() {
-                    /**
-                     * 初始方法，返回值是消息的value
-                     * @return
-                     */
-                    @Override
-                    public String apply() {
-                        return "COLLECTION:0,COMMENT:0,LIKES:0,VIEWS:0";
+                .windowedBy(TimeWindows.of(Duration.ofMillis(hotArticleStreamProperties.getWindowMs()))
+                        .grace(Duration.ofMillis(hotArticleStreamProperties.getGraceMs())))
+                .aggregate(ArticleBehaviorCount::new, (key, value, count) -> {
+                    if (StringUtils.isBlank(value)) {
+                        return count;
                     }
-                    /**
-                     * 真正的聚合操作，返回值是消息的value
-                     */
-                }, new Aggregator<String, String, String>() {
-                    @Override
-                    public String apply(String key, String value, String aggValue) {
-                        if (StringUtils.isBlank(value)) {
-                            return aggValue;
-                        }
-                        String[] aggAry = aggValue.split(",");
-                        int col = 0, com = 0, lik = 0, vie = 0;
-                        for (String agg : aggAry) {
-                            String[] split = agg.split(":");
-                            /**
-                             * 获得初始值，也是时间窗口内计算之后的值
-                             */
-                            switch (UpdateArticleMess.UpdateArticleType.valueOf(split[0])) {
-                                case COLLECTION:
-                                    col = Integer.parseInt(split[1]);
-                                    break;
-                                case COMMENT:
-                                    com = Integer.parseInt(split[1]);
-                                    break;
-                                case LIKES:
-                                    lik = Integer.parseInt(split[1]);
-                                    break;
-                                case VIEWS:
-                                    vie = Integer.parseInt(split[1]);
-                                    break;
-                            }
-                        }
-                        /**
-                         * 累加操作
-                         */
-                        String[] valAry = value.split(":");
-                        switch (UpdateArticleMess.UpdateArticleType.valueOf(valAry[0])) {
-                            case COLLECTION:
-                                col += Integer.parseInt(valAry[1]);
-                                break;
-                            case COMMENT:
-                                com += Integer.parseInt(valAry[1]);
-                                break;
-                            case LIKES:
-                                lik += Integer.parseInt(valAry[1]);
-                                break;
-                            case VIEWS:
-                                vie += Integer.parseInt(valAry[1]);
-                                break;
-                        }
-
-                        String formatStr = String.format("COLLECTION:%d,COMMENT:%d,LIKES:%d,VIEWS:%d", col, com, lik, vie);
-                        System.out.println("文章的id:" + key);
-                        System.out.println("当前时间窗口内的消息处理结果：" + formatStr);
-                        return formatStr;
+                    return count.add(JSON.parseObject(value, UpdateArticleMess.class));
+                }, Materialized.<String, ArticleBehaviorCount, WindowStore<Bytes, byte[]>>as(STORE_NAME)
+                        .withKeySerde(Serdes.String())
+                        .withValueSerde(new ArticleBehaviorCountSerde())
+                        .withRetention(Duration.ofMillis(hotArticleStreamProperties.getRetentionMs())));
+        if (hotArticleStreamProperties.isEmitOnClose()) {
+            //窗口关闭前的中间结果留在缓冲区，每个窗口每篇文章只发送一次
+            //窗口按消息时间关闭，没有新消息时最后一个窗口的结果要等到下一条消息到达后发送
+            table = table.suppress(Suppressed.untilWindowCloses(Suppressed.BufferConfig.unbounded()));
+        }
+        table.toStream()
+                .map((key, count) -> {
+                    String articleId = key.key();
+                    if (log.isDebugEnabled()) {
+                        log.debug("文章{}时间窗口内的聚合结果:{}", articleId, count);
                     }
-                }, Materialized.as("hot-atricle-stream-count-001"))
-                .toStream()
-                .map((key, value) -> {
-                    return new KeyValue<>(key.key().toString(), formatObj(key.key().toString(), value));
+                    updates.increment();
+                    return new KeyValue<>(articleId, JSON.toJSONString(count.toMess(Long.valueOf(articleId))));
                 })
                 //发送消息
                 .to(HotArticleConstants.HOT_ARTICLE_INCR_HANDLE_TOPIC);
 
         return stream;
-
-
-    }
-
-    /**
-     * 格式化消息的value数据
-     *
-     * @param articleId
-     * @param value
-     * @return
-     */
-    public String formatObj(String articleId, String value) {
-        ArticleVisitStreamMess mess = new ArticleVisitStreamMess();
-        mess.setArticleId(Long.valueOf(articleId));
-        //COLLECTION:0,COMMENT:0,LIKES:0,VIEWS:0
-        String[] valAry = value.split(",");
-        for (String val : valAry) {
-            String[] split = val.split(":");
-            switch (UpdateArticleMess.UpdateArticleType.valueOf(split[0])) {
-                case COLLECTION:
-                    mess.setCollect(Integer.parseInt(split[1]));
-                    break;
-                case COMMENT:
-                    mess.setComment(Integer.parseInt(split[1]));
-                    break;
-                case LIKES:
-                    mess.setLike(Integer.parseInt(split[1]));
-                    break;
-                case VIEWS:
-                    mess.setView(Integer.parseInt(split[1]));
-                    break;
-            }
-        }
-        log.info("聚合消息处理之后的结果为:{}", JSON.toJSONString(mess));
-        return JSON.toJSONString(mess);
-
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,253 @@
+package com.heima.article.stream;
+
+import com.alibaba.fastjson.JSON;
+import com.heima.article.config.RisingArticleProperties;
+import com.heima.article.service.ArticleRisingService;
+import com.heima.common.constants.ArticleConstants;
+import com.heima.model.mess.UpdateArticleMess;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 互动增速排行
+ * 1.按文章保存最近每分钟的加权互动，每个发布周期计算最近几分钟相对之前一小时的增速
+ * 2.增速按频道重新分区，每个频道和推荐在状态存储中保留增速最高的size篇
+ * 3.定时把每个频道的排行发布到redis，由/api/v1/article/rising读取
+ */
+@Configuration
+@Slf4j
+public class RisingArticleStreamHandler {
+
+    /**
+     * 每篇文章每分钟的互动  key:文章id
+     */
+    public static final String VELOCITY_STORE = "rising-article-velocity";
+
+    /**
+     * 每个频道增速最高的文章  key:频道id，推荐为__all__
+     */
+    public static final String TOP_K_STORE = "rising-article-top-k";
+
+    @Autowired
+    private RisingArticleProperties risingArticleProperties;
+
+    @Autowired
+    private ArticleRisingService articleRisingService;
+
+    @Bean
+    public KStream<String, String> risingStream(StreamsBuilder streamsBuilder, @Qualifier("kStream") KStream<String, String> kStream) {
+        if (!risingArticleProperties.isEnabled()) {
+            return kStream;
+        }
+        streamsBuilder.addStateStore(Stores.keyValueStoreBuilder(Stores.persistentKeyValueStore(VELOCITY_STORE),
+                Serdes.String(), new ArticleVelocitySerde()));
+        int size = risingArticleProperties.getSize();
+        kStream.transform(VelocityTransformer::new, VELOCITY_STORE)
+                //按频道重新分区，同一个频道的排行在一个任务中维护
+                .groupByKey(Grouped.with("rising-article-channel", Serdes.String(), new RisingScoreSerde()))
+                .aggregate(RisingTopK::new, (tag, risingScore, topK) -> topK.update(risingScore, size),
+                        Materialized.<String, RisingTopK, KeyValueStore<Bytes, byte[]>>as(TOP_K_STORE)
+                                .withKeySerde(Serdes.String())
+                                .withValueSerde(new RisingTopKSerde()))
+                .toStream()
+                .process(PublishProcessor::new);
+        return kStream;
+    }
+
+    /**
+     * 累加每篇文章每分钟的互动，定时计算增速发送给所属频道和推荐
+     */
+    private class VelocityTransformer implements Transformer<String, String, KeyValue<String, RisingScore>> {
+
+        private ProcessorContext context;
+
+        private KeyValueStore<String, ArticleVelocity> store;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void init(ProcessorContext context) {
+            this.context = context;
+            this.store = (KeyValueStore<String, ArticleVelocity>) context.getStateStore(VELOCITY_STORE);
+            context.schedule(Duration.ofMillis(risingArticleProperties.getPublishIntervalMs()),
+                    PunctuationType.WALL_CLOCK_TIME, this::punctuate);
+        }
+
+        @Override
+        public KeyValue<String, RisingScore> transform(String key, String value) {
+            if (key == null || StringUtils.isBlank(value)) {
+                return null;
+            }
+            //定时计算时按文章id解析key，不是文章id的消息不能进入状态存储，否则每次计算都会让流处理线程异常退出
+            if (!isArticleId(key)) {
+                log.warn("互动消息的key不是文章id，跳过 key={}", key);
+                return null;
+            }
+            int minutes = risingArticleProperties.totalMinutes();
+            ArticleVelocity velocity = store.get(key);
+            if (velocity == null || velocity.getBuckets().length != minutes) {
+                //修改了分钟数配置时重新统计
+                ArticleVelocity resized = new ArticleVelocity(minutes);
+                if (velocity != null) {
+                    resized.setChannelId(velocity.getChannelId());
+                    resized.setPublished(velocity.isPublished());
+                }
+                velocity = resized;
+            }
+            velocity.add(JSON.parseObject(value, UpdateArticleMess.class), context.timestamp());
+            store.put(key, velocity);
+            return null;
+        }
+
+        private void punctuate(long now) {
+            int recentMinutes = risingArticleProperties.getRecentMinutes();
+            int minRecent = risingArticleProperties.getMinRecent();
+            List<String> expired = new ArrayList<>();
+            Map<String, ArticleVelocity> changed = new HashMap<>();
+            //还没有查询到频道的文章和它的增速
+            Map<Long, Double> pending = new HashMap<>();
+            try (KeyValueIterator<String, ArticleVelocity> iterator = store.all()) {
+                while (iterator.hasNext()) {
+                    KeyValue<String, ArticleVelocity> entry = iterator.next();
+                    ArticleVelocity velocity = entry.value;
+                    //过期的文章删除，已经发布过的先发送0从排行中移除
+                    boolean isExpired = velocity.expired(now);
+                    double score = isExpired ? 0 : velocity.rising(now, recentMinutes, minRecent);
+                    if (isExpired) {
+                        expired.add(entry.key);
+                    }
+                    if (score <= 0 && !velocity.isPublished()) {
+                        continue;
+                    }
+                    if (velocity.getChannelId() == 0) {
+                        pending.put(Long.valueOf(entry.key), score);
+                        continue;
+                    }
+                    forward(entry.key, velocity, score);
+                    if (velocity.isPublished() != score > 0) {
+                        velocity.setPublished(score > 0);
+                        changed.put(entry.key, velocity);
+                    }
+                }
+            }
+            if (!pending.isEmpty()) {
+                resolveChannels(pending, changed);
+            }
+            for (String key : expired) {
+                changed.remove(key);
+                store.delete(key);
+            }
+            for (Map.Entry<String, ArticleVelocity> entry : changed.entrySet()) {
+                store.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        /**
+         * 一次查询所有新文章的频道，没有查询到的下次再查
+         */
+        private void resolveChannels(Map<Long, Double> pending, Map<String, ArticleVelocity> changed) {
+            Map<Long, Integer> channels;
+            try {
+                channels = articleRisingService.channels(pending.keySet());
+            } catch (Exception e) {
+                log.error("查询文章频道异常", e);
+                return;
+            }
+            for (Map.Entry<Long, Integer> channel : channels.entrySet()) {
+                String key = channel.getKey().toString();
+                ArticleVelocity velocity = store.get(key);
+                double score = pending.get(channel.getKey());
+                velocity.setChannelId(channel.getValue());
+                forward(key, velocity, score);
+                velocity.setPublished(score > 0);
+                changed.put(key, velocity);
+            }
+        }
+
+        private boolean isArticleId(String key) {
+            try {
+                Long.parseLong(key);
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private void forward(String articleId, ArticleVelocity velocity, double score) {
+            RisingScore risingScore = new RisingScore(Long.parseLong(articleId), score);
+            context.forward(String.valueOf(velocity.getChannelId()), risingScore);
+            context.forward(ArticleConstants.DEFAULT_TAG, risingScore);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 定时发布频道的排行
+     */
+    private class PublishProcessor extends AbstractProcessor<String, RisingTopK> {
+
+        /**
+         * 最新的排行  key:频道id，推荐为__all__
+         */
+        private final Map<String, List<Long>> latest = new LinkedHashMap<>();
+
+        @Override
+        public void init(ProcessorContext context) {
+            super.init(context);
+            context.schedule(Duration.ofMillis(risingArticleProperties.getPublishIntervalMs()),
+                    PunctuationType.WALL_CLOCK_TIME, timestamp -> publish());
+        }
+
+        @Override
+        public void process(String tag, RisingTopK topK) {
+            latest.put(tag, topK == null ? new ArrayList<>() : topK.articleIds());
+        }
+
+        /**
+         * 每次都发布所有频道，延长redis中排行的有效期，空的排行发布一次后不再保留
+         */
+        private void publish() {
+            List<String> published = new ArrayList<>();
+            for (Map.Entry<String, List<Long>> entry : latest.entrySet()) {
+                try {
+                    articleRisingService.publish(entry.getKey(), entry.getValue());
+                    published.add(entry.getKey());
+                } catch (Exception e) {
+                    log.error("发布频道{}的增速排行异常", entry.getKey(), e);
+                }
+            }
+            for (String tag : published) {
+                if (latest.get(tag).isEmpty()) {
+                    latest.remove(tag);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.heima.article.stream;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 文章的互动增速，0表示从排行中移除
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RisingScore {
+
+    private long articleId;
+
+    private double score;
+}
@@ -0,0 +1,37 @@
+package com.heima.article.stream;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serdes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RisingScore的二进制编码，固定16字节  文章id 8字节、增速 8字节
+ * 用于按频道重新分区的topic
+ */
+public class RisingScoreSerde extends Serdes.WrapperSerde<RisingScore> {
+
+    private static final int SIZE = Long.BYTES + Double.BYTES;
+
+    public RisingScoreSerde() {
+        super((topic, score) -> encode(score), (topic, bytes) -> decode(bytes));
+    }
+
+    public static byte[] encode(RisingScore score) {
+        if (score == null) {
+            return null;
+        }
+        return ByteBuffer.allocate(SIZE).putLong(score.getArticleId()).putDouble(score.getScore()).array();
+    }
+
+    public static RisingScore decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length != SIZE) {
+            throw new SerializationException("文章增速数据长度错误:" + bytes.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new RisingScore(buffer.getLong(), buffer.getDouble());
+    }
+}
@@ -0,0 +1,55 @@
+package com.heima.article.stream;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个频道增速最高的文章，按增速从高到低，最多保留size篇
+ */
+@Getter
+@Setter
+public class RisingTopK {
+
+    private List<RisingScore> scores = new ArrayList<>();
+
+    /**
+     * 更新一篇文章的增速，增速为0时移除
+     *
+     * @param risingScore
+     * @param size
+     * @return this
+     */
+    public RisingTopK update(RisingScore risingScore, int size) {
+        scores.removeIf(s -> s.getArticleId() == risingScore.getArticleId());
+        if (risingScore.getScore() <= 0) {
+            return this;
+        }
+        int i = 0;
+        while (i < scores.size() && scores.get(i).getScore() >= risingScore.getScore()) {
+            i++;
+        }
+        if (i < size) {
+            scores.add(i, risingScore);
+        }
+        while (scores.size() > size) {
+            scores.remove(scores.size() - 1);
+        }
+        return this;
+    }
+
+    /**
+     * 文章id，按增速从高到低
+     *
+     * @return
+     */
+    public List<Long> articleIds() {
+        List<Long> ids = new ArrayList<>(scores.size());
+        for (RisingScore score : scores) {
+            ids.add(score.getArticleId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,50 @@
+package com.heima.article.stream;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serdes;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RisingTopK的二进制编码  数量 4字节，每篇文章的RisingScore各16字节
+ */
+public class RisingTopKSerde extends Serdes.WrapperSerde<RisingTopK> {
+
+    private static final int ENTRY = Long.BYTES + Double.BYTES;
+
+    public RisingTopKSerde() {
+        super((topic, topK) -> encode(topK), (topic, bytes) -> decode(bytes));
+    }
+
+    public static byte[] encode(RisingTopK topK) {
+        if (topK == null) {
+            return null;
+        }
+        List<RisingScore> scores = topK.getScores();
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + scores.size() * ENTRY).putInt(scores.size());
+        for (RisingScore score : scores) {
+            buffer.putLong(score.getArticleId()).putDouble(score.getScore());
+        }
+        return buffer.array();
+    }
+
+    public static RisingTopK decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int size = bytes.length < Integer.BYTES ? -1 : buffer.getInt();
+        if (size < 0 || bytes.length != Integer.BYTES + size * ENTRY) {
+            throw new SerializationException("文章增速排行数据长度错误:" + bytes.length);
+        }
+        List<RisingScore> scores = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            scores.add(new RisingScore(buffer.getLong(), buffer.getDouble()));
+        }
+        RisingTopK topK = new RisingTopK();
+        topK.setScores(scores);
+        return topK;
+    }
+}
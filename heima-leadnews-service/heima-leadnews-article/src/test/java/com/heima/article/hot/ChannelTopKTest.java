@@ -0,0 +1,76 @@
+package com.heima.article.hot;
+
+import com.heima.model.article.pojos.ApArticle;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelTopKTest {
+
+    private static ApArticle article(long id, int channelId, int views) {
+        ApArticle apArticle = new ApArticle();
+        apArticle.setId(id);
+        apArticle.setChannelId(channelId);
+        apArticle.setViews(views);
+        return apArticle;
+    }
+
+    private static List<Long> ids(List<ChannelTopK.Scored> scored) {
+        return scored.stream().map(s -> s.getArticle().getId()).collect(Collectors.toList());
+    }
+
+    @Test
+    void keepHighestPerChannelAndOverall() {
+        ChannelTopK topK = new ChannelTopK(2);
+        topK.offer(article(1, 1, 10), 10, 10);
+        topK.offer(article(2, 1, 30), 30, 30);
+        topK.offer(article(3, 1, 20), 20, 20);
+        topK.offer(article(4, 2, 25), 25, 25);
+        topK.offer(article(5, 2, 5), 5, 5);
+
+        assertEquals(Arrays.asList(2L, 3L), ids(topK.top(1)));
+        assertEquals(Arrays.asList(4L, 5L), ids(topK.top(2)));
+        assertEquals(Arrays.asList(2L, 4L), ids(topK.topAll()));
+        assertTrue(topK.top(3).isEmpty());
+    }
+
+    @Test
+    void rankAllWithItsOwnScore() {
+        ChannelTopK topK = new ChannelTopK(2);
+        //推荐使用与频道相反的分值
+        topK.offer(article(1, 1, 10), 10, 3);
+        topK.offer(article(2, 1, 30), 30, 1);
+        topK.offer(article(3, 2, 20), 20, 2);
+
+        assertEquals(Arrays.asList(2L, 1L), ids(topK.top(1)));
+        assertEquals(Arrays.asList(1L, 3L), ids(topK.topAll()));
+    }
+
+    @Test
+    void parallelMatchesSequential() {
+        Random random = new Random(1);
+        List<ApArticle> articles = new ArrayList<>();
+        ChannelTopK sequential = new ChannelTopK(30);
+        for (int i = 0; i < 20000; i++) {
+            //分值不重复，结果唯一
+            ApArticle apArticle = article(i, random.nextInt(5), i * 7919 % 20011);
+            articles.add(apArticle);
+            sequential.offer(apArticle, apArticle.getViews(), -apArticle.getViews());
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ChannelTopK parallel = pool.invoke(ChannelTopK.task(articles, ApArticle::getViews, a -> -a.getViews(), 30));
+        pool.shutdown();
+
+        for (int channelId = 0; channelId < 5; channelId++) {
+            assertEquals(ids(sequential.top(channelId)), ids(parallel.top(channelId)));
+        }
+        assertEquals(ids(sequential.topAll()), ids(parallel.topAll()));
+    }
+}
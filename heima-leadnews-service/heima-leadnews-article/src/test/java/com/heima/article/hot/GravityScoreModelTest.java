@@ -0,0 +1,39 @@
+package com.heima.article.hot;
+
+import com.heima.model.article.pojos.ApArticle;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GravityScoreModelTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static ApArticle article(int views, long publishTime) {
+        ApArticle apArticle = new ApArticle();
+        apArticle.setViews(views);
+        apArticle.setPublishTime(new Date(publishTime));
+        return apArticle;
+    }
+
+    @Test
+    void decayByHalfLife() {
+        GravityScoreModel model = new GravityScoreModel(24);
+        long now = System.currentTimeMillis();
+        //发布一个半衰期的文章热度减半，与热度一半的新文章分值相同
+        double old = model.score(article(999, now - 24 * HOUR));
+        double fresh = model.score(article(499, now));
+        assertEquals(old, fresh, 1e-9);
+    }
+
+    @Test
+    void newerWinsWithSameBehaviors() {
+        GravityScoreModel model = new GravityScoreModel(24);
+        long now = System.currentTimeMillis();
+        assertTrue(model.score(article(100, now)) > model.score(article(100, now - HOUR)));
+        //热度足够高的旧文章仍然排在前面
+        assertTrue(model.score(article(10000, now - 24 * HOUR)) > model.score(article(100, now)));
+    }
+}
@@ -0,0 +1,161 @@
+package com.heima.article.hot;
+
+import com.github.fppt.jedismock.RedisServer;
+import com.heima.common.constants.ArticleConstants;
+import com.heima.common.redis.CacheService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 排行榜脚本的裁剪，使用进程内的redis
+ */
+class HotRankScriptTest {
+
+    private static final String RANK_1 = ArticleConstants.HOT_ARTICLE_RANK + 1;
+
+    private static final String RANK_2 = ArticleConstants.HOT_ARTICLE_RANK + 2;
+
+    private static final String RANK_ALL = ArticleConstants.HOT_ARTICLE_RANK + ArticleConstants.DEFAULT_TAG;
+
+    private static final String CARD = ArticleConstants.HOT_ARTICLE_CARD;
+
+    private RedisServer redisServer;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private CacheService cacheService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        redisServer = RedisServer.newRedisServer();
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redisServer.getHost(), redisServer.getBindPort()));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        cacheService = new CacheService();
+        ReflectionTestUtils.setField(cacheService, "stringRedisTemplate", stringRedisTemplate);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    void keepExactlyTopNAndDeleteEvictedCard() {
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(cacheService.zAddTopNWithHash(Collections.singletonList(RANK_1), CARD,
+                    String.valueOf(i), i, 3, "card-" + i));
+        }
+        assertEquals(3L, stringRedisTemplate.opsForZSet().zCard(RANK_1));
+
+        //第4个成员挤出分值最低的1
+        assertTrue(cacheService.zAddTopNWithHash(Collections.singletonList(RANK_1), CARD, "4", 4, 3, "card-4"));
+        assertEquals(3L, stringRedisTemplate.opsForZSet().zCard(RANK_1));
+        assertEquals(new HashSet<>(Arrays.asList("2", "3", "4")), stringRedisTemplate.opsForZSet().range(RANK_1, 0, -1));
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(CARD, "1"));
+        assertEquals(3L, stringRedisTemplate.opsForHash().size(CARD));
+
+        //分值太低，直接被裁剪，不保存成员数据
+        assertFalse(cacheService.zAddTopNWithHash(Collections.singletonList(RANK_1), CARD, "0", 0, 3, "card-0"));
+        assertEquals(3L, stringRedisTemplate.opsForZSet().zCard(RANK_1));
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(CARD, "0"));
+    }
+
+    @Test
+    void keepCardWhileInAnyRank() {
+        for (int i = 1; i <= 2; i++) {
+            cacheService.zAddTopNWithHash(Arrays.asList(RANK_1, RANK_ALL), CARD, String.valueOf(i), i, 2, "card-" + i);
+        }
+        //只进入推荐，频道1中挤出1但推荐中1仍然保留
+        stringRedisTemplate.opsForZSet().add(RANK_ALL, "1", 10);
+        cacheService.zAddTopNWithHash(Collections.singletonList(RANK_1), CARD, "3", 3, 2, "card-3");
+        assertEquals(2L, stringRedisTemplate.opsForZSet().zCard(RANK_1));
+        assertTrue(stringRedisTemplate.opsForHash().hasKey(CARD, "1"));
+    }
+
+    @Test
+    void keepCardWhileRankedInChannelNotPassed() {
+        //文章1在频道1和推荐中
+        cacheService.zAddTopNWithHash(Arrays.asList(RANK_1, RANK_ALL), CARD, "1", 1, 2, "card-1");
+        //频道2的文章把1挤出推荐，这次调用没有传入频道1的排行榜
+        cacheService.zAddTopNWithHash(Arrays.asList(RANK_2, RANK_ALL), CARD, "2", 2, 2, "card-2");
+        cacheService.zAddTopNWithHash(Arrays.asList(RANK_2, RANK_ALL), CARD, "3", 3, 2, "card-3");
+        assertNull(stringRedisTemplate.opsForZSet().score(RANK_ALL, "1"));
+        assertNotNull(stringRedisTemplate.opsForZSet().score(RANK_1, "1"));
+        assertEquals("card-1", stringRedisTemplate.opsForHash().get(CARD, "1"));
+
+        //再被挤出频道1后删除
+        cacheService.zAddTopNWithHash(Collections.singletonList(RANK_1), CARD, "4", 4, 1, "card-4");
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(CARD, "1"));
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(CARD + "_refs", "1"));
+    }
+
+    @Test
+    void replaceRebuildsRefs() {
+        Map<String, Set<ZSetOperations.TypedTuple<String>>> rankings = new HashMap<>();
+        rankings.put(RANK_1, new HashSet<>(Collections.singletonList(new DefaultTypedTuple<>("1", 1.0))));
+        rankings.put(RANK_ALL, new HashSet<>(Collections.singletonList(new DefaultTypedTuple<>("1", 1.0))));
+        cacheService.zReplaceWithHash(rankings, CARD, Collections.singletonMap("1", "card-1"));
+
+        //全量计算后增量挤出推荐，频道1中仍然保留
+        cacheService.zAddTopNWithHash(Arrays.asList(RANK_2, RANK_ALL), CARD, "2", 2, 1, "card-2");
+        assertNull(stringRedisTemplate.opsForZSet().score(RANK_ALL, "1"));
+        assertEquals("card-1", stringRedisTemplate.opsForHash().get(CARD, "1"));
+    }
+
+    @Test
+    void floorTracksHighestEvictedScore() {
+        assertNull(cacheService.zTopNFloor(CARD, RANK_1));
+        cacheService.zTopNRaiseFloor(CARD, RANK_1, -1);
+        assertEquals(-1D, cacheService.zTopNFloor(CARD, RANK_1));
+
+        for (int i = 1; i <= 4; i++) {
+            cacheService.zAddTopNWithHash(Collections.singletonList(RANK_1), CARD, String.valueOf(i), i, 3, "card-" + i);
+        }
+        //1被裁剪，分值大于1的成员都在排行榜中
+        assertEquals(1D, cacheService.zTopNFloor(CARD, RANK_1));
+
+        //下限只升高
+        cacheService.zTopNRaiseFloor(CARD, RANK_1, -1);
+        assertEquals(1D, cacheService.zTopNFloor(CARD, RANK_1));
+
+        //删除成员不影响下限
+        cacheService.zRemoveTopNWithHash(Collections.singletonList(RANK_1), CARD, Collections.singletonList("4"));
+        assertEquals(2L, stringRedisTemplate.opsForZSet().zCard(RANK_1));
+        assertEquals(1D, cacheService.zTopNFloor(CARD, RANK_1));
+    }
+
+    @Test
+    void removeKeepsCardStillRankedElsewhere() {
+        cacheService.zAddTopNWithHash(Arrays.asList(RANK_1, RANK_ALL), CARD, "1", 1, 3, "card-1");
+        cacheService.zAddTopNWithHash(Collections.singletonList(RANK_2), CARD, "1", 1, 3, "card-1");
+
+        assertEquals(0L, cacheService.zRemoveTopNWithHash(Arrays.asList(RANK_1, RANK_ALL), CARD, Collections.singletonList("1")));
+        assertEquals("card-1", stringRedisTemplate.opsForHash().get(CARD, "1"));
+
+        assertEquals(1L, cacheService.zRemoveTopNWithHash(Collections.singletonList(RANK_2), CARD, Collections.singletonList("1")));
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(CARD, "1"));
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(CARD + "_refs", "1"));
+    }
+}
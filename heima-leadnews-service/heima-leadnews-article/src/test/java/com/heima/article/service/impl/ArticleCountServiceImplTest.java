@@ -0,0 +1,85 @@
+package com.heima.article.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.heima.article.config.HotArticleStreamProperties;
+import com.heima.article.stream.ArticleBehaviorCount;
+import com.heima.article.stream.HotArticleStreamHandler;
+import com.heima.common.constants.HotArticleConstants;
+import com.heima.model.mess.ArticleVisitStreamMess;
+import com.heima.model.mess.UpdateArticleMess;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.WindowStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArticleCountServiceImplTest {
+
+    private static String mess(long articleId, UpdateArticleMess.UpdateArticleType type, int add) {
+        UpdateArticleMess mess = new UpdateArticleMess();
+        mess.setArticleId(articleId);
+        mess.setType(type);
+        mess.setAdd(add);
+        return JSON.toJSONString(mess);
+    }
+
+    @Test
+    void sumWindowsInRange() throws Exception {
+        HotArticleStreamHandler handler = new HotArticleStreamHandler();
+        ReflectionTestUtils.setField(handler, "hotArticleStreamProperties", new HotArticleStreamProperties());
+        ReflectionTestUtils.setField(handler, "meterRegistry", new SimpleMeterRegistry());
+        StreamsBuilder builder = new StreamsBuilder();
+        handler.kStream(builder);
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "article-count-test");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("kafka-streams").toString());
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), props)) {
+            TestInputTopic<String, String> input = driver.createInputTopic(HotArticleConstants.HOT_ARTICLE_SCORE_TOPIC,
+                    new StringSerializer(), new StringSerializer());
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.VIEWS, 1), 0);
+            input.pipeInput("2", mess(2, UpdateArticleMess.UpdateArticleType.COMMENT, 1), 3000);
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.LIKES, 1), 5000);
+            //下一个窗口，还没有关闭也可以查询到
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.VIEWS, 1), 12000);
+
+            WindowStore<String, ArticleBehaviorCount> store = driver.getWindowStore(HotArticleStreamHandler.STORE_NAME);
+            List<ArticleVisitStreamMess> counts = ArticleCountServiceImpl.count(store, Arrays.asList(1L, 2L, 3L), 0, 20000);
+            assertEquals(3, counts.size());
+            assertEquals(1L, counts.get(0).getArticleId());
+            assertEquals(2, counts.get(0).getView());
+            assertEquals(1, counts.get(0).getLike());
+            assertEquals(1, counts.get(1).getComment());
+            //没有互动的文章返回0
+            assertEquals(3L, counts.get(2).getArticleId());
+            assertEquals(0, counts.get(2).getView());
+
+            //只统计开始时间在范围内的窗口
+            counts = ArticleCountServiceImpl.count(store, Arrays.asList(1L), 10000, 20000);
+            assertEquals(1, counts.get(0).getView());
+            assertEquals(0, counts.get(0).getLike());
+        }
+    }
+
+    @Test
+    void retentionCoversWindowAndGrace() {
+        HotArticleStreamProperties properties = new HotArticleStreamProperties();
+        assertTrue(properties.isRetentionValid());
+        properties.setRetentionMs(properties.getWindowMs() + properties.getGraceMs());
+        assertTrue(properties.isRetentionValid());
+        properties.setRetentionMs(properties.getWindowMs());
+        assertFalse(properties.isRetentionValid());
+    }
+}
@@ -0,0 +1,132 @@
+package com.heima.article.stream;
+
+import com.alibaba.fastjson.JSON;
+import com.heima.article.config.HotArticleStreamProperties;
+import com.heima.common.constants.HotArticleConstants;
+import com.heima.model.mess.ArticleVisitStreamMess;
+import com.heima.model.mess.UpdateArticleMess;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.TopologyDescription;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotArticleStreamHandlerTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private static String mess(long articleId, UpdateArticleMess.UpdateArticleType type, int add) {
+        UpdateArticleMess mess = new UpdateArticleMess();
+        mess.setArticleId(articleId);
+        mess.setType(type);
+        mess.setAdd(add);
+        return JSON.toJSONString(mess);
+    }
+
+    private Topology topology(boolean emitOnClose) {
+        HotArticleStreamProperties properties = new HotArticleStreamProperties();
+        properties.setEmitOnClose(emitOnClose);
+        HotArticleStreamHandler handler = new HotArticleStreamHandler();
+        ReflectionTestUtils.setField(handler, "hotArticleStreamProperties", properties);
+        ReflectionTestUtils.setField(handler, "meterRegistry", registry);
+        StreamsBuilder builder = new StreamsBuilder();
+        handler.kStream(builder);
+        return builder.build();
+    }
+
+    private TopologyTestDriver driver(Topology topology) throws Exception {
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "hot-article-stream-test");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        props.put(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG, 0);
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("kafka-streams").toString());
+        return new TopologyTestDriver(topology, props);
+    }
+
+    @Test
+    void serdeRoundTrip() {
+        ArticleBehaviorCount count = new ArticleBehaviorCount();
+        count.setCollect(1);
+        count.setComment(-2);
+        count.setLike(3);
+        count.setView(Integer.MAX_VALUE);
+        byte[] bytes = ArticleBehaviorCountSerde.encode(count);
+        assertEquals(16, bytes.length);
+        assertEquals(count, ArticleBehaviorCountSerde.decode(bytes));
+    }
+
+    @Test
+    void aggregateByArticleWithoutRepartition() throws Exception {
+        Topology topology = topology(false);
+        //只有一个子拓扑，没有重新分区
+        TopologyDescription description = topology.describe();
+        assertEquals(1, description.subtopologies().size());
+
+        try (TopologyTestDriver driver = driver(topology)) {
+            TestInputTopic<String, String> input = driver.createInputTopic(HotArticleConstants.HOT_ARTICLE_SCORE_TOPIC,
+                    new StringSerializer(), new StringSerializer(), Instant.ofEpochMilli(0), Duration.ofMillis(1));
+            TestOutputTopic<String, String> output = driver.createOutputTopic(HotArticleConstants.HOT_ARTICLE_INCR_HANDLE_TOPIC,
+                    new StringDeserializer(), new StringDeserializer());
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.VIEWS, 1));
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.LIKES, 1));
+            input.pipeInput("2", mess(2, UpdateArticleMess.UpdateArticleType.VIEWS, 1));
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.VIEWS, 1));
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.LIKES, -1));
+
+            List<KeyValue<String, String>> records = output.readKeyValuesToList();
+            assertEquals(5, records.size());
+            KeyValue<String, String> last = records.get(records.size() - 1);
+            assertEquals("1", last.key);
+            ArticleVisitStreamMess mess = JSON.parseObject(last.value, ArticleVisitStreamMess.class);
+            assertEquals(1L, mess.getArticleId());
+            assertEquals(2, mess.getView());
+            assertEquals(0, mess.getLike());
+        }
+    }
+
+    @Test
+    void emitOnceWhenWindowCloses() throws Exception {
+        try (TopologyTestDriver driver = driver(topology(true))) {
+            TestInputTopic<String, String> input = driver.createInputTopic(HotArticleConstants.HOT_ARTICLE_SCORE_TOPIC,
+                    new StringSerializer(), new StringSerializer());
+            TestOutputTopic<String, String> output = driver.createOutputTopic(HotArticleConstants.HOT_ARTICLE_INCR_HANDLE_TOPIC,
+                    new StringDeserializer(), new StringDeserializer());
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.VIEWS, 1), 0);
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.VIEWS, 1), 5000);
+            input.pipeInput("2", mess(2, UpdateArticleMess.UpdateArticleType.LIKES, 1), 9999);
+            //窗口[0,10000)结束，还在宽限期内，迟到的消息仍然计入
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.COMMENT, 1), 10500);
+            input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.VIEWS, 1), 9000);
+            assertTrue(output.isEmpty());
+
+            //超过宽限期，第一个窗口关闭
+            input.pipeInput("3", mess(3, UpdateArticleMess.UpdateArticleType.VIEWS, 1), 12000);
+            Map<String, String> records = output.readKeyValuesToMap();
+            assertEquals(2, records.size());
+            ArticleVisitStreamMess first = JSON.parseObject(records.get("1"), ArticleVisitStreamMess.class);
+            assertEquals(3, first.getView());
+            assertEquals(0, first.getComment());
+            assertEquals(1, JSON.parseObject(records.get("2"), ArticleVisitStreamMess.class).getLike());
+        }
+        assertEquals(6.0, registry.get("article.stream.events").counter().count());
+        assertEquals(2.0, registry.get("article.stream.updates").counter().count());
+    }
+}
@@ -0,0 +1,186 @@
+package com.heima.article.stream;
+
+import com.alibaba.fastjson.JSON;
+import com.heima.article.config.HotArticleStreamProperties;
+import com.heima.article.config.RisingArticleProperties;
+import com.heima.article.service.ArticleRisingService;
+import com.heima.common.constants.ArticleConstants;
+import com.heima.common.constants.HotArticleConstants;
+import com.heima.model.article.dtos.ArticleHomeDto;
+import com.heima.model.common.dtos.ResponseResult;
+import com.heima.model.mess.UpdateArticleMess;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RisingArticleStreamHandlerTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    /**
+     * 整分钟
+     */
+    private static final long T0 = 1000 * MINUTE;
+
+    /**
+     * 记录发布结果，文章1、2在频道1，文章3在频道2，文章4没有文章数据
+     */
+    private static class RecordingRisingService implements ArticleRisingService {
+
+        private final Map<String, List<Long>> published = new HashMap<>();
+
+        @Override
+        public ResponseResult load(ArticleHomeDto dto) {
+            return ResponseResult.okResult(published.get(dto.getTag()));
+        }
+
+        @Override
+        public Map<Long, Integer> channels(Collection<Long> articleIds) {
+            Map<Long, Integer> channels = new HashMap<>();
+            for (Long articleId : articleIds) {
+                if (articleId == 1 || articleId == 2) {
+                    channels.put(articleId, 1);
+                } else if (articleId == 3) {
+                    channels.put(articleId, 2);
+                }
+            }
+            return channels;
+        }
+
+        @Override
+        public void publish(String tag, List<Long> articleIds) {
+            published.put(tag, articleIds);
+        }
+    }
+
+    private static String mess(long articleId, UpdateArticleMess.UpdateArticleType type, int add) {
+        UpdateArticleMess mess = new UpdateArticleMess();
+        mess.setArticleId(articleId);
+        mess.setType(type);
+        mess.setAdd(add);
+        return JSON.toJSONString(mess);
+    }
+
+    @Test
+    void velocityComparesRecentWithBaseline() {
+        ArticleVelocity velocity = new ArticleVelocity(65);
+        //之前一小时每分钟1次浏览
+        for (long m = 0; m < 65; m++) {
+            velocity.add(JSON.parseObject(mess(1, UpdateArticleMess.UpdateArticleType.VIEWS, 1), UpdateArticleMess.class),
+                    T0 - m * MINUTE);
+        }
+        assertEquals(0, velocity.rising(T0, 5, 5));
+
+        //当前分钟增加10次点赞
+        velocity.add(JSON.parseObject(mess(1, UpdateArticleMess.UpdateArticleType.LIKES, 10), UpdateArticleMess.class), T0);
+        assertEquals((35 / 5.0 - 1) / Math.sqrt(2), velocity.rising(T0, 5, 5), 1e-9);
+
+        ArticleVelocity decoded = ArticleVelocitySerde.decode(ArticleVelocitySerde.encode(velocity));
+        assertArrayEquals(velocity.getBuckets(), decoded.getBuckets());
+        assertEquals(velocity.getLastMinute(), decoded.getLastMinute());
+
+        assertFalse(velocity.expired(T0 + 64 * MINUTE));
+        assertTrue(velocity.expired(T0 + 65 * MINUTE));
+
+        //分钟数配置修改后还没有重新统计，没有基准分钟时不计算增速
+        assertEquals(0, velocity.rising(T0, 65, 0));
+        assertEquals(0, velocity.rising(T0, 0, 0));
+    }
+
+    @Test
+    void topKKeepsHighestAndRemovesZero() {
+        RisingTopK topK = new RisingTopK();
+        topK.update(new RisingScore(1, 1), 2);
+        topK.update(new RisingScore(2, 3), 2);
+        topK.update(new RisingScore(3, 2), 2);
+        assertEquals(Arrays.asList(2L, 3L), topK.articleIds());
+        topK.update(new RisingScore(2, 0), 2);
+        assertEquals(Arrays.asList(3L), topK.articleIds());
+        assertEquals(topK.getScores(), RisingTopKSerde.decode(RisingTopKSerde.encode(topK)).getScores());
+    }
+
+    @Test
+    void publishRisingArticlesByChannel() throws Exception {
+        HotArticleStreamHandler hotHandler = new HotArticleStreamHandler();
+        ReflectionTestUtils.setField(hotHandler, "hotArticleStreamProperties", new HotArticleStreamProperties());
+        ReflectionTestUtils.setField(hotHandler, "meterRegistry", new SimpleMeterRegistry());
+        RecordingRisingService risingService = new RecordingRisingService();
+        RisingArticleStreamHandler risingHandler = new RisingArticleStreamHandler();
+        ReflectionTestUtils.setField(risingHandler, "risingArticleProperties", new RisingArticleProperties());
+        ReflectionTestUtils.setField(risingHandler, "articleRisingService", risingService);
+        StreamsBuilder builder = new StreamsBuilder();
+        risingHandler.risingStream(builder, hotHandler.kStream(builder));
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "rising-article-stream-test");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        props.put(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG, 0);
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("kafka-streams").toString());
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), props, Instant.ofEpochMilli(T0))) {
+            TestInputTopic<String, String> input = driver.createInputTopic(HotArticleConstants.HOT_ARTICLE_SCORE_TOPIC,
+                    new StringSerializer(), new StringSerializer());
+            //文章1每分钟稳定1次浏览，没有增长
+            for (long m = 64; m >= 0; m--) {
+                input.pipeInput("1", mess(1, UpdateArticleMess.UpdateArticleType.VIEWS, 1), T0 - m * MINUTE);
+            }
+            //文章2突然20次浏览，文章3点赞5次，文章4查询不到频道
+            input.pipeInput("2", mess(2, UpdateArticleMess.UpdateArticleType.VIEWS, 20), T0);
+            input.pipeInput("3", mess(3, UpdateArticleMess.UpdateArticleType.LIKES, 5), T0);
+            input.pipeInput("4", mess(4, UpdateArticleMess.UpdateArticleType.VIEWS, 30), T0);
+
+            driver.advanceWallClockTime(Duration.ofMillis(MINUTE));
+            driver.advanceWallClockTime(Duration.ofMillis(MINUTE));
+        }
+        assertEquals(Arrays.asList(2L), risingService.published.get("1"));
+        assertEquals(Arrays.asList(3L), risingService.published.get("2"));
+        assertEquals(Arrays.asList(2L, 3L), risingService.published.get(ArticleConstants.DEFAULT_TAG));
+    }
+
+    @Test
+    void skipNonNumericKey() throws Exception {
+        RecordingRisingService risingService = new RecordingRisingService();
+        RisingArticleStreamHandler risingHandler = new RisingArticleStreamHandler();
+        ReflectionTestUtils.setField(risingHandler, "risingArticleProperties", new RisingArticleProperties());
+        ReflectionTestUtils.setField(risingHandler, "articleRisingService", risingService);
+        StreamsBuilder builder = new StreamsBuilder();
+        risingHandler.risingStream(builder, builder.stream(HotArticleConstants.HOT_ARTICLE_SCORE_TOPIC));
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "rising-article-key-test");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG, 0);
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("kafka-streams").toString());
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), props, Instant.ofEpochMilli(T0))) {
+            TestInputTopic<String, String> input = driver.createInputTopic(HotArticleConstants.HOT_ARTICLE_SCORE_TOPIC,
+                    new StringSerializer(), new StringSerializer());
+            input.pipeInput("article-2", mess(2, UpdateArticleMess.UpdateArticleType.VIEWS, 20), T0);
+            input.pipeInput("2", mess(2, UpdateArticleMess.UpdateArticleType.VIEWS, 20), T0);
+
+            //非法的key没有进入状态存储，定时计算不会异常
+            driver.advanceWallClockTime(Duration.ofMillis(MINUTE));
+            assertNull(driver.getKeyValueStore(RisingArticleStreamHandler.VELOCITY_STORE).get("article-2"));
+            driver.advanceWallClockTime(Duration.ofMillis(MINUTE));
+        }
+        assertEquals(Arrays.asList(2L), risingService.published.get(ArticleConstants.DEFAULT_TAG));
+    }
+}
@@ -0,0 +1,171 @@
+package com.heima.schedule.commit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 组提交写入器
+ * 多个线程提交的写请求由一个后台线程合并成批，一批只调用一次flusher
+ * 攒满maxBatchSize或者第一个请求等待超过lingerMs就写入，提交方通过返回的future等待写入结果
+ *
+ * @param <T> 写入的元素类型
+ */
+public class GroupCommitWriter<T> {
+
+    private final BlockingQueue<Request<T>> queue = new LinkedBlockingQueue<>();
+
+    private final int maxBatchSize;
+
+    private final long lingerNanos;
+
+    private final Consumer<List<T>> flusher;
+
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param name         线程名称前缀
+     * @param maxBatchSize 每批最多合并的元素数量
+     * @param lingerMs     第一个请求最多等待多久再写入
+     * @param flusher      批量写入，必须是原子的，抛出异常时不能留下部分写入的数据
+     *                     整批失败时按请求逐个重试，只有自己写入失败的请求异常结束
+     */
+    public GroupCommitWriter(String name, int maxBatchSize, long lingerMs, Consumer<List<T>> flusher) {
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.flusher = flusher;
+        this.writer = new Thread(this::run, name + "-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 提交一组元素，和其他线程提交的元素合并写入
+     *
+     * @param items
+     * @return 所在批次写入完成后结束
+     */
+    public CompletableFuture<Void> submit(Collection<T> items) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (items.isEmpty()) {
+            future.complete(null);
+        } else if (!running) {
+            future.completeExceptionally(shutDown());
+        } else {
+            Request<T> request = new Request<>(new ArrayList<>(items), future);
+            queue.add(request);
+            //和shutdown并发时写入线程可能已经退出，还在队列中说明没有被取走，由这里结束
+            if (!running && queue.remove(request)) {
+                future.completeExceptionally(shutDown());
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 等待写入的请求数量
+     *
+     * @return
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    /**
+     * 停止接收新的请求，写完已经提交的请求后退出
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Request<T>> requests = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Request<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                requests.add(first);
+                int size = first.items.size();
+                long deadline = System.nanoTime() + lingerNanos;
+                while (size < maxBatchSize) {
+                    long wait = deadline - System.nanoTime();
+                    //超过等待时间后只合并已经在队列中的请求
+                    Request<T> next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    requests.add(next);
+                    size += next.items.size();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                if (!requests.isEmpty()) {
+                    flush(requests);
+                    requests.clear();
+                }
+            }
+        }
+        //退出后才加入队列的请求不再写入
+        for (Request<T> request = queue.poll(); request != null; request = queue.poll()) {
+            request.future.completeExceptionally(shutDown());
+        }
+    }
+
+    private static IllegalStateException shutDown() {
+        return new IllegalStateException("group commit writer is shut down");
+    }
+
+    private void flush(List<Request<T>> requests) {
+        List<T> batch = new ArrayList<>();
+        for (Request<T> request : requests) {
+            batch.addAll(request.items);
+        }
+        try {
+            flusher.accept(batch);
+            for (Request<T> request : requests) {
+                request.future.complete(null);
+            }
+        } catch (Throwable e) {
+            if (requests.size() == 1) {
+                requests.get(0).future.completeExceptionally(e);
+                return;
+            }
+            //一个请求的数据有问题不影响同一批的其他请求
+            for (Request<T> request : requests) {
+                try {
+                    flusher.accept(request.items);
+                    request.future.complete(null);
+                } catch (Throwable single) {
+                    request.future.completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    private static class Request<T> {
+
+        private final List<T> items;
+
+        private final CompletableFuture<Void> future;
+
+        private Request(List<T> items, CompletableFuture<Void> future) {
+            this.items = items;
+            this.future = future;
+        }
+    }
+}
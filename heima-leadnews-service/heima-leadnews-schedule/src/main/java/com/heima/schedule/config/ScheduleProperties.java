@@ -0,0 +1,254 @@
+package com.heima.schedule.config;
+
+import com.heima.model.common.enums.TaskTypeEnum;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 延迟任务服务配置
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "schedule")
+public class ScheduleProperties {
+
+    /**
+     * 时间轮配置
+     */
+    private Wheel wheel = new Wheel();
+
+    /**
+     * 租约模式配置
+     */
+    private Lease lease = new Lease();
+
+    /**
+     * 队列分片配置
+     */
+    private Shard shard = new Shard();
+
+    /**
+     * 跨任务类型拉取的调度配置
+     */
+    private Fair fair = new Fair();
+
+    /**
+     * 添加任务的组提交配置
+     */
+    private Add add = new Add();
+
+    /**
+     * 长轮询订阅配置
+     */
+    private Subscribe subscribe = new Subscribe();
+
+    /**
+     * 队列存储配置
+     */
+    private Store store = new Store();
+
+    /**
+     * 任务日志归档配置
+     */
+    private Archive archive = new Archive();
+
+    /**
+     * 数据库任务同步到队列存储的配置
+     */
+    private Reload reload = new Reload();
+
+    @Getter
+    @Setter
+    public static class Wheel {
+
+        /**
+         * 是否开启时间轮派发，关闭后只依赖每分钟一次的refresh
+         */
+        private boolean enabled = true;
+
+        /**
+         * 第一层时间轮每格的时长，决定派发精度
+         */
+        private long tickMs = 10;
+
+        /**
+         * 每层时间轮的格数
+         */
+        private int wheelSize = 64;
+
+        /**
+         * 内存中持有未来多少分钟内的任务，与future_的zset范围一致
+         */
+        private int windowMinutes = 5;
+
+        /**
+         * 执行到期任务的线程数
+         */
+        private int workerThreads = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Lease {
+
+        /**
+         * 拉取后多少秒内没有确认，任务重新放回topic_
+         */
+        private int timeoutSeconds = 60;
+
+        /**
+         * 确认结果合并写入数据库时每批最多的任务数量
+         */
+        private int ackBatchSize = 500;
+
+        /**
+         * 确认结果最多等待多少毫秒后写入数据库
+         */
+        private long ackLingerMs = 5;
+    }
+
+    @Getter
+    @Setter
+    public static class Subscribe {
+
+        /**
+         * 订阅请求最长挂起时间，消费者的读超时需要大于这个值
+         */
+        private long maxWaitMs = 30000;
+    }
+
+    @Getter
+    @Setter
+    public static class Add {
+
+        /**
+         * 合并写入数据库时每批最多的任务数量
+         */
+        private int batchSize = 500;
+
+        /**
+         * 第一个任务最多等待多少毫秒后写入数据库
+         */
+        private long lingerMs = 2;
+    }
+
+    @Getter
+    @Setter
+    public static class Shard {
+
+        /**
+         * 每个逻辑队列拆分的分片数量
+         * 修改后reloadData会清空redis中的队列，从数据库按新的分片重新同步
+         */
+        private int count = 1;
+
+        /**
+         * 并行刷新分片的线程数
+         */
+        private int refreshThreads = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Store {
+
+        /**
+         * redis:任务队列保存在redis，多实例共享  memory:保存在进程内存，只适用于单实例部署和测试
+         */
+        private String type = "redis";
+
+        /**
+         * 内存存储的日志文件路径，为空时不写日志，重启后从数据库重新同步
+         */
+        private String journalPath = "";
+
+        /**
+         * 日志文件每次映射的大小
+         */
+        private int journalRegionMb = 64;
+
+        /**
+         * 日志文件超过这个大小后压缩，只保留未完成的任务
+         */
+        private int journalCompactMb = 256;
+
+        /**
+         * 任务数据的编码  binary:TaskCodec  json:旧版本的json，所有实例升级之前使用
+         * 拉取时两种编码都可以解码
+         */
+        private String codec = CODEC_BINARY;
+
+        public static final String CODEC_BINARY = "binary";
+
+        public static final String CODEC_JSON = "json";
+    }
+
+    @Getter
+    @Setter
+    public static class Fair {
+
+        /**
+         * WEIGHTED:按权重平滑加权轮询  STRICT:按权重从高到低，高权重队列拉空后才拉取低权重队列
+         */
+        private Mode mode = Mode.WEIGHTED;
+
+        /**
+         * 各任务类型的权重  key:TaskTypeEnum的名称，没有配置的权重为1
+         */
+        private Map<String, Integer> weights = new HashMap<>();
+
+        public int weightOf(TaskTypeEnum taskTypeEnum) {
+            return Math.max(1, weights.getOrDefault(taskTypeEnum.name(), 1));
+        }
+
+        public enum Mode {
+            WEIGHTED, STRICT
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Archive {
+
+        /**
+         * 是否定时归档
+         */
+        private boolean enabled = true;
+
+        /**
+         * 已执行和已取消的日志在热表中保留的天数，按执行时间计算
+         */
+        private int retainDays = 30;
+
+        /**
+         * 每批移动的日志数量，一批一个事务
+         */
+        private int batchSize = 1000;
+
+        /**
+         * 每次归档最多执行的批数，剩下的下次继续
+         */
+        private int maxBatches = 50;
+
+        /**
+         * 两批之间的间隔，减少对在线请求的影响
+         */
+        private long pauseMs = 200;
+    }
+
+    @Getter
+    @Setter
+    public static class Reload {
+
+        /**
+         * 定期从头核对一次的间隔，补回写入失败或者在redis中丢失的任务
+         */
+        private int reconcileMinutes = 60;
+    }
+}
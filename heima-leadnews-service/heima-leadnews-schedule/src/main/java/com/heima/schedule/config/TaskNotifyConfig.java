@@ -0,0 +1,37 @@
+package com.heima.schedule.config;
+
+import com.heima.common.constants.ScheduleConstants;
+import com.heima.schedule.notify.TaskReadyNotifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 订阅任务就绪通知
+ * 只有redis存储需要，内存存储在进程内直接通知
+ */
+@Configuration
+public class TaskNotifyConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "schedule.store", name = "type", havingValue = "redis", matchIfMissing = true)
+    public RedisMessageListenerContainer taskReadyListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                    TaskReadyNotifier taskReadyNotifier) {
+        //通知处理中会拉取任务，用固定的线程池处理，避免每条消息创建一个线程
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setThreadNamePrefix("task-ready-");
+        executor.initialize();
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setTaskExecutor(executor);
+        container.addMessageListener(taskReadyNotifier, new ChannelTopic(ScheduleConstants.READY_CHANNEL));
+        return container;
+    }
+}
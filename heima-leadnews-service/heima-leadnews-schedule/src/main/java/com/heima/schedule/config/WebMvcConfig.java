@@ -0,0 +1,22 @@
+package com.heima.schedule.config;
+
+import com.heima.common.protostuff.ProtostuffHttpMessageConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    /**
+     * 支持application/x-protostuff的请求和响应，放在最后，默认仍然使用json
+     *
+     * @param converters
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new ProtostuffHttpMessageConverter());
+    }
+}
@@ -0,0 +1,145 @@
+package com.heima.schedule.dispatch;
+
+import com.heima.schedule.config.ScheduleProperties;
+import com.heima.schedule.shard.TaskShardRouter;
+import com.heima.schedule.store.StoredTask;
+import com.heima.schedule.store.TaskQueueStore;
+import com.heima.schedule.timer.TimerTaskEntry;
+import com.heima.schedule.timer.WheelTimer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于时间轮的延迟任务派发引擎
+ * 在内存中持有未来N分钟内到期的任务，到期时立即把任务从future移动到ready
+ * 队列存储仍然是任务的持久化存储，多个实例同时持有同一个任务时，由存储的原子移动保证只派发一次
+ */
+@Component
+@Slf4j
+public class TaskDispatchEngine {
+
+    @Autowired
+    private TaskQueueStore taskQueueStore;
+
+    @Autowired
+    private ScheduleProperties scheduleProperties;
+
+    @Autowired
+    private TaskShardRouter taskShardRouter;
+
+    private WheelTimer wheelTimer;
+
+    /**
+     * 已经放入时间轮的任务  key:任务id
+     */
+    private final Map<String, TimerTaskEntry> scheduledTasks = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        ScheduleProperties.Wheel wheel = scheduleProperties.getWheel();
+        if (wheel.isEnabled()) {
+            wheelTimer = new WheelTimer("task-dispatch", wheel.getTickMs(), wheel.getWheelSize(), wheel.getWorkerThreads());
+            log.info("时间轮派发引擎已启动 tickMs={} wheelSize={}", wheel.getTickMs(), wheel.getWheelSize());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (wheelTimer != null) {
+            wheelTimer.shutdown();
+        }
+    }
+
+    /**
+     * 把future中的任务放入时间轮
+     *
+     * @param key         队列key(不含前缀)
+     * @param taskId
+     * @param executeTime 执行时间
+     */
+    public void schedule(String key, String taskId, long executeTime) {
+        if (wheelTimer == null || executeTime > windowEnd()) {
+            //超出时间窗口的任务等待下次预加载
+            return;
+        }
+        scheduledTasks.computeIfAbsent(taskId, id -> wheelTimer.schedule(executeTime, () -> dispatch(key, id)));
+    }
+
+    /**
+     * 从时间轮中取消任务
+     *
+     * @param taskId
+     */
+    public void cancel(String taskId) {
+        TimerTaskEntry entry = scheduledTasks.remove(taskId);
+        if (entry != null) {
+            entry.cancel();
+        }
+    }
+
+    /**
+     * 任务到期，从future移动到ready
+     *
+     * @param key
+     * @param taskId
+     */
+    private void dispatch(String key, String taskId) {
+        scheduledTasks.remove(taskId);
+        try {
+            if (taskQueueStore.moveToReady(key, taskId)) {
+                //通知等待中的订阅请求
+                taskQueueStore.publishReady(taskShardRouter.logicalKey(key));
+            }
+        } catch (Exception e) {
+            //派发失败的任务仍然在future中，由refresh兜底
+            log.error("时间轮派发任务异常 key={}", key, e);
+        }
+    }
+
+    /**
+     * 定时把时间窗口内的任务预加载到时间轮
+     * 覆盖reloadData同步进来的任务以及其他实例添加的任务
+     */
+    @Scheduled(fixedDelay = 30 * 1000, initialDelay = 10 * 1000)
+    public void preload() {
+        if (wheelTimer == null) {
+            return;
+        }
+        long windowEnd = windowEnd();
+        int count = 0;
+        for (StoredTask task : taskQueueStore.futureBefore(windowEnd)) {
+            if (!scheduledTasks.containsKey(task.getTaskId())) {
+                schedule(task.getKey(), task.getTaskId(), task.getExecuteTime());
+                count++;
+            }
+        }
+        if (count > 0) {
+            log.info("时间轮预加载任务{}个，等待中任务{}个", count, wheelTimer.size());
+        }
+    }
+
+    /**
+     * 时间窗口的结束时间
+     *
+     * @return
+     */
+    private long windowEnd() {
+        return System.currentTimeMillis() + scheduleProperties.getWheel().getWindowMinutes() * 60 * 1000L;
+    }
+
+    /**
+     * 时间轮中等待到期的任务数量
+     *
+     * @return
+     */
+    public int size() {
+        return wheelTimer == null ? 0 : wheelTimer.size();
+    }
+}
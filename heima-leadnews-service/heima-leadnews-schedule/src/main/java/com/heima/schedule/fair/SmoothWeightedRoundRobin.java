@@ -0,0 +1,51 @@
+package com.heima.schedule.fair;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 平滑加权轮询
+ * 每次选择时所有候选的当前权重加上各自的权重，选出当前权重最大的一个，再减去候选权重之和
+ * 任意连续的一轮(权重之和次)选择中，每个候选被选中的次数等于它的权重，且不会连续集中选择同一个候选
+ * 当前权重跨调用保留，多次小批量拉取累计起来仍然按权重分配
+ *
+ * @param <K> 候选的类型
+ */
+public class SmoothWeightedRoundRobin<K> {
+
+    private final Map<K, Long> currentWeights = new HashMap<>();
+
+    /**
+     * 把slots个名额按权重分配给候选
+     *
+     * @param weights 候选及其权重，权重小于1按1处理
+     * @param slots   名额数量
+     * @return 每个候选分到的名额，没有分到的不包含在内
+     */
+    public synchronized Map<K, Integer> allocate(Map<K, Integer> weights, int slots) {
+        Map<K, Integer> allocation = new LinkedHashMap<>();
+        if (weights.isEmpty()) {
+            return allocation;
+        }
+        long total = 0;
+        for (Integer weight : weights.values()) {
+            total += Math.max(1, weight);
+        }
+        for (int i = 0; i < slots; i++) {
+            K selected = null;
+            long selectedWeight = Long.MIN_VALUE;
+            for (Map.Entry<K, Integer> entry : weights.entrySet()) {
+                long current = currentWeights.getOrDefault(entry.getKey(), 0L) + Math.max(1, entry.getValue());
+                currentWeights.put(entry.getKey(), current);
+                if (current > selectedWeight) {
+                    selected = entry.getKey();
+                    selectedWeight = current;
+                }
+            }
+            currentWeights.put(selected, selectedWeight - total);
+            allocation.merge(selected, 1, Integer::sum);
+        }
+        return allocation;
+    }
+}
@@ -3,9 +3,16 @@ package com.heima.schedule.feign;
 import com.heima.apis.schedule.IScheduleClient;
 import com.heima.model.common.dtos.ResponseResult;
 import com.heima.model.schedule.dtos.Task;
+import com.heima.schedule.metrics.TaskMetrics;
+import com.heima.schedule.notify.TaskReadyNotifier;
+import com.heima.schedule.service.TaskLogService;
 import com.heima.schedule.service.TaskService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Date;
+import java.util.List;
 
 @RestController
 public class ScheduleClient implements IScheduleClient {
@@ -13,6 +20,15 @@ public class ScheduleClient implements IScheduleClient {
     @Autowired
     private TaskService taskService;
 
+    @Autowired
+    private TaskReadyNotifier taskReadyNotifier;
+
+    @Autowired
+    private TaskMetrics taskMetrics;
+
+    @Autowired
+    private TaskLogService taskLogService;
+
     /**
      * 添加任务
      *
@@ -25,6 +41,18 @@ public class ScheduleClient implements IScheduleClient {
         return ResponseResult.okResult(taskService.addTask(task));
     }
 
+    /**
+     * 批量添加任务
+     *
+     * @param tasks 任务对象
+     * @return 任务id，与tasks顺序一致
+     */
+    @PostMapping("/api/v1/task/add/batch")
+    @Override
+    public ResponseResult addTasks(@RequestBody List<Task> tasks) {
+        return ResponseResult.okResult(taskService.addTasks(tasks));
+    }
+
     /**
      * 取消任务
      *
@@ -49,4 +77,115 @@ public class ScheduleClient implements IScheduleClient {
     public ResponseResult poll(@PathVariable("type") int type, @PathVariable("priority") int priority) {
         return ResponseResult.okResult(taskService.poll(type, priority));
     }
+
+    /**
+     * 按照类型和优先级批量拉取任务
+     *
+     * @param type
+     * @param priority
+     * @param maxCount 最多拉取的数量
+     * @return
+     */
+    @GetMapping("/api/v1/task/{type}/{priority}/{maxCount}")
+    @Override
+    public ResponseResult poll(@PathVariable("type") int type, @PathVariable("priority") int priority, @PathVariable("maxCount") int maxCount) {
+        return ResponseResult.okResult(taskService.poll(type, priority, maxCount));
+    }
+
+    /**
+     * 跨任务类型批量拉取任务，按配置的权重在各类型的队列之间分配
+     *
+     * @param types    任务类型
+     * @param maxCount 最多拉取的数量
+     * @return
+     */
+    @GetMapping("/api/v1/task/any/{maxCount}")
+    @Override
+    public ResponseResult pollAny(@RequestParam("types") List<Integer> types, @PathVariable("maxCount") int maxCount) {
+        return ResponseResult.okResult(taskService.pollAny(types, maxCount));
+    }
+
+    /**
+     * 租约模式批量拉取任务，执行完成后需要调用ack确认
+     *
+     * @param type
+     * @param priority
+     * @param maxCount 最多拉取的数量
+     * @return
+     */
+    @GetMapping("/api/v1/task/lease/{type}/{priority}/{maxCount}")
+    @Override
+    public ResponseResult lease(@PathVariable("type") int type, @PathVariable("priority") int priority, @PathVariable("maxCount") int maxCount) {
+        return ResponseResult.okResult(taskService.lease(type, priority, maxCount));
+    }
+
+    /**
+     * 批量确认租约模式拉取的任务
+     *
+     * @param type
+     * @param priority
+     * @param taskIds  任务id
+     * @return 确认成功的数量
+     */
+    @PostMapping("/api/v1/task/ack/{type}/{priority}")
+    @Override
+    public ResponseResult ack(@PathVariable("type") int type, @PathVariable("priority") int priority, @RequestBody List<Long> taskIds) {
+        return ResponseResult.okResult(taskService.ack(type, priority, taskIds));
+    }
+
+    /**
+     * 长轮询订阅任务，租约模式返回，执行完成后需要调用ack确认
+     * 返回DeferredResult挂起请求，不在IScheduleClient中声明，对应的feign接口为ITaskSubscribeClient
+     *
+     * @param type
+     * @param priority
+     * @param maxCount 最多拉取的数量
+     * @param waitMs   没有任务时最长等待时间
+     * @return
+     */
+    @GetMapping("/api/v1/task/subscribe/{type}/{priority}/{maxCount}")
+    public DeferredResult<ResponseResult> subscribe(@PathVariable("type") int type, @PathVariable("priority") int priority,
+                                                    @PathVariable("maxCount") int maxCount, @RequestParam("waitMs") long waitMs) {
+        return taskReadyNotifier.subscribe(type, priority, maxCount, waitMs);
+    }
+
+    /**
+     * 队列数量、各任务类型的添加/取消/拉取数量、派发延迟以及刷新和同步的耗时
+     * 只用于运维查看，不在IScheduleClient中声明
+     *
+     * @return
+     */
+    @GetMapping("/api/v1/task/stats")
+    public ResponseResult stats() {
+        return ResponseResult.okResult(taskMetrics.snapshot());
+    }
+
+    /**
+     * 按任务id查询任务日志，包含已归档的日志
+     * 只用于运维查看，不在IScheduleClient中声明
+     *
+     * @param taskId
+     * @return
+     */
+    @GetMapping("/api/v1/task/log/{taskId}")
+    public ResponseResult getLog(@PathVariable("taskId") long taskId) {
+        return ResponseResult.okResult(taskLogService.getLog(taskId));
+    }
+
+    /**
+     * 按执行时间范围查询任务日志，包含已归档的日志
+     * 只用于运维查看，不在IScheduleClient中声明
+     *
+     * @param from   开始时间(毫秒，包含)
+     * @param to     结束时间(毫秒，不包含)
+     * @param status 0=SCHEDULED 1=EXECUTED 2=CANCELLED，不传时不限
+     * @param size   最多返回的数量
+     * @return
+     */
+    @GetMapping("/api/v1/task/log")
+    public ResponseResult listLogs(@RequestParam("from") long from, @RequestParam("to") long to,
+                                   @RequestParam(value = "status", required = false) Integer status,
+                                   @RequestParam(value = "size", defaultValue = "100") int size) {
+        return ResponseResult.okResult(taskLogService.listLogs(new Date(from), new Date(to), status, size));
+    }
 }
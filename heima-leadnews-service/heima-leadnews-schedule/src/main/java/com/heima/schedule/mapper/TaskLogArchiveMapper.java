@@ -0,0 +1,81 @@
+package com.heima.schedule.mapper;
+
+import com.heima.model.schedule.pojos.TaskinfoLogs;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 任务日志归档
+ * 归档表按执行时间的月份命名：taskinfo_logs_yyyyMM，结构与taskinfo_logs相同
+ * table参数直接拼入sql，只能传入taskinfo_logs或者校验过的归档表名
+ */
+@Mapper
+public interface TaskLogArchiveMapper {
+
+    /**
+     * 查询可以归档的日志，只返回task_id和execute_time
+     * 热表需要(status, execute_time)索引
+     *
+     * @param before 执行时间早于before
+     * @param limit
+     * @return
+     */
+    public List<TaskinfoLogs> selectArchivable(@Param("before") Date before, @Param("limit") int limit);
+
+    /**
+     * 创建归档表
+     *
+     * @param table
+     * @return
+     */
+    public int createArchiveTable(@Param("table") String table);
+
+    /**
+     * 把日志复制到归档表，已经存在的忽略
+     *
+     * @param table
+     * @param taskIds
+     * @return
+     */
+    public int copyToArchive(@Param("table") String table, @Param("taskIds") List<Long> taskIds);
+
+    /**
+     * 从热表删除已归档的日志，只删除已执行和已取消的
+     *
+     * @param taskIds
+     * @return
+     */
+    public int deleteArchived(@Param("taskIds") List<Long> taskIds);
+
+    /**
+     * 当前库中所有的归档表
+     *
+     * @return
+     */
+    public List<String> listArchiveTables();
+
+    /**
+     * 按任务id查询
+     *
+     * @param table
+     * @param taskId
+     * @return
+     */
+    public TaskinfoLogs selectFromTable(@Param("table") String table, @Param("taskId") long taskId);
+
+    /**
+     * 按执行时间范围查询，按执行时间排序
+     *
+     * @param table
+     * @param from
+     * @param to
+     * @param status 为null时不限
+     * @param limit
+     * @return
+     */
+    public List<TaskinfoLogs> selectRangeFromTable(@Param("table") String table, @Param("from") Date from, @Param("to") Date to,
+                                                   @Param("status") Integer status, @Param("limit") int limit);
+}
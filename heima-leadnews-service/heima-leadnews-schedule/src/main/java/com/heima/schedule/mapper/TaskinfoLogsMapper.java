@@ -3,6 +3,9 @@ package com.heima.schedule.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.heima.model.schedule.pojos.TaskinfoLogs;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -14,4 +17,18 @@ import org.apache.ibatis.annotations.Mapper;
 @Mapper
 public interface TaskinfoLogsMapper extends BaseMapper<TaskinfoLogs> {
 
+    /**
+     * 批量修改任务日志状态
+     * @param taskIds
+     * @param status
+     * @return
+     */
+    public int updateStatusBatch(@Param("taskIds") List<Long> taskIds, @Param("status") int status);
+
+    /**
+     * 批量插入任务日志，一条多行insert
+     * @param logs
+     * @return
+     */
+    public int insertBatch(@Param("logs") List<TaskinfoLogs> logs);
 }
@@ -5,6 +5,7 @@ import com.heima.model.schedule.pojos.Taskinfo;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.util.Date;
 import java.util.List;
@@ -19,5 +20,20 @@ import java.util.List;
 @Mapper
 public interface TaskinfoMapper extends BaseMapper<Taskinfo> {
 
-    public List<Taskinfo> queryFutureTime(@Param("taskType")int type, @Param("priority")int priority, @Param("future")Date future);
+    /**
+     * 按(执行时间,任务id)的顺序流式查询水位线之后、截止时间之前的任务
+     *
+     * @param afterTime 水位线的执行时间
+     * @param afterId   水位线的任务id
+     * @param future    截止时间(不包含)
+     * @return
+     */
+    public Cursor<Taskinfo> queryFutureTime(@Param("afterTime")Date afterTime, @Param("afterId")long afterId, @Param("future")Date future);
+
+    /**
+     * 批量插入任务，一条多行insert，任务id需要预先生成
+     * @param taskinfos
+     * @return
+     */
+    public int insertBatch(@Param("taskinfos") List<Taskinfo> taskinfos);
 }
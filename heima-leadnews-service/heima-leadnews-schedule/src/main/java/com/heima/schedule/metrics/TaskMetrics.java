@@ -0,0 +1,256 @@
+package com.heima.schedule.metrics;
+
+import com.heima.model.common.enums.TaskTypeEnum;
+import com.heima.model.schedule.dtos.Task;
+import com.heima.schedule.dispatch.TaskDispatchEngine;
+import com.heima.schedule.shard.TaskShardRouter;
+import com.heima.schedule.store.QueueDepth;
+import com.heima.schedule.store.TaskQueueStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 延迟任务服务的指标，通过actuator的/actuator/metrics和/api/v1/task/stats查看
+ * schedule.queue.depth:各逻辑队列的任务数量，按state(topic/future/inflight)区分，定时采样
+ * schedule.task.added/cancelled/polled:按任务类型统计的添加、取消、拉取数量
+ * schedule.dispatch.lag:任务被拉取时距离执行时间的延迟
+ * schedule.refresh.duration/schedule.reload.duration:定时刷新和数据库同步的耗时
+ */
+@Component
+@Slf4j
+public class TaskMetrics {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TaskQueueStore taskQueueStore;
+
+    @Autowired
+    private TaskDispatchEngine taskDispatchEngine;
+
+    @Autowired
+    private TaskShardRouter taskShardRouter;
+
+    private Timer refreshTimer;
+
+    private Timer reloadTimer;
+
+    private Counter refreshMoved;
+
+    private MultiGauge depthGauge;
+
+    /**
+     * 最近一次采样的队列数量  key:type_priority
+     */
+    private volatile Map<String, QueueDepth> depths = Collections.emptyMap();
+
+    private volatile long sampledAt;
+
+    /**
+     * 没有在TaskTypeEnum中定义的任务类型
+     */
+    private static final String OTHER_TYPE = "OTHER";
+
+    @PostConstruct
+    public void init() {
+        refreshTimer = Timer.builder("schedule.refresh.duration")
+                .description("未来数据定时刷新的耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        reloadTimer = Timer.builder("schedule.reload.duration")
+                .description("数据库任务同步的耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        refreshMoved = Counter.builder("schedule.refresh.moved")
+                .description("定时刷新从future移动到topic的任务数量")
+                .register(meterRegistry);
+        depthGauge = MultiGauge.builder("schedule.queue.depth")
+                .description("队列中的任务数量")
+                .register(meterRegistry);
+        Gauge.builder("schedule.wheel.size", taskDispatchEngine, TaskDispatchEngine::size)
+                .description("时间轮中等待到期的任务数量")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 定时采样各队列的任务数量
+     */
+    @Scheduled(fixedDelay = 10 * 1000, initialDelay = 10 * 1000)
+    public void sampleDepth() {
+        Map<String, QueueDepth> sampled = new TreeMap<>();
+        try {
+            //分片合并到逻辑队列，避免分片数量增加指标的数量
+            for (Map.Entry<String, QueueDepth> entry : taskQueueStore.depths().entrySet()) {
+                sampled.computeIfAbsent(taskShardRouter.logicalKey(entry.getKey()), k -> new QueueDepth()).add(entry.getValue());
+            }
+        } catch (Exception e) {
+            log.error("队列数量采样异常", e);
+            return;
+        }
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        for (Map.Entry<String, QueueDepth> entry : sampled.entrySet()) {
+            QueueDepth depth = entry.getValue();
+            rows.add(MultiGauge.Row.of(Tags.of("queue", entry.getKey(), "state", "topic"), depth.getReady()));
+            rows.add(MultiGauge.Row.of(Tags.of("queue", entry.getKey(), "state", "future"), depth.getFuture()));
+            rows.add(MultiGauge.Row.of(Tags.of("queue", entry.getKey(), "state", "inflight"), depth.getInflight()));
+        }
+        depthGauge.register(rows, true);
+        depths = sampled;
+        sampledAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 任务已经添加
+     *
+     * @param tasks
+     */
+    public void added(Collection<Task> tasks) {
+        for (Task task : tasks) {
+            counter("schedule.task.added", task).increment();
+        }
+    }
+
+    /**
+     * 任务已经取消
+     *
+     * @param task
+     */
+    public void cancelled(Task task) {
+        counter("schedule.task.cancelled", task).increment();
+    }
+
+    /**
+     * 任务已经拉取，记录拉取数量和派发延迟
+     *
+     * @param tasks
+     */
+    public void polled(Collection<Task> tasks) {
+        long now = System.currentTimeMillis();
+        for (Task task : tasks) {
+            counter("schedule.task.polled", task).increment();
+            lagTimer(typeOf(task)).record(Math.max(0, now - task.getExecuteTime()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 记录一次定时刷新
+     *
+     * @param nanos 耗时
+     * @param moved 移动的任务数量
+     */
+    public void refreshed(long nanos, long moved) {
+        refreshTimer.record(nanos, TimeUnit.NANOSECONDS);
+        refreshMoved.increment(moved);
+    }
+
+    /**
+     * 记录一次数据库同步
+     *
+     * @param nanos 耗时
+     */
+    public void reloaded(long nanos) {
+        reloadTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 汇总当前的指标
+     *
+     * @return
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sampledAt", sampledAt);
+        stats.put("queues", depths);
+        stats.put("wheel", taskDispatchEngine.size());
+
+        Map<String, Object> tasks = new LinkedHashMap<>();
+        List<String> types = new ArrayList<>();
+        for (TaskTypeEnum taskTypeEnum : TaskTypeEnum.values()) {
+            types.add(taskTypeEnum.name());
+        }
+        types.add(OTHER_TYPE);
+        for (String type : types) {
+            Map<String, Object> task = new LinkedHashMap<>();
+            task.put("added", count("schedule.task.added", type));
+            task.put("cancelled", count("schedule.task.cancelled", type));
+            task.put("polled", count("schedule.task.polled", type));
+            task.put("lag", timerStats(lagTimer(type)));
+            tasks.put(type, task);
+        }
+        stats.put("tasks", tasks);
+
+        Map<String, Object> refresh = timerStats(refreshTimer);
+        refresh.put("moved", (long) refreshMoved.count());
+        stats.put("refresh", refresh);
+        stats.put("reload", timerStats(reloadTimer));
+        return stats;
+    }
+
+    private Counter counter(String name, Task task) {
+        return meterRegistry.counter(name, "type", typeOf(task));
+    }
+
+    private long count(String name, String type) {
+        Counter counter = meterRegistry.find(name).tag("type", type).counter();
+        return counter == null ? 0 : (long) counter.count();
+    }
+
+    private Timer lagTimer(String type) {
+        return Timer.builder("schedule.dispatch.lag")
+                .description("任务拉取时间与执行时间的差值")
+                .tag("type", type)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Map<String, Object> timerStats(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", snapshot.count());
+        stats.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+        stats.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            stats.put("p" + Math.round(percentile.percentile() * 100) + "Ms", percentile.value(TimeUnit.MILLISECONDS));
+        }
+        return stats;
+    }
+
+    /**
+     * 任务类型对应的TaskTypeEnum名称，作为指标的type标签
+     *
+     * @param task
+     * @return
+     */
+    private String typeOf(Task task) {
+        for (TaskTypeEnum taskTypeEnum : TaskTypeEnum.values()) {
+            if (Objects.equals(taskTypeEnum.getTaskType(), task.getTaskType())
+                    && Objects.equals(taskTypeEnum.getPriority(), task.getPriority())) {
+                return taskTypeEnum.name();
+            }
+        }
+        return OTHER_TYPE;
+    }
+}
@@ -0,0 +1,17 @@
+package com.heima.schedule.notify;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 进程内的任务就绪通知，内存队列存储使用
+ */
+@Getter
+@AllArgsConstructor
+public class TaskReadyEvent {
+
+    /**
+     * type_priority，*表示所有队列
+     */
+    private final String key;
+}
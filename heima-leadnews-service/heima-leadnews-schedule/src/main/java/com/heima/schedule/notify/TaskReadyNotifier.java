@@ -0,0 +1,171 @@
+package com.heima.schedule.notify;
+
+import com.heima.model.common.dtos.ResponseResult;
+import com.heima.model.schedule.dtos.Task;
+import com.heima.schedule.config.ScheduleProperties;
+import com.heima.schedule.service.TaskService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 长轮询订阅
+ * 队列中没有任务时挂起请求(不占用线程)，收到redis的任务就绪通知后用租约模式拉取任务返回给等待的消费者
+ * 任务就绪通知由添加任务、时间轮派发、定时刷新、租约到期重新入队时发布
+ * redis存储通过redis发布，所有实例都能收到；内存存储通过进程内的TaskReadyEvent发布
+ */
+@Component
+@Slf4j
+public class TaskReadyNotifier implements MessageListener {
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private ScheduleProperties scheduleProperties;
+
+    /**
+     * 等待中的请求  key:type_priority
+     */
+    private final Map<String, WaitQueue> waitQueues = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅任务，有任务时立即返回，否则最多等待waitMs
+     *
+     * @param type
+     * @param priority
+     * @param maxCount 最多返回的任务数量
+     * @param waitMs   最长等待时间，超时返回空列表
+     * @return
+     */
+    public DeferredResult<ResponseResult> subscribe(int type, int priority, int maxCount, long waitMs) {
+        long timeout = Math.max(0, Math.min(waitMs, scheduleProperties.getSubscribe().getMaxWaitMs()));
+        DeferredResult<ResponseResult> result = new DeferredResult<>(timeout, ResponseResult.okResult(Collections.emptyList()));
+
+        String key = type + "_" + priority;
+        Waiter waiter = new Waiter(type, priority, maxCount, result);
+        WaitQueue queue = waitQueues.computeIfAbsent(key, k -> new WaitQueue());
+        result.onCompletion(() -> queue.waiters.remove(waiter));
+        //先登记再拉取，登记之前发布的通知不会丢失
+        queue.waiters.offer(waiter);
+        wake(queue);
+        if (timeout == 0 && !result.isSetOrExpired()) {
+            result.setResult(ResponseResult.okResult(Collections.emptyList()));
+        }
+        return result;
+    }
+
+    /**
+     * 收到任务就绪通知
+     *
+     * @param message type_priority，*表示所有队列
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        ready(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 收到进程内的任务就绪通知
+     *
+     * @param event
+     */
+    @EventListener
+    public void onTaskReady(TaskReadyEvent event) {
+        ready(event.getKey());
+    }
+
+    private void ready(String key) {
+        if ("*".equals(key)) {
+            for (WaitQueue queue : waitQueues.values()) {
+                wake(queue);
+            }
+        } else {
+            WaitQueue queue = waitQueues.get(key);
+            if (queue != null) {
+                wake(queue);
+            }
+        }
+    }
+
+    /**
+     * 按登记顺序给等待的请求拉取任务，直到队列中没有任务
+     *
+     * @param queue
+     */
+    private void wake(WaitQueue queue) {
+        queue.signals.incrementAndGet();
+        while (true) {
+            long signal = queue.signals.get();
+            Waiter waiter = queue.waiters.poll();
+            if (waiter == null) {
+                return;
+            }
+            if (waiter.result.isSetOrExpired()) {
+                continue;
+            }
+            List<Task> tasks;
+            try {
+                tasks = taskService.lease(waiter.type, waiter.priority, waiter.maxCount);
+            } catch (Exception e) {
+                log.error("订阅拉取任务异常 type={} priority={}", waiter.type, waiter.priority, e);
+                queue.waiters.offerFirst(waiter);
+                return;
+            }
+            if (tasks.isEmpty()) {
+                //没有任务了，放回队首继续等待；拉取期间又收到了通知就再试一次
+                queue.waiters.offerFirst(waiter);
+                if (queue.signals.get() == signal) {
+                    return;
+                }
+                continue;
+            }
+            if (!waiter.result.setResult(ResponseResult.okResult(tasks))) {
+                //请求恰好超时，任务在租约到期后重新入队
+                log.warn("订阅请求已超时，{}个任务等待租约到期后重新投递", tasks.size());
+            }
+        }
+    }
+
+    private static class WaitQueue {
+
+        private final Deque<Waiter> waiters = new ConcurrentLinkedDeque<>();
+
+        /**
+         * 收到的通知次数，拉取期间有新通知时不能直接挂起
+         */
+        private final AtomicLong signals = new AtomicLong();
+    }
+
+    private static class Waiter {
+
+        private final int type;
+
+        private final int priority;
+
+        private final int maxCount;
+
+        private final DeferredResult<ResponseResult> result;
+
+        private Waiter(int type, int priority, int maxCount, DeferredResult<ResponseResult> result) {
+            this.type = type;
+            this.priority = priority;
+            this.maxCount = maxCount;
+            this.result = result;
+        }
+    }
+}
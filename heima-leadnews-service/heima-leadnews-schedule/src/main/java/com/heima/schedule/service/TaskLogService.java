@@ -0,0 +1,35 @@
+package com.heima.schedule.service;
+
+import com.heima.model.schedule.pojos.TaskinfoLogs;
+
+import java.util.Date;
+import java.util.List;
+
+public interface TaskLogService {
+
+    /**
+     * 把热表中超过保留时间的已执行和已取消日志按执行时间的月份移动到归档表
+     *
+     * @return 归档的数量
+     */
+    public long archive();
+
+    /**
+     * 按任务id查询日志，先查热表，再从新到旧查归档表
+     *
+     * @param taskId
+     * @return
+     */
+    public TaskinfoLogs getLog(long taskId);
+
+    /**
+     * 按执行时间范围查询日志，包含热表和范围内的归档表
+     *
+     * @param from   开始时间(包含)
+     * @param to     结束时间(不包含)
+     * @param status 为null时不限
+     * @param size   最多返回的数量
+     * @return 按执行时间排序
+     */
+    public List<TaskinfoLogs> listLogs(Date from, Date to, Integer status, int size);
+}
@@ -2,6 +2,9 @@ package com.heima.schedule.service;
 
 import com.heima.model.schedule.dtos.Task;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface TaskService {
 
     /**
@@ -11,6 +14,20 @@ public interface TaskService {
      */
     public long addTask(Task task) ;
 
+    /**
+     * 批量添加任务，和其他请求添加的任务合并写入数据库
+     * @param tasks  任务对象
+     * @return       任务id，与tasks顺序一致
+     */
+    public List<Long> addTasks(List<Task> tasks);
+
+    /**
+     * 异步添加任务
+     * @param task   任务对象
+     * @return       写入完成后返回任务id，写入失败时异常结束
+     */
+    public CompletableFuture<Long> addTaskAsync(Task task);
+
     /**
      * 取消任务
      * @param taskId        任务id
@@ -25,4 +42,39 @@ public interface TaskService {
      * @return
      */
     public Task poll(int type,int priority);
+
+    /**
+     * 按照类型和优先级批量拉取任务
+     * @param type
+     * @param priority
+     * @param maxCount  最多拉取的数量
+     * @return
+     */
+    public List<Task> poll(int type,int priority,int maxCount);
+
+    /**
+     * 跨任务类型批量拉取任务，按配置的权重在各类型的队列之间分配
+     * @param types     任务类型
+     * @param maxCount  最多拉取的数量
+     * @return
+     */
+    public List<Task> pollAny(List<Integer> types,int maxCount);
+
+    /**
+     * 租约模式批量拉取任务，任务在确认之前保留在redis中，超时未确认重新放回队列
+     * @param type
+     * @param priority
+     * @param maxCount  最多拉取的数量
+     * @return
+     */
+    public List<Task> lease(int type,int priority,int maxCount);
+
+    /**
+     * 确认租约模式拉取的任务已经执行完成
+     * @param type
+     * @param priority
+     * @param taskIds   任务id
+     * @return          确认成功的数量
+     */
+    public int ack(int type,int priority,List<Long> taskIds);
 }
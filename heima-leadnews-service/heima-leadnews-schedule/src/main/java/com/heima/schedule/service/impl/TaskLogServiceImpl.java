@@ -0,0 +1,204 @@
+package com.heima.schedule.service.impl;
+
+import com.heima.model.schedule.pojos.TaskinfoLogs;
+import com.heima.schedule.config.ScheduleProperties;
+import com.heima.schedule.mapper.TaskLogArchiveMapper;
+import com.heima.schedule.service.TaskLogService;
+import com.heima.schedule.store.TaskQueueStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 任务日志的生命周期
+ * 已执行和已取消的日志超过保留时间后按执行时间的月份移动到taskinfo_logs_yyyyMM，热表只保留近期和未完成的日志
+ * 每批先复制再删除，在一个事务中完成；建表是DDL，会隐式提交，放在事务之外
+ */
+@Service
+@Slf4j
+public class TaskLogServiceImpl implements TaskLogService {
+
+    private static final String HOT_TABLE = "taskinfo_logs";
+
+    private static final String ARCHIVE_TABLE_PREFIX = "taskinfo_logs_";
+
+    private static final Pattern ARCHIVE_TABLE = Pattern.compile("taskinfo_logs_\\d{6}");
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String ARCHIVE_LOCK = "TASK_LOG_ARCHIVE";
+
+    /**
+     * 查询接口单次最多返回的数量
+     */
+    private static final int MAX_QUERY_SIZE = 1000;
+
+    @Autowired
+    private TaskLogArchiveMapper taskLogArchiveMapper;
+
+    @Autowired
+    private TaskQueueStore taskQueueStore;
+
+    @Autowired
+    private ScheduleProperties scheduleProperties;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 已经创建过的归档表
+     */
+    private final Set<String> createdTables = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 定时归档，多个实例只有一个执行；每次最多maxBatches批，剩下的下次继续
+     *
+     * @return
+     */
+    @Override
+    @Scheduled(cron = "0 */10 * * * ?")
+    public long archive() {
+        ScheduleProperties.Archive archive = scheduleProperties.getArchive();
+        if (!archive.isEnabled()) {
+            return 0;
+        }
+        String token = taskQueueStore.tryLock(ARCHIVE_LOCK, 1000 * 60 * 10);
+        if (token == null) {
+            return 0;
+        }
+        long archived = 0;
+        try {
+            Date before = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(archive.getRetainDays()));
+            for (int i = 0; i < archive.getMaxBatches(); i++) {
+                int moved = archiveBatch(before, archive.getBatchSize());
+                archived += moved;
+                if (moved < archive.getBatchSize()) {
+                    break;
+                }
+                TimeUnit.MILLISECONDS.sleep(archive.getPauseMs());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("任务日志归档异常", e);
+        } finally {
+            taskQueueStore.unLock(ARCHIVE_LOCK, token);
+        }
+        if (archived > 0) {
+            log.info("任务日志已归档{}条", archived);
+        }
+        return archived;
+    }
+
+    /**
+     * 归档一批
+     *
+     * @param before
+     * @param batchSize
+     * @return 归档的数量
+     */
+    private int archiveBatch(Date before, int batchSize) {
+        List<TaskinfoLogs> logs = taskLogArchiveMapper.selectArchivable(before, batchSize);
+        if (logs.isEmpty()) {
+            return 0;
+        }
+        Map<String, List<Long>> byTable = new TreeMap<>();
+        List<Long> taskIds = new ArrayList<>(logs.size());
+        for (TaskinfoLogs taskinfoLogs : logs) {
+            byTable.computeIfAbsent(archiveTable(taskinfoLogs.getExecuteTime()), k -> new ArrayList<>()).add(taskinfoLogs.getTaskId());
+            taskIds.add(taskinfoLogs.getTaskId());
+        }
+        for (String table : byTable.keySet()) {
+            if (createdTables.add(table)) {
+                try {
+                    taskLogArchiveMapper.createArchiveTable(table);
+                } catch (RuntimeException e) {
+                    createdTables.remove(table);
+                    throw e;
+                }
+            }
+        }
+        Integer deleted = transactionTemplate.execute(status -> {
+            for (Map.Entry<String, List<Long>> entry : byTable.entrySet()) {
+                taskLogArchiveMapper.copyToArchive(entry.getKey(), entry.getValue());
+            }
+            return taskLogArchiveMapper.deleteArchived(taskIds);
+        });
+        return deleted == null ? 0 : deleted;
+    }
+
+    @Override
+    public TaskinfoLogs getLog(long taskId) {
+        TaskinfoLogs taskinfoLogs = taskLogArchiveMapper.selectFromTable(HOT_TABLE, taskId);
+        if (taskinfoLogs != null) {
+            return taskinfoLogs;
+        }
+        for (String table : archiveTables()) {
+            taskinfoLogs = taskLogArchiveMapper.selectFromTable(table, taskId);
+            if (taskinfoLogs != null) {
+                return taskinfoLogs;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<TaskinfoLogs> listLogs(Date from, Date to, Integer status, int size) {
+        int limit = Math.min(Math.max(size, 1), MAX_QUERY_SIZE);
+        List<TaskinfoLogs> logs = new ArrayList<>();
+        if (!from.before(to)) {
+            return logs;
+        }
+        //范围内的月份对应的归档表
+        String fromTable = archiveTable(from);
+        String toTable = archiveTable(new Date(to.getTime() - 1));
+        List<String> tables = new ArrayList<>();
+        tables.add(HOT_TABLE);
+        for (String table : archiveTables()) {
+            if (table.compareTo(fromTable) >= 0 && table.compareTo(toTable) <= 0) {
+                tables.add(table);
+            }
+        }
+        for (String table : tables) {
+            logs.addAll(taskLogArchiveMapper.selectRangeFromTable(table, from, to, status, limit));
+        }
+        //每张表各取limit条，合并后再取前limit条
+        return logs.stream()
+                .sorted(Comparator.comparing(TaskinfoLogs::getExecuteTime).thenComparing(TaskinfoLogs::getTaskId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 库中的归档表，按月份从新到旧
+     *
+     * @return
+     */
+    private List<String> archiveTables() {
+        return taskLogArchiveMapper.listArchiveTables().stream()
+                .map(String::toLowerCase)
+                .filter(table -> ARCHIVE_TABLE.matcher(table).matches())
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+    }
+
+    private String archiveTable(Date executeTime) {
+        return ARCHIVE_TABLE_PREFIX + MONTH.format(executeTime.toInstant().atZone(ZoneId.systemDefault()));
+    }
+}
@@ -1,28 +1,57 @@
 package com.heima.schedule.service.impl;
 
 import com.alibaba.fastjson.JSON;
-import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.heima.common.constants.ScheduleConstants;
-import com.heima.common.redis.CacheService;
+import com.heima.model.common.enums.TaskTypeEnum;
 import com.heima.model.schedule.dtos.Task;
 import com.heima.model.schedule.pojos.Taskinfo;
 import com.heima.model.schedule.pojos.TaskinfoLogs;
+import com.heima.schedule.commit.GroupCommitWriter;
+import com.heima.schedule.config.ScheduleProperties;
+import com.heima.schedule.dispatch.TaskDispatchEngine;
+import com.heima.schedule.fair.SmoothWeightedRoundRobin;
 import com.heima.schedule.mapper.TaskinfoLogsMapper;
 import com.heima.schedule.mapper.TaskinfoMapper;
+import com.heima.schedule.metrics.TaskMetrics;
 import com.heima.schedule.service.TaskService;
+import com.heima.schedule.shard.TaskShardRouter;
+import com.heima.schedule.store.StoredTask;
+import com.heima.schedule.store.TaskQueueStore;
+import com.heima.utils.common.TaskCodec;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
 @Service
 @Transactional
@@ -30,7 +59,7 @@ import java.util.Set;
 public class TaskServiceImpl implements TaskService {
 
     @Autowired
-    private CacheService cacheService;
+    private TaskQueueStore taskQueueStore;
 
     @Autowired
     private TaskinfoMapper taskinfoMapper;
@@ -38,6 +67,101 @@ public class TaskServiceImpl implements TaskService {
     @Autowired
     private TaskinfoLogsMapper taskinfoLogsMapper;
 
+    @Autowired
+    private TaskDispatchEngine taskDispatchEngine;
+
+    @Autowired
+    private ScheduleProperties scheduleProperties;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private TaskShardRouter taskShardRouter;
+
+    @Autowired
+    private TaskMetrics taskMetrics;
+
+    /**
+     * 租约模式的确认结果合并写入数据库
+     */
+    private GroupCommitWriter<Long> ackWriter;
+
+    /**
+     * 添加的任务合并写入数据库
+     */
+    private GroupCommitWriter<TaskRow> addWriter;
+
+    /**
+     * 并行刷新分片
+     */
+    private ExecutorService refreshExecutor;
+
+    /**
+     * 跨任务类型拉取时按权重分配名额
+     */
+    private final SmoothWeightedRoundRobin<TaskTypeEnum> queueRoundRobin = new SmoothWeightedRoundRobin<>();
+
+    /**
+     * 拉取任务时的起始分片
+     */
+    private final AtomicInteger pollCursor = new AtomicInteger();
+
+    /**
+     * 单次最多拉取的任务数量
+     */
+    private final static int MAX_POLL_SIZE = 100;
+
+    /**
+     * 等待确认结果写入数据库的最长时间
+     */
+    private final static int ACK_TIMEOUT_SECONDS = 10;
+
+    /**
+     * 等待添加的任务写入数据库的最长时间
+     */
+    private final static int ADD_TIMEOUT_SECONDS = 10;
+
+    /**
+     * 同步数据库任务时每批写入队列存储的数量
+     */
+    private final static int RELOAD_BATCH_SIZE = 500;
+
+    /**
+     * 水位线中的字段 horizon:同步截止时间 executeTime/taskId:最后一个写入队列存储的任务
+     */
+    private final static String WATERMARK_HORIZON = "horizon";
+    private final static String WATERMARK_EXECUTE_TIME = "executeTime";
+    private final static String WATERMARK_TASK_ID = "taskId";
+
+    /**
+     * 水位线中记录分片数量的字段，分片数量变化时重新同步
+     */
+    private final static String WATERMARK_SHARDS = "shards";
+
+    /**
+     * 水位线中的字段 dirty:有任务在提交后写入队列失败  reconciled:上次从头核对的时间
+     */
+    private final static String WATERMARK_DIRTY = "dirty";
+    private final static String WATERMARK_RECONCILED = "reconciled";
+
+    @PostConstruct
+    public void start() {
+        ScheduleProperties.Lease lease = scheduleProperties.getLease();
+        ackWriter = new GroupCommitWriter<>("task-ack", lease.getAckBatchSize(), lease.getAckLingerMs(),
+                taskIds -> transactionTemplate.executeWithoutResult(status -> updateDbBatch(taskIds, ScheduleConstants.EXECUTED)));
+        ScheduleProperties.Add add = scheduleProperties.getAdd();
+        addWriter = new GroupCommitWriter<>("task-add", add.getBatchSize(), add.getLingerMs(), this::addTasksToDb);
+        refreshExecutor = Executors.newFixedThreadPool(scheduleProperties.getShard().getRefreshThreads());
+    }
+
+    @PreDestroy
+    public void stop() {
+        addWriter.shutdown();
+        ackWriter.shutdown();
+        refreshExecutor.shutdown();
+    }
+
     /**
      * 添加延迟任务
      *
@@ -45,78 +169,160 @@ public class TaskServiceImpl implements TaskService {
      * @return
      */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public long addTask(Task task) {
-        //1.添加任务到数据库中
-
-        boolean success = addTaskToDb(task);
+        return addTasks(Collections.singletonList(task)).get(0);
+    }
 
-        if (success) {
-            //2.添加任务到redis
-            addTaskToCache(task);
+    /**
+     * 批量添加延迟任务，等待所在批次写入完成
+     * 等待超时时结果不确定，所在批次之后仍可能写入成功；任务id已经回填到tasks中，
+     * 重试时使用同一个任务对象会因为主键冲突失败，不会重复添加
+     *
+     * @param tasks
+     * @return 任务id，与tasks顺序一致
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<Long> addTasks(List<Task> tasks) {
+        try {
+            submitTasks(tasks).get(ADD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("添加任务失败", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("添加任务超时，结果未知", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("添加任务被中断，结果未知", e);
         }
-
-
-        return task.getTaskId();
+        List<Long> taskIds = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            taskIds.add(task.getTaskId());
+        }
+        return taskIds;
     }
 
     /**
-     * 把任务添加到redis中
+     * 异步添加延迟任务，和其他线程添加的任务合并写入数据库
      *
      * @param task
+     * @return 写入完成后返回任务id，写入失败时异常结束
      */
-    private void addTaskToCache(Task task) {
-
-        String key = task.getTaskType() + "_" + task.getPriority();
-
-        //获取5分钟之后的时间  毫秒值
-        Calendar calendar = Calendar.getInstance();
-        calendar.add(Calendar.MINUTE, 5);
-        long nextScheduleTime = calendar.getTimeInMillis();
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<Long> addTaskAsync(Task task) {
+        return submitTasks(Collections.singletonList(task)).thenApply(v -> task.getTaskId());
+    }
 
-        //2.1 如果任务的执行时间小于等于当前时间，存入list(直接等待执行)
-        if (task.getExecuteTime() <= System.currentTimeMillis()) {
-            cacheService.lLeftPush(ScheduleConstants.TOPIC + key, JSON.toJSONString(task));
-        } else if (task.getExecuteTime() <= nextScheduleTime) {
-            //2.2 如果任务的执行时间大于当前时间 && 小于等于预设时间（未来5分钟） 存入zset中(key, value, score)
-            cacheService.zAdd(ScheduleConstants.FUTURE + key, JSON.toJSONString(task), task.getExecuteTime());
+    /**
+     * 校验任务并转换为数据库记录，预先生成任务id，再交给组提交写入器
+     * 有问题的任务在提交之前失败，不影响同一批中其他请求的任务
+     *
+     * @param tasks
+     * @return
+     */
+    private CompletableFuture<Void> submitTasks(List<Task> tasks) {
+        List<TaskRow> rows = new ArrayList<>(tasks.size());
+        try {
+            for (Task task : tasks) {
+                rows.add(toRow(task));
+            }
+        } catch (RuntimeException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
         }
+        return addWriter.submit(rows);
+    }
 
+    private TaskRow toRow(Task task) {
+        if (task == null || task.getTaskType() == null || task.getPriority() == null || task.getExecuteTime() <= 0) {
+            throw new IllegalArgumentException("任务缺少类型、优先级或执行时间 task=" + task);
+        }
+        if (task.getTaskId() == null) {
+            task.setTaskId(IdWorker.getId());
+        }
+        Taskinfo taskinfo = new Taskinfo();
+        BeanUtils.copyProperties(task, taskinfo);
+        taskinfo.setExecuteTime(new Date(task.getExecuteTime()));
+
+        TaskinfoLogs taskinfoLogs = new TaskinfoLogs();
+        BeanUtils.copyProperties(taskinfo, taskinfoLogs);
+        taskinfoLogs.setVersion(1);
+        taskinfoLogs.setStatus(ScheduleConstants.SCHEDULED);
+        return new TaskRow(task, taskinfo, taskinfoLogs);
+    }
 
+    /**
+     * 一批任务写入数据库，两条多行insert在同一个事务中
+     * 事务提交后再写入队列存储，保证reloadData要么能查到任务，要么任务已经在队列中
+     *
+     * @param rows
+     */
+    private void addTasksToDb(List<TaskRow> rows) {
+        List<Task> tasks = new ArrayList<>(rows.size());
+        List<Taskinfo> taskinfos = new ArrayList<>(rows.size());
+        List<TaskinfoLogs> logs = new ArrayList<>(rows.size());
+        for (TaskRow row : rows) {
+            tasks.add(row.task);
+            taskinfos.add(row.taskinfo);
+            logs.add(row.taskinfoLogs);
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            taskinfoMapper.insertBatch(taskinfos);
+            taskinfoLogsMapper.insertBatch(logs);
+        });
+        taskMetrics.added(tasks);
+
+        //数据库已经提交，水位线可能已经越过队列写入失败的任务，标记后由下次reloadData从头核对补回
+        long horizon = reloadHorizon();
+        boolean failed = false;
+        for (Task task : tasks) {
+            try {
+                addTaskToCache(task, horizon);
+            } catch (Exception e) {
+                failed = true;
+                log.error("任务写入队列异常 taskId={}", task.getTaskId(), e);
+            }
+        }
+        if (failed) {
+            try {
+                taskQueueStore.putWatermark(Collections.singletonMap(WATERMARK_DIRTY, "1"));
+            } catch (Exception e) {
+                //标记也失败时由定期核对补回
+                log.error("标记队列写入失败异常", e);
+            }
+        }
     }
 
     /**
-     * 添加任务到数据库中
+     * 把任务添加到队列存储中
      *
      * @param task
-     * @return
+     * @param horizon 同步截止时间
      */
-    private boolean addTaskToDb(Task task) {
+    private void addTaskToCache(Task task, long horizon) {
 
-        boolean flag = false;
+        //同步截止时间之后的任务只保存在数据库，由reloadData增量同步
+        if (task.getExecuteTime() >= horizon) {
+            return;
+        }
 
-        try {
-            //保存任务表
-            Taskinfo taskinfo = new Taskinfo();
-            BeanUtils.copyProperties(task, taskinfo);
-            taskinfo.setExecuteTime(new Date(task.getExecuteTime()));
-            taskinfoMapper.insert(taskinfo);
-
-            //设置taskID
-            task.setTaskId(taskinfo.getTaskId());
-
-            //保存任务日志数据
-            TaskinfoLogs taskinfoLogs = new TaskinfoLogs();
-            BeanUtils.copyProperties(taskinfo, taskinfoLogs);
-            taskinfoLogs.setVersion(1);
-            taskinfoLogs.setStatus(ScheduleConstants.SCHEDULED);
-            taskinfoLogsMapper.insert(taskinfoLogs);
+        String key = taskShardRouter.queueKey(task.getTaskType(), task.getPriority(), task.getTaskId());
+        String taskId = String.valueOf(task.getTaskId());
 
-            flag = true;
-        } catch (Exception e) {
-            e.printStackTrace();
+        //2.1 如果任务的执行时间小于等于当前时间，存入ready(直接等待执行)
+        if (task.getExecuteTime() <= System.currentTimeMillis()) {
+            taskQueueStore.addReady(key, taskId, encode(task));
+            taskQueueStore.publishReady(taskShardRouter.logicalKey(key));
+        } else {
+            //2.2 如果任务的执行时间大于当前时间 && 小于同步截止时间（约未来5分钟） 存入future
+            taskQueueStore.addFuture(key, taskId, encode(task), task.getExecuteTime());
+            //2.3 放入时间轮，到期时立即派发
+            taskDispatchEngine.schedule(key, taskId, task.getExecuteTime());
         }
 
-        return flag;
+
     }
 
     /**
@@ -133,9 +339,10 @@ public class TaskServiceImpl implements TaskService {
         //删除任务，更新日志
         Task task = updateDb(taskId, ScheduleConstants.EXECUTED);
 
-        //删除redis的数据
+        //删除队列中的数据
         if (task != null) {
             removeTaskFromCache(task);
+            taskMetrics.cancelled(task);
             flag = true;
         }
 
@@ -144,19 +351,18 @@ public class TaskServiceImpl implements TaskService {
     }
 
     /**
-     * 删除redis中的任务数据
+     * 删除队列中的任务数据
      *
      * @param task
      */
     private void removeTaskFromCache(Task task) {
 
-        String key = task.getTaskType() + "_" + task.getPriority();
+        String key = taskShardRouter.queueKey(task.getTaskType(), task.getPriority(), task.getTaskId());
+        String taskId = String.valueOf(task.getTaskId());
 
-        if (task.getExecuteTime() <= System.currentTimeMillis()) {
-            cacheService.lRemove(ScheduleConstants.TOPIC + key, 0, JSON.toJSONString(task));
-        } else {
-            cacheService.zRemove(ScheduleConstants.FUTURE + key, JSON.toJSONString(task));
-        }
+        //删除任务数据，ready中剩下的任务id在拉取时直接丢弃
+        taskQueueStore.remove(key, taskId);
+        taskDispatchEngine.cancel(taskId);
     }
 
     /**
@@ -194,91 +400,516 @@ public class TaskServiceImpl implements TaskService {
      * @return
      */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Task poll(int type, int priority) {
-        Task task = null;
+        List<Task> tasks = poll(type, priority, 1);
+        return tasks.isEmpty() ? null : tasks.get(0);
+    }
+
+    /**
+     * 按照类型和优先级批量拉取任务
+     * 一次脚本调用弹出最多maxCount个任务，一条delete和一条update批量修改数据库
+     * 数据库修改失败时任务放回队列并返回空，不返回数据库中仍是待执行的任务
+     *
+     * @param type
+     * @param priority
+     * @param maxCount 最多拉取的数量
+     * @return
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<Task> poll(int type, int priority, int maxCount) {
+        List<Task> tasks = new ArrayList<>();
+        if (maxCount <= 0) {
+            return tasks;
+        }
+        List<byte[]> polled = new ArrayList<>();
         try {
-            String key = type + "_" + priority;
-            //从redis中拉取数据 pop
-            String task_json = cacheService.lRightPop(ScheduleConstants.TOPIC + key);
-            if (StringUtils.isNotBlank(task_json)) {
-                task = JSON.parseObject(task_json, Task.class);
-
-                //修改数据库
-                updateDb(task.getTaskId(), ScheduleConstants.EXECUTED);
+            //从队列中批量拉取数据 pop
+            List<byte[]> payloads = popFromShards(type, priority, Math.min(maxCount, MAX_POLL_SIZE), taskQueueStore::pop);
+            decodeAll(payloads, tasks, polled);
+        } catch (Exception e) {
+            log.error("批量拉取任务异常 type={} priority={}", type, priority, e);
+        }
+
+        //批量修改数据库
+        return markPolled(tasks, polled);
+    }
+
+    /**
+     * 跨任务类型批量拉取任务
+     * 按TaskTypeEnum找到各个类型的队列，WEIGHTED模式按配置的权重平滑加权轮询分配名额，STRICT模式按权重从高到低依次拉空
+     * 某个队列的任务不足时，剩余名额在其他队列中重新分配
+     *
+     * @param types    任务类型
+     * @param maxCount 最多拉取的数量
+     * @return
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<Task> pollAny(List<Integer> types, int maxCount) {
+        List<Task> tasks = new ArrayList<>();
+        if (types == null || types.isEmpty() || maxCount <= 0) {
+            return tasks;
+        }
+        ScheduleProperties.Fair fair = scheduleProperties.getFair();
+        List<TaskTypeEnum> queues = new ArrayList<>();
+        for (TaskTypeEnum taskTypeEnum : TaskTypeEnum.values()) {
+            if (types.contains(taskTypeEnum.getTaskType())) {
+                queues.add(taskTypeEnum);
+            }
+        }
+        //权重从高到低，STRICT模式按这个顺序拉取
+        queues.sort((a, b) -> fair.weightOf(b) - fair.weightOf(a));
+        Map<TaskTypeEnum, Integer> active = new LinkedHashMap<>();
+        for (TaskTypeEnum queue : queues) {
+            active.put(queue, fair.weightOf(queue));
+        }
+
+        List<byte[]> polled = new ArrayList<>();
+        try {
+            int remaining = Math.min(maxCount, MAX_POLL_SIZE);
+            while (remaining > 0 && !active.isEmpty()) {
+                Map<TaskTypeEnum, Integer> allocation = fair.getMode() == ScheduleProperties.Fair.Mode.STRICT
+                        ? Collections.singletonMap(active.keySet().iterator().next(), remaining)
+                        : queueRoundRobin.allocate(active, remaining);
+                for (Map.Entry<TaskTypeEnum, Integer> entry : allocation.entrySet()) {
+                    TaskTypeEnum queue = entry.getKey();
+                    List<byte[]> payloads = popFromShards(queue.getTaskType(), queue.getPriority(), entry.getValue(), taskQueueStore::pop);
+                    decodeAll(payloads, tasks, polled);
+                    remaining -= payloads.size();
+                    if (payloads.size() < entry.getValue()) {
+                        //队列已经拉空，不再参与分配
+                        active.remove(queue);
+                    }
+                }
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            log.error("拉取任务异常");
+            log.error("跨类型拉取任务异常 types={}", types, e);
         }
 
-        return task;
+        //批量修改数据库
+        return markPolled(tasks, polled);
     }
 
     /**
-     * 未来数据定时刷新
+     * 解码弹出的任务，无法解码的任务记录日志后跳过，仍在数据库中的任务由reloadData核对时重新写入队列
+     *
+     * @param payloads 弹出的任务数据
+     * @param tasks    解码成功的任务
+     * @param polled   解码成功的任务数据，与tasks一一对应
      */
-    @Scheduled(cron = "0 */1 * * * ?")
-    public void refresh() {
+    private void decodeAll(List<byte[]> payloads, List<Task> tasks, List<byte[]> polled) {
+        for (byte[] payload : payloads) {
+            try {
+                tasks.add(TaskCodec.decode(payload));
+                polled.add(payload);
+            } catch (Exception e) {
+                log.error("任务数据解码异常，跳过该任务", e);
+            }
+        }
+    }
 
-        String token = cacheService.tryLock("FUTURE_TASK_SYNC", 1000 * 30);
-        if (StringUtils.isNotBlank(token)) {
-            log.info("未来数据定时刷新---定时任务");
+    /**
+     * 弹出的任务批量修改数据库为已执行，失败时把任务放回队列，不返回数据库中仍是待执行的任务
+     *
+     * @param tasks
+     * @param payloads 与tasks一一对应
+     * @return 修改成功返回tasks，失败返回空
+     */
+    private List<Task> markPolled(List<Task> tasks, List<byte[]> payloads) {
+        if (tasks.isEmpty()) {
+            return tasks;
+        }
+        List<Long> taskIds = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            taskIds.add(task.getTaskId());
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> updateDbBatch(taskIds, ScheduleConstants.EXECUTED));
+        } catch (Exception e) {
+            log.error("拉取的任务写入数据库异常，放回队列 taskIds={}", taskIds, e);
+            for (int i = 0; i < tasks.size(); i++) {
+                Task task = tasks.get(i);
+                try {
+                    taskQueueStore.addReady(taskShardRouter.queueKey(task.getTaskType(), task.getPriority(), task.getTaskId()),
+                            String.valueOf(task.getTaskId()), payloads.get(i));
+                } catch (Exception ex) {
+                    //放回失败的任务仍在数据库中，由reloadData核对时重新写入队列
+                    log.error("任务放回队列异常 taskId={}", task.getTaskId(), ex);
+                }
+            }
+            return new ArrayList<>();
+        }
+        taskMetrics.polled(tasks);
+        return tasks;
+    }
 
-            //获取所有未来数据的集合key
-            Set<String> futureKeys = cacheService.scan(ScheduleConstants.FUTURE + "*");
-            for (String futureKey : futureKeys) {//future_100_50
+    /**
+     * 批量删除任务，更新任务日志状态
+     *
+     * @param taskIds
+     * @param status
+     */
+    private void updateDbBatch(List<Long> taskIds, int status) {
+        //删除任务
+        taskinfoMapper.deleteBatchIds(taskIds);
+        //更新日志
+        taskinfoLogsMapper.updateStatusBatch(taskIds, status);
+    }
 
-                //获取当前数据的key  topic
-                String topicKey = ScheduleConstants.TOPIC + futureKey.split(ScheduleConstants.FUTURE)[1];
+    /**
+     * 租约模式批量拉取任务
+     * 任务id从ready移动到inflight，按租约到期时间排序，任务数据保留到确认为止，不写数据库
+     *
+     * @param type
+     * @param priority
+     * @param maxCount 最多拉取的数量
+     * @return
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<Task> lease(int type, int priority, int maxCount) {
+        List<Task> tasks = new ArrayList<>();
+        if (maxCount <= 0) {
+            return tasks;
+        }
+        long deadline = System.currentTimeMillis() + scheduleProperties.getLease().getTimeoutSeconds() * 1000L;
+        popFromShards(type, priority, Math.min(maxCount, MAX_POLL_SIZE),
+                (key, count) -> decodeLeased(key, taskQueueStore.lease(key, count, deadline), tasks));
+        taskMetrics.polled(tasks);
+        return tasks;
+    }
 
-                //按照key和分值查询符合条件的数据
-                Set<String> tasks = cacheService.zRangeByScore(futureKey, 0, System.currentTimeMillis());
+    /**
+     * 解码租约拉取的任务，无法解码的任务直接确认，避免租约到期后反复放回队列
+     * 租约模式不写数据库，任务仍在数据库中，由reloadData核对时重新写入队列
+     *
+     * @param key    分片的队列key
+     * @param leased 任务id和任务数据
+     * @param tasks  解码成功的任务
+     * @return 解码成功的任务数据
+     */
+    private List<byte[]> decodeLeased(String key, Map<String, byte[]> leased, List<Task> tasks) {
+        List<byte[]> decoded = new ArrayList<>(leased.size());
+        List<String> broken = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : leased.entrySet()) {
+            try {
+                tasks.add(TaskCodec.decode(entry.getValue()));
+                decoded.add(entry.getValue());
+            } catch (Exception e) {
+                log.error("任务数据解码异常，丢弃该任务 key={} taskId={}", key, entry.getKey(), e);
+                broken.add(entry.getKey());
+            }
+        }
+        if (!broken.isEmpty()) {
+            try {
+                taskQueueStore.ack(key, broken);
+            } catch (Exception e) {
+                //租约到期放回队列后下次拉取时再丢弃
+                log.error("丢弃无法解码的任务异常 key={} taskIds={}", key, broken, e);
+            }
+        }
+        return decoded;
+    }
 
-                //同步数据
-                if (!tasks.isEmpty()) {
-                    cacheService.refreshWithPipeline(futureKey, topicKey, tasks);
-                    log.info("成功的将" + futureKey + "刷新到了" + topicKey);
+    /**
+     * 确认租约模式拉取的任务已经执行完成
+     * 先由组提交写入器和其他确认请求合并写入数据库，写入成功后再删除队列中的租约和任务数据
+     * 写入失败时租约保留，到期后任务重新放回队列
+     *
+     * @param type
+     * @param priority
+     * @param taskIds  任务id
+     * @return 确认成功的数量
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int ack(int type, int priority, List<Long> taskIds) {
+        if (taskIds == null || taskIds.isEmpty()) {
+            return 0;
+        }
+        try {
+            ackWriter.submit(taskIds).get(ACK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.error("任务确认写入数据库异常 taskIds={}", taskIds, e);
+            return 0;
+        }
+        //按分片分组，每个分片一次调用
+        Map<String, List<String>> fieldsByKey = new HashMap<>();
+        for (Long taskId : taskIds) {
+            fieldsByKey.computeIfAbsent(taskShardRouter.queueKey(type, priority, taskId), k -> new ArrayList<>())
+                    .add(String.valueOf(taskId));
+        }
+        int acked = 0;
+        for (Map.Entry<String, List<String>> entry : fieldsByKey.entrySet()) {
+            acked += taskQueueStore.ack(entry.getKey(), entry.getValue());
+        }
+        return acked;
+    }
+
+    /**
+     * 按配置的格式编码任务，拉取时两种格式都可以解码
+     *
+     * @param task
+     * @return
+     */
+    private byte[] encode(Task task) {
+        if (ScheduleProperties.Store.CODEC_JSON.equals(scheduleProperties.getStore().getCodec())) {
+            return JSON.toJSONBytes(task);
+        }
+        return TaskCodec.encode(task);
+    }
+
+    /**
+     * 从逻辑队列的各个分片中依次拉取，直到拉满count个
+     * 每次从轮转的起始分片开始，避免总是先拉取第一个分片
+     *
+     * @param type
+     * @param priority
+     * @param count
+     * @param popper   从一个分片中最多拉取n个
+     * @return
+     */
+    private List<byte[]> popFromShards(int type, int priority, int count, BiFunction<String, Integer, List<byte[]>> popper) {
+        List<String> keys = taskShardRouter.queueKeys(type, priority);
+        if (keys.size() == 1) {
+            return popper.apply(keys.get(0), count);
+        }
+        List<byte[]> result = new ArrayList<>(count);
+        int start = Math.floorMod(pollCursor.getAndIncrement(), keys.size());
+        for (int i = 0; i < keys.size() && result.size() < count; i++) {
+            String key = keys.get((start + i) % keys.size());
+            try {
+                result.addAll(popper.apply(key, count - result.size()));
+            } catch (RuntimeException e) {
+                if (result.isEmpty()) {
+                    throw e;
                 }
+                //前面分片已经弹出的任务先返回，不能丢弃
+                log.error("分片拉取任务异常 key={}", key, e);
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 租约到期未确认的任务重新放回ready的右侧，下次拉取时优先返回
+     */
+    @Scheduled(fixedDelay = 5 * 1000)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void requeueExpiredLeases() {
+        long now = System.currentTimeMillis();
+        long requeued = 0;
+        for (int shard = 0; shard < taskShardRouter.shards(); shard++) {
+            requeued += taskQueueStore.requeueExpired(shard, now);
+        }
+        if (requeued > 0) {
+            taskQueueStore.publishReady("*");
+            log.info("{}个任务租约到期未确认，重新放回队列", requeued);
+        }
+    }
+
+    /**
+     * 未来数据定时刷新
+     * 每个分片一把锁，实例抢到哪些分片就刷新哪些分片，抢到的分片并行刷新
+     */
+    @Scheduled(cron = "0 */1 * * * ?")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void refresh() {
+        long start = System.nanoTime();
+        int shards = taskShardRouter.shards();
+        //从随机分片开始抢锁，多个实例同时触发时各自先拿到不同的分片
+        int first = ThreadLocalRandom.current().nextInt(shards);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            int shard = (first + i) % shards;
+            String token = taskQueueStore.tryLock(shards == 1 ? "FUTURE_TASK_SYNC" : "FUTURE_TASK_SYNC_" + shard, 1000 * 30);
+            if (StringUtils.isNotBlank(token)) {
+                futures.add(refreshExecutor.submit(() -> refreshShard(shard)));
             }
         }
+        if (futures.isEmpty()) {
+            return;
+        }
+        log.info("未来数据定时刷新---定时任务 分片{}/{}", futures.size(), shards);
+
+        long moved = 0;
+        for (Future<Long> future : futures) {
+            try {
+                moved += future.get();
+            } catch (Exception e) {
+                log.error("分片刷新异常", e);
+            }
+        }
+        if (moved > 0) {
+            taskQueueStore.publishReady("*");
+            log.info("成功的将{}个到期任务从future刷新到了topic", moved);
+        }
+        taskMetrics.refreshed(System.nanoTime() - start, moved);
     }
 
     /**
-     * 数据库任务定时同步到redis
+     * 把一个分片中所有future中到期的数据移动到对应的ready中
+     *
+     * @param shard
+     * @return 移动的数量
+     */
+    private long refreshShard(int shard) {
+        return taskQueueStore.migrateDue(shard, System.currentTimeMillis());
+    }
+
+    /**
+     * 数据库任务定时增量同步到队列存储
+     * 按(执行时间,任务id)的顺序流式读取水位线之后、未来5分钟之前的任务，分批写入future，不清理正在使用的队列
+     * 有任务写入队列失败或者到了定期核对的时间时从头读取，已经在队列中的任务跳过，补回水位线之前丢失的任务
+     * 升级前的版本没有水位线，队列中保存的是任务json，第一次启动时清空队列后从数据库重新同步
+     * 升级前的任务都在数据库中，也没有租约，清空不会丢失任务；升级时需要先停掉旧版本的实例
      */
     @Scheduled(cron = "0 */5 * * * ?")
-    @PostConstruct
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
     public void reloadData() {
 
-        //清理缓存中的数据 list zset
-        clearCache();
-
-        //查询符合条件的任务 小于未来5分钟的数据
-        //获取5分钟之后的时间  毫秒值
-        Calendar calendar = Calendar.getInstance();
-        calendar.add(Calendar.MINUTE, 5);
-        List<Taskinfo> taskinfoList = taskinfoMapper.selectList(Wrappers.<Taskinfo>lambdaQuery().lt(Taskinfo::getExecuteTime, calendar.getTime()));
-
-        //把任务添加到redis
-        if (taskinfoList != null) {
-            for (Taskinfo taskinfo : taskinfoList) {
-                Task task = new Task();
-                BeanUtils.copyProperties(taskinfo,task);
-                task.setExecuteTime(taskinfo.getExecuteTime().getTime());
-                addTaskToCache(task);
+        String token = taskQueueStore.tryLock("FUTURE_TASK_RELOAD", 1000 * 60 * 5);
+        if (StringUtils.isBlank(token)) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        try {
+            Map<String, String> watermark = taskQueueStore.getWatermark();
+            String shards = String.valueOf(taskShardRouter.shards());
+            //加入分片之前的水位线没有分片数量，相当于1个分片
+            String syncedShards = watermark.getOrDefault(WATERMARK_SHARDS, "1");
+            if (watermark.isEmpty() || !shards.equals(syncedShards)) {
+                //还没有水位线(第一次启动或者从旧版本升级)或者分片数量变化，清理队列中的数据后从头同步一次
+                clearCache();
+                taskQueueStore.clearWatermark();
+                watermark = new HashMap<>();
+            }
+            Map<String, String> progress = new HashMap<>();
+            progress.put(WATERMARK_SHARDS, shards);
+            long now = System.currentTimeMillis();
+            long reconcileMs = TimeUnit.MINUTES.toMillis(scheduleProperties.getReload().getReconcileMinutes());
+            boolean reconcile = "1".equals(watermark.get(WATERMARK_DIRTY))
+                    || now - getWatermark(watermark, WATERMARK_RECONCILED) >= reconcileMs;
+            if (reconcile) {
+                //从头核对，开始之前清除标记，核对过程中新的写入失败留到下一次
+                progress.put(WATERMARK_DIRTY, "0");
+                progress.put(WATERMARK_RECONCILED, String.valueOf(now));
+            }
+            taskQueueStore.putWatermark(progress);
+            long afterTime = reconcile ? 0 : getWatermark(watermark, WATERMARK_EXECUTE_TIME);
+            long afterId = reconcile ? 0 : getWatermark(watermark, WATERMARK_TASK_ID);
+
+            //先推进同步截止时间，之后添加的截止时间之前的任务由addTask直接写入队列
+            Calendar calendar = Calendar.getInstance();
+            calendar.add(Calendar.MINUTE, 5);
+            long horizon = Math.max(calendar.getTimeInMillis(), getWatermark(watermark, WATERMARK_HORIZON));
+            taskQueueStore.putWatermark(Collections.singletonMap(WATERMARK_HORIZON, String.valueOf(horizon)));
+
+            //流式读取任务，分批写入队列
+            int count = 0;
+            List<StoredTask> batch = new ArrayList<>(RELOAD_BATCH_SIZE);
+            Taskinfo last = null;
+            try (Cursor<Taskinfo> cursor = taskinfoMapper.queryFutureTime(new Date(afterTime), afterId, new Date(horizon))) {
+                for (Taskinfo taskinfo : cursor) {
+                    Task task = new Task();
+                    BeanUtils.copyProperties(taskinfo, task);
+                    task.setExecuteTime(taskinfo.getExecuteTime().getTime());
+
+                    String key = taskShardRouter.queueKey(task.getTaskType(), task.getPriority(), task.getTaskId());
+                    batch.add(new StoredTask(key, String.valueOf(task.getTaskId()), encode(task), task.getExecuteTime()));
+                    last = taskinfo;
+                    if (++count % RELOAD_BATCH_SIZE == 0) {
+                        flushReloadBatch(batch, last);
+                    }
+                }
             }
+            flushReloadBatch(batch, last);
+
+            //本次同步完成，水位线推进到截止时间
+            Map<String, String> finished = new HashMap<>();
+            finished.put(WATERMARK_EXECUTE_TIME, String.valueOf(horizon));
+            finished.put(WATERMARK_TASK_ID, "0");
+            taskQueueStore.putWatermark(finished);
+
+            //已经到期的任务直接移动到ready
+            long moved = 0;
+            for (int shard = 0; shard < taskShardRouter.shards(); shard++) {
+                moved += refreshShard(shard);
+            }
+            if (moved > 0) {
+                taskQueueStore.publishReady("*");
+            }
+
+            log.info("数据库任务已{}同步到队列，本次同步{}个", reconcile ? "核对" : "增量", count);
+        } catch (Exception e) {
+            //水位线停在最后一个写入成功的批次，下次从这里继续
+            log.error("数据库任务同步到队列异常", e);
+        } finally {
+            taskQueueStore.unLock("FUTURE_TASK_RELOAD", token);
+            taskMetrics.reloaded(System.nanoTime() - start);
         }
-        log.info("数据库任务已同步到redis");
+    }
+
+    /**
+     * 批量写入一批任务，并把水位线推进到这一批的最后一个任务
+     *
+     * @param batch
+     * @param last
+     */
+    private void flushReloadBatch(List<StoredTask> batch, Taskinfo last) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        taskQueueStore.addFutureBatch(batch);
+        batch.clear();
+
+        Map<String, String> watermark = new HashMap<>();
+        watermark.put(WATERMARK_EXECUTE_TIME, String.valueOf(last.getExecuteTime().getTime()));
+        watermark.put(WATERMARK_TASK_ID, String.valueOf(last.getTaskId()));
+        taskQueueStore.putWatermark(watermark);
+    }
+
+    /**
+     * 已经同步到队列的截止时间，执行时间在此之前的任务由addTask直接写入队列
+     *
+     * @return
+     */
+    private long reloadHorizon() {
+        return getWatermark(taskQueueStore.getWatermark(), WATERMARK_HORIZON);
+    }
+
+    private long getWatermark(Map<String, String> watermark, String field) {
+        String value = watermark.get(field);
+        return value == null ? 0 : Long.parseLong(value);
     }
 
     /**
      * 清理缓存中的数据
      */
     public void clearCache() {
-        Set<String> topicKeys = cacheService.scan(ScheduleConstants.TOPIC + "*");
-        Set<String> futureKeys = cacheService.scan(ScheduleConstants.FUTURE + "*");
-        cacheService.delete(topicKeys);
-        cacheService.delete(futureKeys);
+        taskQueueStore.clear();
     }
 
-}
\ No newline at end of file
+    /**
+     * 提交前已经转换好的任务和数据库记录
+     */
+    private static class TaskRow {
+
+        private final Task task;
+
+        private final Taskinfo taskinfo;
+
+        private final TaskinfoLogs taskinfoLogs;
+
+        private TaskRow(Task task, Taskinfo taskinfo, TaskinfoLogs taskinfoLogs) {
+            this.task = task;
+            this.taskinfo = taskinfo;
+            this.taskinfoLogs = taskinfoLogs;
+        }
+    }
+}
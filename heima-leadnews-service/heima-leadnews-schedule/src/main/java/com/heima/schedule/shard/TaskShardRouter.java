@@ -0,0 +1,111 @@
+package com.heima.schedule.shard;
+
+import com.heima.schedule.config.ScheduleProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 队列分片路由
+ * 每个type_priority的逻辑队列按任务id的hash拆分为N个分片，分片的key为type_priority_{shard}
+ * 同一分片的所有队列使用相同的hash tag，在redis集群中落在同一个slot，分片内的脚本可以同时操作多个key
+ * 只有一个分片时key保持为type_priority，与不分片时一致
+ */
+@Component
+public class TaskShardRouter {
+
+    @Autowired
+    private ScheduleProperties scheduleProperties;
+
+    /**
+     * 分片数量
+     *
+     * @return
+     */
+    public int shards() {
+        return Math.max(1, scheduleProperties.getShard().getCount());
+    }
+
+    /**
+     * 任务所在的分片
+     * 雪花id的低位是毫秒内序列号，大多为0，先打散再取模
+     *
+     * @param taskId
+     * @return
+     */
+    public int shardOf(long taskId) {
+        long h = taskId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) Math.floorMod(h, (long) shards());
+    }
+
+    /**
+     * 任务所在分片的队列key(不含前缀)
+     *
+     * @param type
+     * @param priority
+     * @param taskId
+     * @return
+     */
+    public String queueKey(int type, int priority, long taskId) {
+        return shardKey(type + "_" + priority, shardOf(taskId));
+    }
+
+    /**
+     * 逻辑队列所有分片的队列key(不含前缀)
+     *
+     * @param type
+     * @param priority
+     * @return
+     */
+    public List<String> queueKeys(int type, int priority) {
+        int shards = shards();
+        List<String> keys = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            keys.add(shardKey(type + "_" + priority, shard));
+        }
+        return keys;
+    }
+
+    /**
+     * 分片队列key对应的逻辑队列key type_priority
+     *
+     * @param queueKey
+     * @return
+     */
+    public String logicalKey(String queueKey) {
+        int index = queueKey.lastIndexOf("_{");
+        return index < 0 ? queueKey : queueKey.substring(0, index);
+    }
+
+    /**
+     * 匹配一个分片所有队列key的scan模式(不含前缀)
+     *
+     * @param shard
+     * @return
+     */
+    public String shardPattern(int shard) {
+        return shards() == 1 ? "*" : "*_{" + shard + "}";
+    }
+
+    /**
+     * 队列key(不含前缀)是否属于某个分片，与shardPattern的匹配结果一致
+     *
+     * @param queueKey
+     * @param shard
+     * @return
+     */
+    public boolean inShard(String queueKey, int shard) {
+        return shards() == 1 || queueKey.endsWith("_{" + shard + "}");
+    }
+
+    private String shardKey(String logicalKey, int shard) {
+        return shards() == 1 ? logicalKey : logicalKey + "_{" + shard + "}";
+    }
+}
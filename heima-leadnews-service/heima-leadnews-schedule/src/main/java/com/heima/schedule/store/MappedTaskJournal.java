@@ -0,0 +1,281 @@
+package com.heima.schedule.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 内存队列存储的追加日志
+ * 文件按固定大小分段映射到内存，记录直接写入映射区，进程崩溃后由操作系统写回磁盘，机器掉电时可能丢失未刷盘的部分
+ * 记录格式：[int 长度][byte 类型][long 执行时间][string key][string 任务id/字段][bytes 编码后的任务/值]
+ * 长度在记录内容写完之后才写入，读到长度为0说明日志结束，不会读到写了一半的记录
+ * 映射区剩余空间放不下一条记录时写入跳过标记，从下一段开始写
+ */
+public class MappedTaskJournal implements Closeable {
+
+    private static final byte PUT = 1;
+
+    private static final byte DELETE = 2;
+
+    private static final byte WATERMARK = 3;
+
+    private static final byte CLEAR = 4;
+
+    /**
+     * 跳过标记，这一段剩下的空间没有记录
+     */
+    private static final int SKIP = -1;
+
+    private final int regionBytes;
+
+    private final FileChannel channel;
+
+    private MappedByteBuffer region;
+
+    /**
+     * 当前映射区在文件中的起始位置
+     */
+    private long regionStart;
+
+    /**
+     * 下一条记录在文件中的位置
+     */
+    private long position;
+
+    /**
+     * @param path        日志文件
+     * @param regionBytes 每次映射的大小，也是单条记录的上限
+     * @throws IOException
+     */
+    public MappedTaskJournal(Path path, int regionBytes) throws IOException {
+        this.regionBytes = regionBytes;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 按写入顺序回放日志，回放完成后从日志末尾继续写入
+     *
+     * @param handler
+     * @return 回放的记录数量
+     * @throws IOException
+     */
+    public synchronized long replay(Handler handler) throws IOException {
+        long offset = 0;
+        long count = 0;
+        long fileSize = channel.size();
+        while (offset < fileSize) {
+            mapRegion(offset);
+            int pos = (int) (offset - regionStart);
+            if (regionBytes - pos < 4) {
+                offset = regionStart + regionBytes;
+                continue;
+            }
+            int length = region.getInt(pos);
+            if (length == SKIP) {
+                offset = regionStart + regionBytes;
+                continue;
+            }
+            if (length == 0) {
+                break;
+            }
+            ByteBuffer record = region.duplicate();
+            record.position(pos + 4);
+            record.limit(pos + 4 + length);
+            apply(record.slice(), handler);
+            offset += 4 + length;
+            count++;
+        }
+        position = offset;
+        return count;
+    }
+
+    /**
+     * 添加任务
+     *
+     * @param key
+     * @param taskId
+     * @param executeTime
+     * @param payload
+     */
+    public synchronized void put(String key, String taskId, long executeTime, byte[] payload) {
+        append(PUT, executeTime, key, taskId, payload);
+    }
+
+    /**
+     * 删除任务
+     *
+     * @param key
+     * @param taskId
+     */
+    public synchronized void delete(String key, String taskId) {
+        append(DELETE, 0, key, taskId, null);
+    }
+
+    /**
+     * 更新同步进度中的字段
+     *
+     * @param field 为null时清空同步进度
+     * @param value
+     */
+    public synchronized void watermark(String field, String value) {
+        append(WATERMARK, 0, null, field, bytes(value));
+    }
+
+    /**
+     * 清空所有任务
+     */
+    public synchronized void clear() {
+        append(CLEAR, 0, null, null, null);
+    }
+
+    /**
+     * 日志当前的长度
+     *
+     * @return
+     */
+    public synchronized long size() {
+        return position;
+    }
+
+    /**
+     * 把映射区写回磁盘
+     */
+    public synchronized void force() {
+        if (region != null) {
+            region.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        region = null;
+        channel.close();
+    }
+
+    private void append(byte type, long time, String key, String field, byte[] v) {
+        byte[] k = bytes(key);
+        byte[] f = bytes(field);
+        int length = 1 + 8 + size(k) + size(f) + size(v);
+        if (4 + length > regionBytes) {
+            throw new IllegalArgumentException("journal record too large: " + length);
+        }
+        try {
+            mapRegion(position);
+            if (position + 4 + length > regionStart + regionBytes) {
+                int pos = (int) (position - regionStart);
+                if (regionBytes - pos >= 4) {
+                    region.putInt(pos, SKIP);
+                }
+                position = regionStart + regionBytes;
+                mapRegion(position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int pos = (int) (position - regionStart);
+        ByteBuffer buffer = region.duplicate();
+        buffer.position(pos + 4);
+        buffer.put(type).putLong(time);
+        putBytes(buffer, k);
+        putBytes(buffer, f);
+        putBytes(buffer, v);
+        //最后写入长度，记录才对回放可见
+        region.putInt(pos, length);
+        position += 4 + length;
+    }
+
+    private void apply(ByteBuffer record, Handler handler) {
+        byte type = record.get();
+        long time = record.getLong();
+        String key = getString(record);
+        String field = getString(record);
+        byte[] value = getBytes(record);
+        switch (type) {
+            case PUT:
+                handler.put(key, field, time, value);
+                break;
+            case DELETE:
+                handler.delete(key, field);
+                break;
+            case WATERMARK:
+                handler.watermark(field, value == null ? null : new String(value, StandardCharsets.UTF_8));
+                break;
+            case CLEAR:
+                handler.clear();
+                break;
+            default:
+                throw new IllegalStateException("unknown journal record type: " + type);
+        }
+    }
+
+    /**
+     * 映射offset所在的一段
+     *
+     * @param offset
+     * @throws IOException
+     */
+    private void mapRegion(long offset) throws IOException {
+        long start = offset - offset % regionBytes;
+        if (region == null || regionStart != start) {
+            region = channel.map(FileChannel.MapMode.READ_WRITE, start, regionBytes);
+            regionStart = start;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int size(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = getBytes(buffer);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 回放日志
+     */
+    public interface Handler {
+
+        void put(String key, String taskId, long executeTime, byte[] payload);
+
+        void delete(String key, String taskId);
+
+        void watermark(String field, String value);
+
+        void clear();
+    }
+}
@@ -0,0 +1,688 @@
+package com.heima.schedule.store;
+
+import com.heima.schedule.config.ScheduleProperties;
+import com.heima.schedule.notify.TaskReadyEvent;
+import com.heima.schedule.shard.TaskShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * 进程内的队列存储，不依赖redis，只适用于单实例部署、测试和压测
+ * 未到期的任务按(执行时间,任务id)保存在跳表中，拉取时先把到期的任务移动到ready，不依赖时间轮和refresh的精度
+ * 同一个队列的复合操作在队列上加锁，不同队列之间互不影响
+ * 配置了日志文件时，任务的添加和删除追加写入MappedTaskJournal，启动时回放日志恢复任务
+ * 日志不记录租约，重启后已经拉取但还没有确认的任务重新放回ready
+ */
+@Component
+@ConditionalOnProperty(prefix = "schedule.store", name = "type", havingValue = "memory")
+@Slf4j
+public class MemoryTaskQueueStore implements TaskQueueStore {
+
+    @Autowired
+    private ScheduleProperties scheduleProperties;
+
+    @Autowired
+    private TaskShardRouter taskShardRouter;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 所有队列  key:队列key(不含前缀)
+     */
+    private final Map<String, MemoryQueue> queues = new ConcurrentHashMap<>();
+
+    private final Map<String, String> watermark = new ConcurrentHashMap<>();
+
+    private final Map<String, LockEntry> locks = new ConcurrentHashMap<>();
+
+    /**
+     * 写日志的操作持有读锁，压缩日志时持有写锁
+     */
+    private final ReentrantReadWriteLock journalLock = new ReentrantReadWriteLock();
+
+    private volatile MappedTaskJournal journal;
+
+    private Path journalPath;
+
+    /**
+     * 在单独的线程中通知订阅请求，不占用添加和派发任务的线程
+     */
+    private ExecutorService notifyExecutor;
+
+    private static final long MB = 1024 * 1024;
+
+    @PostConstruct
+    public void start() throws IOException {
+        notifyExecutor = Executors.newFixedThreadPool(2);
+        ScheduleProperties.Store store = scheduleProperties.getStore();
+        if (StringUtils.isBlank(store.getJournalPath())) {
+            log.info("内存队列存储已启动，未配置日志文件");
+            return;
+        }
+        journalPath = Paths.get(store.getJournalPath());
+        MappedTaskJournal replaying = new MappedTaskJournal(journalPath, journalRegionBytes());
+        Map<String, Map<String, StoredTask>> live = new HashMap<>();
+        long records = replaying.replay(new MappedTaskJournal.Handler() {
+            @Override
+            public void put(String key, String taskId, long executeTime, byte[] payload) {
+                live.computeIfAbsent(key, k -> new HashMap<>()).put(taskId, new StoredTask(key, taskId, payload, executeTime));
+            }
+
+            @Override
+            public void delete(String key, String taskId) {
+                Map<String, StoredTask> tasks = live.get(key);
+                if (tasks != null) {
+                    tasks.remove(taskId);
+                }
+            }
+
+            @Override
+            public void watermark(String field, String value) {
+                if (field == null) {
+                    watermark.clear();
+                } else {
+                    watermark.put(field, value);
+                }
+            }
+
+            @Override
+            public void clear() {
+                live.clear();
+            }
+        });
+        replaying.close();
+
+        //到期的任务按执行时间先后放入ready，其余放回future
+        long now = System.currentTimeMillis();
+        int recovered = 0;
+        for (Map.Entry<String, Map<String, StoredTask>> entry : live.entrySet()) {
+            MemoryQueue queue = queue(entry.getKey());
+            List<StoredTask> tasks = new ArrayList<>(entry.getValue().values());
+            tasks.sort((a, b) -> Long.compare(a.getExecuteTime(), b.getExecuteTime()));
+            for (StoredTask task : tasks) {
+                queue.payloads.put(task.getTaskId(), task.getPayload());
+                if (task.getExecuteTime() <= now) {
+                    queue.ready.addFirst(task.getTaskId());
+                } else {
+                    queue.addFuture(task.getTaskId(), task.getExecuteTime());
+                }
+                recovered++;
+            }
+        }
+        //只保留未完成的任务重写日志
+        compact();
+        log.info("内存队列存储已从日志恢复 记录{}条 任务{}个", records, recovered);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        notifyExecutor.shutdown();
+        Lock lock = journalLock.writeLock();
+        lock.lock();
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addReady(String key, String taskId, byte[] payload) {
+        MemoryQueue queue = queue(key);
+        write(() -> {
+            synchronized (queue) {
+                queue.payloads.put(taskId, payload);
+                queue.ready.addFirst(taskId);
+                if (journal != null) {
+                    journal.put(key, taskId, System.currentTimeMillis(), payload);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void addFuture(String key, String taskId, byte[] payload, long executeTime) {
+        MemoryQueue queue = queue(key);
+        write(() -> {
+            synchronized (queue) {
+                queue.payloads.put(taskId, payload);
+                queue.addFuture(taskId, executeTime);
+                if (journal != null) {
+                    journal.put(key, taskId, executeTime, payload);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void addFutureBatch(List<StoredTask> tasks) {
+        for (StoredTask task : tasks) {
+            MemoryQueue queue = queue(task.getKey());
+            write(() -> {
+                synchronized (queue) {
+                    if (queue.payloads.putIfAbsent(task.getTaskId(), task.getPayload()) != null) {
+                        return null;
+                    }
+                    queue.addFuture(task.getTaskId(), task.getExecuteTime());
+                    if (journal != null) {
+                        journal.put(task.getKey(), task.getTaskId(), task.getExecuteTime(), task.getPayload());
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void remove(String key, String taskId) {
+        MemoryQueue queue = queues.get(key);
+        if (queue == null) {
+            return;
+        }
+        write(() -> {
+            synchronized (queue) {
+                //ready中剩下的任务id在拉取时丢弃
+                if (queue.payloads.remove(taskId) != null && journal != null) {
+                    journal.delete(key, taskId);
+                }
+                queue.removeFuture(taskId);
+                queue.removeInflight(taskId);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public List<byte[]> pop(String key, int count) {
+        MemoryQueue queue = queues.get(key);
+        if (queue == null) {
+            return new ArrayList<>();
+        }
+        return write(() -> {
+            List<byte[]> payloads = new ArrayList<>(count);
+            synchronized (queue) {
+                queue.promoteDue(System.currentTimeMillis());
+                while (payloads.size() < count) {
+                    String taskId = queue.ready.pollLast();
+                    if (taskId == null) {
+                        break;
+                    }
+                    byte[] payload = queue.payloads.remove(taskId);
+                    if (payload == null) {
+                        continue;
+                    }
+                    payloads.add(payload);
+                    if (journal != null) {
+                        journal.delete(key, taskId);
+                    }
+                }
+            }
+            return payloads;
+        });
+    }
+
+    @Override
+    public Map<String, byte[]> lease(String key, int count, long deadline) {
+        MemoryQueue queue = queues.get(key);
+        Map<String, byte[]> payloads = new LinkedHashMap<>();
+        if (queue == null) {
+            return payloads;
+        }
+        //租约不写日志
+        synchronized (queue) {
+            queue.promoteDue(System.currentTimeMillis());
+            while (payloads.size() < count) {
+                String taskId = queue.ready.pollLast();
+                if (taskId == null) {
+                    break;
+                }
+                byte[] payload = queue.payloads.get(taskId);
+                if (payload == null) {
+                    continue;
+                }
+                queue.addInflight(taskId, deadline);
+                payloads.put(taskId, payload);
+            }
+        }
+        return payloads;
+    }
+
+    @Override
+    public long ack(String key, Collection<String> taskIds) {
+        MemoryQueue queue = queues.get(key);
+        if (queue == null) {
+            return 0;
+        }
+        return write(() -> {
+            long acked = 0;
+            synchronized (queue) {
+                for (String taskId : taskIds) {
+                    queue.removeInflight(taskId);
+                    if (queue.payloads.remove(taskId) != null) {
+                        acked++;
+                        if (journal != null) {
+                            journal.delete(key, taskId);
+                        }
+                    }
+                }
+            }
+            return acked;
+        });
+    }
+
+    @Override
+    public boolean moveToReady(String key, String taskId) {
+        MemoryQueue queue = queues.get(key);
+        if (queue == null) {
+            return false;
+        }
+        synchronized (queue) {
+            if (queue.removeFuture(taskId)) {
+                queue.ready.addLast(taskId);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public long migrateDue(int shard, long now) {
+        long moved = 0;
+        for (Map.Entry<String, MemoryQueue> entry : queues.entrySet()) {
+            if (taskShardRouter.inShard(entry.getKey(), shard)) {
+                MemoryQueue queue = entry.getValue();
+                synchronized (queue) {
+                    moved += queue.promoteDue(now);
+                }
+            }
+        }
+        return moved;
+    }
+
+    @Override
+    public long requeueExpired(int shard, long now) {
+        long requeued = 0;
+        for (Map.Entry<String, MemoryQueue> entry : queues.entrySet()) {
+            if (!taskShardRouter.inShard(entry.getKey(), shard)) {
+                continue;
+            }
+            MemoryQueue queue = entry.getValue();
+            synchronized (queue) {
+                while (!queue.inflight.isEmpty() && queue.inflight.first().score <= now) {
+                    Scored scored = queue.inflight.pollFirst();
+                    queue.inflightDeadlines.remove(scored.taskId);
+                    queue.ready.addLast(scored.taskId);
+                    requeued++;
+                }
+            }
+        }
+        return requeued;
+    }
+
+    @Override
+    public List<StoredTask> futureBefore(long maxTime) {
+        List<StoredTask> tasks = new ArrayList<>();
+        for (Map.Entry<String, MemoryQueue> entry : queues.entrySet()) {
+            //跳表支持并发遍历，不需要加锁
+            for (Scored scored : entry.getValue().future) {
+                if (scored.score > maxTime) {
+                    break;
+                }
+                tasks.add(new StoredTask(entry.getKey(), scored.taskId, null, scored.score));
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public Map<String, QueueDepth> depths() {
+        Map<String, QueueDepth> depths = new HashMap<>();
+        for (Map.Entry<String, MemoryQueue> entry : queues.entrySet()) {
+            MemoryQueue queue = entry.getValue();
+            QueueDepth depth = new QueueDepth();
+            synchronized (queue) {
+                depth.setReady(queue.ready.size());
+                depth.setFuture(queue.future.size());
+                depth.setInflight(queue.inflight.size());
+            }
+            depths.put(entry.getKey(), depth);
+        }
+        return depths;
+    }
+
+    @Override
+    public void clear() {
+        write(() -> {
+            //在队列锁内清空，不替换队列对象，已经取到队列的线程不会写入被丢弃的队列
+            for (MemoryQueue queue : queues.values()) {
+                synchronized (queue) {
+                    queue.clear();
+                }
+            }
+            if (journal != null) {
+                journal.clear();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, String> getWatermark() {
+        return new HashMap<>(watermark);
+    }
+
+    @Override
+    public void putWatermark(Map<String, String> fields) {
+        write(() -> {
+            synchronized (watermark) {
+                watermark.putAll(fields);
+                if (journal != null) {
+                    for (Map.Entry<String, String> entry : fields.entrySet()) {
+                        journal.watermark(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void clearWatermark() {
+        write(() -> {
+            synchronized (watermark) {
+                watermark.clear();
+                if (journal != null) {
+                    journal.watermark(null, null);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public String tryLock(String name, long expire) {
+        long now = System.currentTimeMillis();
+        LockEntry entry = new LockEntry(UUID.randomUUID().toString(), now + expire);
+        LockEntry current = locks.compute(name, (k, v) -> v == null || v.expireAt <= now ? entry : v);
+        return current == entry ? entry.token : null;
+    }
+
+    @Override
+    public void unLock(String name, String token) {
+        locks.computeIfPresent(name, (k, v) -> v.token.equals(token) ? null : v);
+    }
+
+    @Override
+    public void publishReady(String logicalKey) {
+        notifyExecutor.execute(() -> eventPublisher.publishEvent(new TaskReadyEvent(logicalKey)));
+    }
+
+    /**
+     * 日志超过配置的大小后压缩
+     */
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void compactIfNeeded() throws IOException {
+        MappedTaskJournal current = journal;
+        if (current != null && current.size() > scheduleProperties.getStore().getJournalCompactMb() * MB) {
+            compact();
+        }
+    }
+
+    /**
+     * 把当前未完成的任务和同步进度写入新的日志文件，再替换旧的日志
+     * 写锁只挡住写日志的操作，租约、到期迁移和重新入队不写日志也会修改队列，所以每个队列在队列锁内复制快照
+     *
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        Lock lock = journalLock.writeLock();
+        lock.lock();
+        try {
+            long before = journal == null ? 0 : journal.size();
+            Path compacting = journalPath.resolveSibling(journalPath.getFileName() + ".compact");
+            Files.deleteIfExists(compacting);
+            MappedTaskJournal target = new MappedTaskJournal(compacting, journalRegionBytes());
+            for (Map.Entry<String, String> entry : watermark.entrySet()) {
+                target.watermark(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, MemoryQueue> entry : queues.entrySet()) {
+                MemoryQueue queue = entry.getValue();
+                List<StoredTask> tasks;
+                synchronized (queue) {
+                    tasks = queue.snapshot(entry.getKey());
+                }
+                for (StoredTask task : tasks) {
+                    target.put(task.getKey(), task.getTaskId(), task.getExecuteTime(), task.getPayload());
+                }
+            }
+            target.close();
+            if (journal != null) {
+                journal.close();
+            }
+            Files.move(compacting, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            MappedTaskJournal reopened = new MappedTaskJournal(journalPath, journalRegionBytes());
+            reopened.replay(NOOP_HANDLER);
+            journal = reopened;
+            log.info("内存队列存储日志已压缩 {} -> {}", before, reopened.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int journalRegionBytes() {
+        return (int) (scheduleProperties.getStore().getJournalRegionMb() * MB);
+    }
+
+    /**
+     * 配置了日志文件时，写操作持有日志的读锁，避免和压缩同时进行
+     *
+     * @param action
+     * @param <T>
+     * @return
+     */
+    private <T> T write(Supplier<T> action) {
+        if (journal == null) {
+            return action.get();
+        }
+        Lock lock = journalLock.readLock();
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private MemoryQueue queue(String key) {
+        return queues.computeIfAbsent(key, k -> new MemoryQueue());
+    }
+
+    private static final MappedTaskJournal.Handler NOOP_HANDLER = new MappedTaskJournal.Handler() {
+        @Override
+        public void put(String key, String taskId, long executeTime, byte[] payload) {
+        }
+
+        @Override
+        public void delete(String key, String taskId) {
+        }
+
+        @Override
+        public void watermark(String field, String value) {
+        }
+
+        @Override
+        public void clear() {
+        }
+    };
+
+    /**
+     * 一个队列，除了future和inflight的跳表之外，其余结构只在持有队列锁时访问
+     */
+    private static class MemoryQueue {
+
+        /**
+         * 任务数据  key:任务id
+         */
+        private final Map<String, byte[]> payloads = new HashMap<>();
+
+        /**
+         * 可以拉取的任务id，左侧放入右侧取出，与redis的list一致
+         */
+        private final Deque<String> ready = new ArrayDeque<>();
+
+        /**
+         * 未到期的任务，按执行时间排序
+         */
+        private final ConcurrentSkipListSet<Scored> future = new ConcurrentSkipListSet<>();
+
+        private final Map<String, Long> futureTimes = new HashMap<>();
+
+        /**
+         * 等待确认的任务，按租约到期时间排序
+         */
+        private final ConcurrentSkipListSet<Scored> inflight = new ConcurrentSkipListSet<>();
+
+        private final Map<String, Long> inflightDeadlines = new HashMap<>();
+
+        private void addFuture(String taskId, long executeTime) {
+            removeFuture(taskId);
+            futureTimes.put(taskId, executeTime);
+            future.add(new Scored(executeTime, taskId));
+        }
+
+        private boolean removeFuture(String taskId) {
+            Long executeTime = futureTimes.remove(taskId);
+            return executeTime != null && future.remove(new Scored(executeTime, taskId));
+        }
+
+        private void addInflight(String taskId, long deadline) {
+            removeInflight(taskId);
+            inflightDeadlines.put(taskId, deadline);
+            inflight.add(new Scored(deadline, taskId));
+        }
+
+        private void removeInflight(String taskId) {
+            Long deadline = inflightDeadlines.remove(taskId);
+            if (deadline != null) {
+                inflight.remove(new Scored(deadline, taskId));
+            }
+        }
+
+        /**
+         * 复制所有未完成的任务，ready和inflight中的任务按已到期返回，调用时需要持有队列锁
+         *
+         * @param key
+         * @return
+         */
+        private List<StoredTask> snapshot(String key) {
+            List<StoredTask> tasks = new ArrayList<>(payloads.size());
+            for (Map.Entry<String, byte[]> task : payloads.entrySet()) {
+                Long executeTime = futureTimes.get(task.getKey());
+                tasks.add(new StoredTask(key, task.getKey(), task.getValue(), executeTime == null ? 0 : executeTime));
+            }
+            return tasks;
+        }
+
+        private void clear() {
+            payloads.clear();
+            ready.clear();
+            future.clear();
+            futureTimes.clear();
+            inflight.clear();
+            inflightDeadlines.clear();
+        }
+
+        /**
+         * 到期的任务按执行时间先后放入ready的右侧
+         *
+         * @param now
+         * @return 移动的数量
+         */
+        private long promoteDue(long now) {
+            long moved = 0;
+            while (!future.isEmpty() && future.first().score <= now) {
+                Scored scored = future.pollFirst();
+                futureTimes.remove(scored.taskId);
+                ready.addLast(scored.taskId);
+                moved++;
+            }
+            return moved;
+        }
+    }
+
+    private static class Scored implements Comparable<Scored> {
+
+        private final long score;
+
+        private final String taskId;
+
+        private Scored(long score, String taskId) {
+            this.score = score;
+            this.taskId = taskId;
+        }
+
+        @Override
+        public int compareTo(Scored o) {
+            int c = Long.compare(score, o.score);
+            return c != 0 ? c : taskId.compareTo(o.taskId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Scored && compareTo((Scored) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(score) * 31 + taskId.hashCode();
+        }
+    }
+
+    private static class LockEntry {
+
+        private final String token;
+
+        private final long expireAt;
+
+        private LockEntry(String token, long expireAt) {
+            this.token = token;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.heima.schedule.store;
+
+import lombok.Data;
+
+/**
+ * 队列中的任务数量
+ */
+@Data
+public class QueueDepth {
+
+    /**
+     * 可以拉取的任务，包含已经取消、拉取时丢弃的任务id
+     */
+    private long ready;
+
+    /**
+     * 未到期的任务
+     */
+    private long future;
+
+    /**
+     * 等待确认的任务
+     */
+    private long inflight;
+
+    public void add(QueueDepth other) {
+        ready += other.ready;
+        future += other.future;
+        inflight += other.inflight;
+    }
+}
@@ -0,0 +1,205 @@
+package com.heima.schedule.store;
+
+import com.heima.common.constants.ScheduleConstants;
+import com.heima.common.redis.CacheService;
+import com.heima.schedule.shard.TaskShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于redis的队列存储，多个实例共享
+ * ready:topic_的list  future:future_的zset  inflight:inflight_的zset  任务数据:task_data_的hash，值为TaskCodec编码的二进制
+ * 多个key的操作由CacheService中的lua脚本原子执行
+ */
+@Component
+@ConditionalOnProperty(prefix = "schedule.store", name = "type", havingValue = "redis", matchIfMissing = true)
+@Slf4j
+public class RedisTaskQueueStore implements TaskQueueStore {
+
+    @Autowired
+    private CacheService cacheService;
+
+    @Autowired
+    private TaskShardRouter taskShardRouter;
+
+    @Override
+    public void addReady(String key, String taskId, byte[] payload) {
+        cacheService.hPutBytes(ScheduleConstants.DATA + key, taskId, payload);
+        cacheService.lLeftPush(ScheduleConstants.TOPIC + key, taskId);
+    }
+
+    @Override
+    public void addFuture(String key, String taskId, byte[] payload, long executeTime) {
+        cacheService.hPutBytes(ScheduleConstants.DATA + key, taskId, payload);
+        cacheService.zAdd(ScheduleConstants.FUTURE + key, taskId, executeTime);
+    }
+
+    @Override
+    public void addFutureBatch(List<StoredTask> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        Map<String, Map<String, StoredTask>> byKey = new HashMap<>();
+        for (StoredTask task : tasks) {
+            byKey.computeIfAbsent(task.getKey(), k -> new HashMap<>()).put(task.getTaskId(), task);
+        }
+        //先写任务数据再写任务id，队列中的任务id总能取到数据，已经有数据的任务不再写入id
+        Map<String, Set<ZSetOperations.TypedTuple<String>>> batch = new HashMap<>();
+        for (Map.Entry<String, Map<String, StoredTask>> entry : byKey.entrySet()) {
+            Map<String, byte[]> payloads = new HashMap<>();
+            for (StoredTask task : entry.getValue().values()) {
+                payloads.put(task.getTaskId(), task.getPayload());
+            }
+            for (String taskId : cacheService.hPutAllBytesIfAbsent(ScheduleConstants.DATA + entry.getKey(), payloads)) {
+                batch.computeIfAbsent(ScheduleConstants.FUTURE + entry.getKey(), k -> new HashSet<>())
+                        .add(new DefaultTypedTuple<>(taskId, (double) entry.getValue().get(taskId).getExecuteTime()));
+            }
+        }
+        if (!batch.isEmpty()) {
+            cacheService.zAddWithPipeline(batch);
+        }
+    }
+
+    @Override
+    public void remove(String key, String taskId) {
+        cacheService.hDelete(ScheduleConstants.DATA + key, taskId);
+        cacheService.zRemove(ScheduleConstants.FUTURE + key, taskId);
+        cacheService.zRemove(ScheduleConstants.INFLIGHT + key, taskId);
+    }
+
+    @Override
+    public List<byte[]> pop(String key, int count) {
+        return cacheService.lRightPopBatchWithHashBytes(ScheduleConstants.TOPIC + key, ScheduleConstants.DATA + key, count);
+    }
+
+    @Override
+    public Map<String, byte[]> lease(String key, int count, long deadline) {
+        return cacheService.lRightPopBatchLeaseBytes(ScheduleConstants.TOPIC + key, ScheduleConstants.DATA + key,
+                ScheduleConstants.INFLIGHT + key, count, deadline);
+    }
+
+    @Override
+    public long ack(String key, Collection<String> taskIds) {
+        return cacheService.zRemoveWithHash(ScheduleConstants.INFLIGHT + key, ScheduleConstants.DATA + key, taskIds);
+    }
+
+    @Override
+    public boolean moveToReady(String key, String taskId) {
+        return cacheService.zMoveToList(ScheduleConstants.FUTURE + key, ScheduleConstants.TOPIC + key, taskId);
+    }
+
+    @Override
+    public long migrateDue(int shard, long now) {
+        return cacheService.zMigrateToListByPattern(ScheduleConstants.FUTURE, ScheduleConstants.TOPIC,
+                taskShardRouter.shardPattern(shard), now);
+    }
+
+    @Override
+    public long requeueExpired(int shard, long now) {
+        return cacheService.zMigrateToListByPattern(ScheduleConstants.INFLIGHT, ScheduleConstants.TOPIC,
+                taskShardRouter.shardPattern(shard), now);
+    }
+
+    @Override
+    public List<StoredTask> futureBefore(long maxTime) {
+        List<StoredTask> tasks = new ArrayList<>();
+        Set<String> futureKeys = cacheService.scan(ScheduleConstants.FUTURE + "*");
+        for (String futureKey : futureKeys) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = cacheService.zRangeByScoreWithScores(futureKey, 0, maxTime);
+            if (tuples == null) {
+                continue;
+            }
+            String key = futureKey.substring(ScheduleConstants.FUTURE.length());
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                if (tuple.getValue() != null && tuple.getScore() != null) {
+                    tasks.add(new StoredTask(key, tuple.getValue(), null, tuple.getScore().longValue()));
+                }
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public Map<String, QueueDepth> depths() {
+        Map<String, QueueDepth> depths = new HashMap<>();
+        for (String topicKey : cacheService.scan(ScheduleConstants.TOPIC + "*")) {
+            Long size = cacheService.lLen(topicKey);
+            depths.computeIfAbsent(topicKey.substring(ScheduleConstants.TOPIC.length()), k -> new QueueDepth())
+                    .setReady(size == null ? 0 : size);
+        }
+        for (String futureKey : cacheService.scan(ScheduleConstants.FUTURE + "*")) {
+            Long size = cacheService.zZCard(futureKey);
+            depths.computeIfAbsent(futureKey.substring(ScheduleConstants.FUTURE.length()), k -> new QueueDepth())
+                    .setFuture(size == null ? 0 : size);
+        }
+        for (String inflightKey : cacheService.scan(ScheduleConstants.INFLIGHT + "*")) {
+            Long size = cacheService.zZCard(inflightKey);
+            depths.computeIfAbsent(inflightKey.substring(ScheduleConstants.INFLIGHT.length()), k -> new QueueDepth())
+                    .setInflight(size == null ? 0 : size);
+        }
+        return depths;
+    }
+
+    @Override
+    public void clear() {
+        Set<String> topicKeys = cacheService.scan(ScheduleConstants.TOPIC + "*");
+        Set<String> futureKeys = cacheService.scan(ScheduleConstants.FUTURE + "*");
+        Set<String> inflightKeys = cacheService.scan(ScheduleConstants.INFLIGHT + "*");
+        Set<String> dataKeys = cacheService.scan(ScheduleConstants.DATA + "*");
+        cacheService.delete(topicKeys);
+        cacheService.delete(futureKeys);
+        cacheService.delete(inflightKeys);
+        cacheService.delete(dataKeys);
+    }
+
+    @Override
+    public Map<String, String> getWatermark() {
+        Map<String, String> watermark = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : cacheService.hGetAll(ScheduleConstants.RELOAD_WATERMARK).entrySet()) {
+            watermark.put(entry.getKey().toString(), entry.getValue().toString());
+        }
+        return watermark;
+    }
+
+    @Override
+    public void putWatermark(Map<String, String> fields) {
+        cacheService.hPutAll(ScheduleConstants.RELOAD_WATERMARK, fields);
+    }
+
+    @Override
+    public void clearWatermark() {
+        cacheService.delete(ScheduleConstants.RELOAD_WATERMARK);
+    }
+
+    @Override
+    public String tryLock(String name, long expire) {
+        return cacheService.tryLock(name, expire);
+    }
+
+    @Override
+    public void unLock(String name, String token) {
+        cacheService.unLock(name, token);
+    }
+
+    /**
+     * 通过redis发布，所有实例都能收到
+     *
+     * @param logicalKey
+     */
+    @Override
+    public void publishReady(String logicalKey) {
+        cacheService.publish(ScheduleConstants.READY_CHANNEL, logicalKey);
+    }
+}
@@ -0,0 +1,31 @@
+package com.heima.schedule.store;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 队列中的一个任务
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredTask {
+
+    /**
+     * 队列key(不含前缀)
+     */
+    private String key;
+
+    private String taskId;
+
+    /**
+     * 编码后的任务，见TaskCodec
+     */
+    private byte[] payload;
+
+    /**
+     * 执行时间
+     */
+    private long executeTime;
+}
@@ -0,0 +1,168 @@
+package com.heima.schedule.store;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 延迟任务队列存储
+ * 数据库仍然是任务的持久化存储，这里只保存未来一段时间内的任务以及拉取用到的队列
+ * 每个队列key(不含前缀，见TaskShardRouter)包含三部分：
+ * ready:可以拉取的任务  future:按执行时间排序的未到期任务  inflight:租约模式拉取后等待确认的任务，按租约到期时间排序
+ * 任务数据按任务id单独保存，队列中只有任务id，删除任务数据后队列中剩下的任务id在拉取时直接丢弃
+ */
+public interface TaskQueueStore {
+
+    /**
+     * 添加可以立即拉取的任务
+     *
+     * @param key     队列key
+     * @param taskId
+     * @param payload 编码后的任务，见TaskCodec
+     */
+    void addReady(String key, String taskId, byte[] payload);
+
+    /**
+     * 添加未到期的任务
+     *
+     * @param key
+     * @param taskId
+     * @param payload
+     * @param executeTime 执行时间
+     */
+    void addFuture(String key, String taskId, byte[] payload, long executeTime);
+
+    /**
+     * 批量添加未到期的任务，先写任务数据再写任务id
+     * 已经有任务数据的任务(ready、future、租约中)跳过，重复同步不会重复派发
+     *
+     * @param tasks
+     */
+    void addFutureBatch(List<StoredTask> tasks);
+
+    /**
+     * 删除任务数据以及future、inflight中的任务id
+     *
+     * @param key
+     * @param taskId
+     */
+    void remove(String key, String taskId);
+
+    /**
+     * 从ready中按先进先出的顺序弹出最多count个任务，同时删除任务数据
+     *
+     * @param key
+     * @param count
+     * @return 编码后的任务
+     */
+    List<byte[]> pop(String key, int count);
+
+    /**
+     * 从ready中弹出最多count个任务放入inflight，任务数据保留到确认为止
+     *
+     * @param key
+     * @param count
+     * @param deadline 租约到期时间
+     * @return 任务id和编码后的任务，按弹出顺序排列
+     */
+    Map<String, byte[]> lease(String key, int count, long deadline);
+
+    /**
+     * 删除inflight中的任务id以及任务数据
+     *
+     * @param key
+     * @param taskIds
+     * @return 确认成功的数量
+     */
+    long ack(String key, Collection<String> taskIds);
+
+    /**
+     * 把一个未到期的任务移动到ready，供时间轮到期派发
+     *
+     * @param key
+     * @param taskId
+     * @return 任务还在future中并且移动成功
+     */
+    boolean moveToReady(String key, String taskId);
+
+    /**
+     * 把一个分片中所有到期的future任务移动到ready
+     *
+     * @param shard
+     * @param now
+     * @return 移动的数量
+     */
+    long migrateDue(int shard, long now);
+
+    /**
+     * 把一个分片中租约到期的inflight任务放回ready，下次拉取时优先返回
+     *
+     * @param shard
+     * @param now
+     * @return 放回的数量
+     */
+    long requeueExpired(int shard, long now);
+
+    /**
+     * 执行时间在maxTime之前的未到期任务，不包含任务数据
+     *
+     * @param maxTime
+     * @return
+     */
+    List<StoredTask> futureBefore(long maxTime);
+
+    /**
+     * 各队列中的任务数量
+     *
+     * @return key:队列key
+     */
+    Map<String, QueueDepth> depths();
+
+    /**
+     * 清空所有队列和任务数据
+     */
+    void clear();
+
+    /**
+     * 数据库同步进度
+     *
+     * @return
+     */
+    Map<String, String> getWatermark();
+
+    /**
+     * 更新数据库同步进度中的字段
+     *
+     * @param fields
+     */
+    void putWatermark(Map<String, String> fields);
+
+    /**
+     * 删除数据库同步进度
+     */
+    void clearWatermark();
+
+    /**
+     * 加锁
+     *
+     * @param name
+     * @param expire 毫秒
+     * @return 解锁用的token，加锁失败返回null
+     */
+    String tryLock(String name, long expire);
+
+    /**
+     * 解锁，token不一致时不解锁
+     *
+     * @param name
+     * @param token
+     */
+    void unLock(String name, String token);
+
+    /**
+     * 通知等待中的订阅请求有任务就绪
+     *
+     * @param logicalKey type_priority，*表示所有队列
+     */
+    void publishReady(String logicalKey);
+}
@@ -0,0 +1,75 @@
+package com.heima.schedule.timer;
+
+/**
+ * 时间轮中的任务节点
+ * 同一个节点在降级(从高层时间轮下沉到低层时间轮)时会在不同的bucket之间移动
+ */
+public class TimerTaskEntry {
+
+    /**
+     * 到期时间 毫秒值
+     */
+    private final long expirationMs;
+
+    /**
+     * 按第一层时间轮的tick向上取整后的到期时间，保证任务不会早于expirationMs触发
+     */
+    final long deadlineMs;
+
+    /**
+     * 到期后需要执行的动作
+     */
+    private final Runnable task;
+
+    /**
+     * 是否已经取消
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * 当前所在的bucket
+     */
+    volatile TimerTaskList list;
+
+    TimerTaskEntry next;
+
+    TimerTaskEntry prev;
+
+    TimerTaskEntry(long expirationMs, long tickMs, Runnable task) {
+        this.expirationMs = expirationMs;
+        this.deadlineMs = tickMs > 1 ? expirationMs + tickMs - 1 : expirationMs;
+        this.task = task;
+    }
+
+    public long getExpirationMs() {
+        return expirationMs;
+    }
+
+    public Runnable getTask() {
+        return task;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 取消任务，并从所在的bucket中移除
+     */
+    public void cancel() {
+        cancelled = true;
+        remove();
+    }
+
+    /**
+     * 从所在的bucket中摘除
+     */
+    void remove() {
+        //节点可能正在被flush到其他bucket，循环直到彻底摘除
+        TimerTaskList currentList = list;
+        while (currentList != null) {
+            currentList.remove(this);
+            currentList = list;
+        }
+    }
+}
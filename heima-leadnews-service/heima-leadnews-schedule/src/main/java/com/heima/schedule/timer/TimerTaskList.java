@@ -0,0 +1,117 @@
+package com.heima.schedule.timer;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 时间轮的一个bucket，双向循环链表
+ * bucket本身作为DelayQueue的元素，只有bucket到期时ticker线程才会被唤醒
+ */
+class TimerTaskList implements Delayed {
+
+    private final AtomicInteger taskCounter;
+
+    /**
+     * 哨兵节点
+     */
+    private final TimerTaskEntry root = new TimerTaskEntry(-1L, 1L, null);
+
+    /**
+     * bucket的到期时间
+     */
+    private final AtomicLong expiration = new AtomicLong(-1L);
+
+    TimerTaskList(AtomicInteger taskCounter) {
+        this.taskCounter = taskCounter;
+        root.next = root;
+        root.prev = root;
+    }
+
+    /**
+     * 设置bucket的到期时间
+     *
+     * @param expirationMs
+     * @return 到期时间是否发生了变化  变化了说明bucket被复用，需要重新放入DelayQueue
+     */
+    boolean setExpiration(long expirationMs) {
+        return expiration.getAndSet(expirationMs) != expirationMs;
+    }
+
+    long getExpiration() {
+        return expiration.get();
+    }
+
+    /**
+     * 添加任务节点
+     *
+     * @param entry
+     */
+    void add(TimerTaskEntry entry) {
+        boolean done = false;
+        while (!done) {
+            //节点如果还挂在其他bucket上，先摘除
+            entry.remove();
+            synchronized (this) {
+                synchronized (entry) {
+                    if (entry.list == null) {
+                        TimerTaskEntry tail = root.prev;
+                        entry.next = root;
+                        entry.prev = tail;
+                        entry.list = this;
+                        tail.next = entry;
+                        root.prev = entry;
+                        taskCounter.incrementAndGet();
+                        done = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 移除任务节点
+     *
+     * @param entry
+     */
+    synchronized void remove(TimerTaskEntry entry) {
+        synchronized (entry) {
+            if (entry.list == this) {
+                entry.next.prev = entry.prev;
+                entry.prev.next = entry.next;
+                entry.next = null;
+                entry.prev = null;
+                entry.list = null;
+                taskCounter.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 清空bucket，并把所有节点交给consumer处理(执行或者重新插入低层时间轮)
+     *
+     * @param consumer
+     */
+    synchronized void flush(Consumer<TimerTaskEntry> consumer) {
+        TimerTaskEntry head = root.next;
+        while (head != root) {
+            remove(head);
+            consumer.accept(head);
+            head = root.next;
+        }
+        expiration.set(-1L);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(Math.max(getExpiration() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+        TimerTaskList other = (TimerTaskList) o;
+        return Long.compare(getExpiration(), other.getExpiration());
+    }
+}
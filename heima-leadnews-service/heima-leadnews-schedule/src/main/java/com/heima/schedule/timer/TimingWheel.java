@@ -0,0 +1,101 @@
+package com.heima.schedule.timer;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分层时间轮
+ * 第一层每格tickMs，超出本层范围的任务交给上一层(每格为本层的一圈)，到期前逐层下沉
+ */
+class TimingWheel {
+
+    private final long tickMs;
+
+    private final int wheelSize;
+
+    /**
+     * 本层时间轮一圈的时长
+     */
+    private final long interval;
+
+    private final AtomicInteger taskCounter;
+
+    private final DelayQueue<TimerTaskList> queue;
+
+    private final TimerTaskList[] buckets;
+
+    /**
+     * 当前时间，tickMs的整数倍
+     */
+    private long currentTime;
+
+    /**
+     * 上一层时间轮，按需创建
+     */
+    private volatile TimingWheel overflowWheel;
+
+    TimingWheel(long tickMs, int wheelSize, long startMs, AtomicInteger taskCounter, DelayQueue<TimerTaskList> queue) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.taskCounter = taskCounter;
+        this.queue = queue;
+        this.buckets = new TimerTaskList[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new TimerTaskList(taskCounter);
+        }
+        this.currentTime = startMs - (startMs % tickMs);
+    }
+
+    /**
+     * 添加任务
+     *
+     * @param entry
+     * @return false 表示任务已取消或者已经到期，需要调用方直接执行
+     */
+    boolean add(TimerTaskEntry entry) {
+        long expiration = entry.deadlineMs;
+        if (entry.isCancelled()) {
+            return false;
+        } else if (expiration < currentTime + tickMs) {
+            //已经到期
+            return false;
+        } else if (expiration < currentTime + interval) {
+            //放入本层对应的bucket
+            long virtualId = expiration / tickMs;
+            TimerTaskList bucket = buckets[(int) (virtualId % wheelSize)];
+            bucket.add(entry);
+            //bucket到期时间变化了，重新放入延迟队列
+            if (bucket.setExpiration(virtualId * tickMs)) {
+                queue.offer(bucket);
+            }
+            return true;
+        } else {
+            //超出本层范围，交给上一层
+            if (overflowWheel == null) {
+                addOverflowWheel();
+            }
+            return overflowWheel.add(entry);
+        }
+    }
+
+    /**
+     * 推进时钟
+     *
+     * @param timeMs
+     */
+    void advanceClock(long timeMs) {
+        if (timeMs >= currentTime + tickMs) {
+            currentTime = timeMs - (timeMs % tickMs);
+            if (overflowWheel != null) {
+                overflowWheel.advanceClock(currentTime);
+            }
+        }
+    }
+
+    private synchronized void addOverflowWheel() {
+        if (overflowWheel == null) {
+            overflowWheel = new TimingWheel(interval, wheelSize, currentTime, taskCounter, queue);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.heima.schedule.timer;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于分层时间轮的定时器
+ * 添加、取消任务都是O(1)，ticker线程只在bucket到期时被唤醒，不会空转
+ */
+public class WheelTimer {
+
+    private final DelayQueue<TimerTaskList> delayQueue = new DelayQueue<>();
+
+    private final AtomicInteger taskCounter = new AtomicInteger(0);
+
+    private final TimingWheel timingWheel;
+
+    private final ExecutorService taskExecutor;
+
+    private final Thread ticker;
+
+    /**
+     * 添加任务时加读锁，推进时钟时加写锁
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final long tickMs;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param name          线程名称前缀
+     * @param tickMs        第一层时间轮每格的时长
+     * @param wheelSize     每层时间轮的格数
+     * @param workerThreads 执行到期任务的线程数
+     */
+    public WheelTimer(String name, long tickMs, int wheelSize, int workerThreads) {
+        this.tickMs = tickMs;
+        this.timingWheel = new TimingWheel(tickMs, wheelSize, System.currentTimeMillis(), taskCounter, delayQueue);
+        AtomicInteger workerIndex = new AtomicInteger(0);
+        this.taskExecutor = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread thread = new Thread(r, name + "-worker-" + workerIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker = new Thread(() -> {
+            while (running) {
+                try {
+                    advanceClock(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }, name + "-ticker");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * 添加定时任务
+     *
+     * @param expirationMs 到期时间 毫秒值
+     * @param task         到期后执行的动作
+     * @return 任务节点，可以用来取消任务
+     */
+    public TimerTaskEntry schedule(long expirationMs, Runnable task) {
+        TimerTaskEntry entry = new TimerTaskEntry(expirationMs, tickMs, task);
+        lock.readLock().lock();
+        try {
+            addTimerTaskEntry(entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return entry;
+    }
+
+    private void addTimerTaskEntry(TimerTaskEntry entry) {
+        if (!timingWheel.add(entry)) {
+            //已经到期并且没有取消，直接执行
+            if (!entry.isCancelled()) {
+                taskExecutor.submit(entry.getTask());
+            }
+        }
+    }
+
+    /**
+     * 推进时钟，处理所有到期的bucket
+     *
+     * @param timeoutMs 没有到期bucket时最多等待的时长
+     * @return 是否处理了到期的bucket
+     * @throws InterruptedException
+     */
+    boolean advanceClock(long timeoutMs) throws InterruptedException {
+        TimerTaskList bucket = delayQueue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (bucket == null) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            while (bucket != null) {
+                timingWheel.advanceClock(bucket.getExpiration());
+                //到期的节点被执行，高层的节点下沉到低层时间轮
+                bucket.flush(this::addTimerTaskEntry);
+                bucket = delayQueue.poll();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * 时间轮中等待到期的任务数量
+     *
+     * @return
+     */
+    public int size() {
+        return taskCounter.get();
+    }
+
+    /**
+     * 关闭定时器
+     */
+    public void shutdown() {
+        running = false;
+        ticker.interrupt();
+        taskExecutor.shutdown();
+    }
+}
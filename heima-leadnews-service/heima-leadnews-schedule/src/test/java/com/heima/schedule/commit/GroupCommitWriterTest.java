@@ -0,0 +1,124 @@
+package com.heima.schedule.commit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitWriterTest {
+
+    @Test
+    void mergeConcurrentRequests() throws Exception {
+        List<List<Long>> batches = new CopyOnWriteArrayList<>();
+        GroupCommitWriter<Long> writer = new GroupCommitWriter<>("test", 1000, 50, batches::add);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            futures.add(writer.submit(Collections.singletonList(i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        //100个请求在等待时间内合并成很少的几批
+        assertTrue(batches.size() < 10);
+        assertEquals(100, batches.stream().mapToInt(List::size).sum());
+        writer.shutdown();
+    }
+
+    @Test
+    void splitByMaxBatchSize() throws Exception {
+        List<List<Long>> batches = new CopyOnWriteArrayList<>();
+        GroupCommitWriter<Long> writer = new GroupCommitWriter<>("test", 10, 1000, batches::add);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (long i = 0; i < 30; i++) {
+            futures.add(writer.submit(Collections.singletonList(i)));
+        }
+        //攒满一批立即写入，不等待lingerMs
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(500, TimeUnit.MILLISECONDS);
+
+        assertEquals(3, batches.size());
+        writer.shutdown();
+    }
+
+    @Test
+    void isolateFailedRequest() throws Exception {
+        List<List<Long>> batches = new CopyOnWriteArrayList<>();
+        GroupCommitWriter<Long> writer = new GroupCommitWriter<>("test", 100, 200, batch -> {
+            if (batch.contains(-1L)) {
+                throw new IllegalArgumentException("bad item");
+            }
+            batches.add(batch);
+        });
+
+        CompletableFuture<Void> first = writer.submit(Collections.singletonList(1L));
+        CompletableFuture<Void> bad = writer.submit(Collections.singletonList(-1L));
+        CompletableFuture<Void> second = writer.submit(Collections.singletonList(2L));
+
+        //合并的一批失败后逐个请求重试，只有有问题的请求失败
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+        assertEquals(2, batches.stream().mapToInt(List::size).sum());
+        writer.shutdown();
+    }
+
+    @Test
+    void failWholeBatch() throws Exception {
+        GroupCommitWriter<Long> writer = new GroupCommitWriter<>("test", 100, 10, batch -> {
+            throw new IllegalStateException("db down");
+        });
+
+        CompletableFuture<Void> future = writer.submit(Collections.singletonList(1L));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        writer.shutdown();
+
+        //关闭后提交的请求直接失败
+        assertTrue(writer.submit(Collections.singletonList(2L)).isCompletedExceptionally());
+    }
+
+    @Test
+    void completeEveryRequestRacingShutdown() throws Exception {
+        List<Long> written = new CopyOnWriteArrayList<>();
+        GroupCommitWriter<Long> writer = new GroupCommitWriter<>("test", 100, 1, written::addAll);
+
+        List<CompletableFuture<Void>> futures = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long base = t * 100000L;
+            Thread thread = new Thread(() -> {
+                for (long i = 0; i < 20000; i++) {
+                    futures.add(writer.submit(Collections.singletonList(base + i)));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        TimeUnit.MILLISECONDS.sleep(5);
+        writer.shutdown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //每个请求都结束，写入成功或者因为已经停止而失败，不会一直挂起
+        int succeeded = 0;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                succeeded++;
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertEquals(succeeded, written.size());
+        assertThrows(ExecutionException.class, () -> writer.submit(Collections.singletonList(-1L)).get(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,44 @@
+package com.heima.schedule.fair;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmoothWeightedRoundRobinTest {
+
+    @Test
+    void allocateByWeight() {
+        SmoothWeightedRoundRobin<String> rr = new SmoothWeightedRoundRobin<>();
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("news", 10);
+        weights.put("retry", 1);
+
+        Map<String, Integer> allocation = rr.allocate(weights, 110);
+        assertEquals(100, allocation.get("news"));
+        assertEquals(10, allocation.get("retry"));
+    }
+
+    @Test
+    void lowWeightNeverStarvesAcrossCalls() {
+        SmoothWeightedRoundRobin<String> rr = new SmoothWeightedRoundRobin<>();
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("news", 10);
+        weights.put("retry", 1);
+
+        //每次只拉取1个，权重较小的队列在一轮内也会被选中
+        int retry = 0;
+        for (int i = 0; i < 11; i++) {
+            retry += rr.allocate(weights, 1).getOrDefault("retry", 0);
+        }
+        assertEquals(1, retry);
+    }
+
+    @Test
+    void emptyCandidates() {
+        SmoothWeightedRoundRobin<String> rr = new SmoothWeightedRoundRobin<>();
+        assertTrue(rr.allocate(new LinkedHashMap<>(), 10).isEmpty());
+    }
+}
@@ -0,0 +1,103 @@
+package com.heima.schedule.metrics;
+
+import com.heima.model.common.enums.TaskTypeEnum;
+import com.heima.model.schedule.dtos.Task;
+import com.heima.schedule.config.ScheduleProperties;
+import com.heima.schedule.dispatch.TaskDispatchEngine;
+import com.heima.schedule.shard.TaskShardRouter;
+import com.heima.schedule.store.MemoryTaskQueueStore;
+import com.heima.schedule.store.QueueDepth;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskMetricsTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private MemoryTaskQueueStore store;
+
+    private TaskMetrics metrics() throws Exception {
+        ScheduleProperties properties = new ScheduleProperties();
+        properties.getShard().setCount(2);
+        TaskShardRouter router = new TaskShardRouter();
+        ReflectionTestUtils.setField(router, "scheduleProperties", properties);
+
+        store = new MemoryTaskQueueStore();
+        ReflectionTestUtils.setField(store, "scheduleProperties", properties);
+        ReflectionTestUtils.setField(store, "taskShardRouter", router);
+        ReflectionTestUtils.setField(store, "eventPublisher", (ApplicationEventPublisher) event -> {
+        });
+        store.start();
+
+        TaskMetrics metrics = new TaskMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", registry);
+        ReflectionTestUtils.setField(metrics, "taskQueueStore", store);
+        ReflectionTestUtils.setField(metrics, "taskDispatchEngine", new TaskDispatchEngine());
+        ReflectionTestUtils.setField(metrics, "taskShardRouter", router);
+        metrics.init();
+        return metrics;
+    }
+
+    private static byte[] bytes(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Task task(int type, int priority, long executeTime) {
+        Task task = new Task();
+        task.setTaskType(type);
+        task.setPriority(priority);
+        task.setExecuteTime(executeTime);
+        return task;
+    }
+
+    @Test
+    void countByTaskType() throws Exception {
+        TaskMetrics metrics = metrics();
+        TaskTypeEnum scan = TaskTypeEnum.NEWS_SCAN_TIME;
+        metrics.added(Arrays.asList(task(scan.getTaskType(), scan.getPriority(), 0), task(1, 1, 0)));
+        metrics.cancelled(task(scan.getTaskType(), scan.getPriority(), 0));
+
+        assertEquals(1.0, registry.get("schedule.task.added").tag("type", scan.name()).counter().count());
+        assertEquals(1.0, registry.get("schedule.task.added").tag("type", "OTHER").counter().count());
+        assertEquals(1.0, registry.get("schedule.task.cancelled").tag("type", scan.name()).counter().count());
+        store.stop();
+    }
+
+    @Test
+    void recordDispatchLag() throws Exception {
+        TaskMetrics metrics = metrics();
+        TaskTypeEnum scan = TaskTypeEnum.NEWS_SCAN_TIME;
+        metrics.polled(Collections.singletonList(task(scan.getTaskType(), scan.getPriority(), System.currentTimeMillis() - 2000)));
+
+        double lag = registry.get("schedule.dispatch.lag").tag("type", scan.name()).timer().max(TimeUnit.MILLISECONDS);
+        assertTrue(lag >= 2000);
+        assertEquals(1.0, registry.get("schedule.task.polled").tag("type", scan.name()).counter().count());
+        store.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void mergeShardDepth() throws Exception {
+        TaskMetrics metrics = metrics();
+        store.addReady("1001_1_{0}", "1", bytes("a"));
+        store.addReady("1001_1_{1}", "2", bytes("b"));
+        store.addFuture("1001_1_{1}", "3", bytes("c"), System.currentTimeMillis() + 60000);
+        metrics.sampleDepth();
+
+        assertEquals(2.0, registry.get("schedule.queue.depth").tag("queue", "1001_1").tag("state", "topic").gauge().value());
+        Map<String, QueueDepth> queues = (Map<String, QueueDepth>) metrics.snapshot().get("queues");
+        assertEquals(1, queues.get("1001_1").getFuture());
+        store.stop();
+    }
+}
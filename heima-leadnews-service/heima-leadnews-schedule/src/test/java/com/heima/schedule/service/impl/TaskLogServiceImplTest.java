@@ -0,0 +1,188 @@
+package com.heima.schedule.service.impl;
+
+import com.heima.model.schedule.pojos.TaskinfoLogs;
+import com.heima.schedule.config.ScheduleProperties;
+import com.heima.schedule.mapper.TaskLogArchiveMapper;
+import com.heima.schedule.shard.TaskShardRouter;
+import com.heima.schedule.store.MemoryTaskQueueStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskLogServiceImplTest {
+
+    private final FakeArchiveMapper mapper = new FakeArchiveMapper();
+
+    private final ScheduleProperties properties = new ScheduleProperties();
+
+    private MemoryTaskQueueStore store;
+
+    private TaskLogServiceImpl service() throws Exception {
+        TaskShardRouter router = new TaskShardRouter();
+        ReflectionTestUtils.setField(router, "scheduleProperties", properties);
+        store = new MemoryTaskQueueStore();
+        ReflectionTestUtils.setField(store, "scheduleProperties", properties);
+        ReflectionTestUtils.setField(store, "taskShardRouter", router);
+        ReflectionTestUtils.setField(store, "eventPublisher", (ApplicationEventPublisher) event -> {
+        });
+        store.start();
+
+        TaskLogServiceImpl service = new TaskLogServiceImpl();
+        ReflectionTestUtils.setField(service, "taskLogArchiveMapper", mapper);
+        ReflectionTestUtils.setField(service, "taskQueueStore", store);
+        ReflectionTestUtils.setField(service, "scheduleProperties", properties);
+        ReflectionTestUtils.setField(service, "transactionTemplate", new TransactionTemplate(new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        }));
+        return service;
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        store.stop();
+    }
+
+    private static Date date(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar.getTime();
+    }
+
+    private void log(long taskId, Date executeTime, int status) {
+        TaskinfoLogs taskinfoLogs = new TaskinfoLogs();
+        taskinfoLogs.setTaskId(taskId);
+        taskinfoLogs.setExecuteTime(executeTime);
+        taskinfoLogs.setStatus(status);
+        mapper.table("taskinfo_logs").put(taskId, taskinfoLogs);
+    }
+
+    @Test
+    void archiveFinishedLogsByMonthInBatches() throws Exception {
+        properties.getArchive().setBatchSize(2);
+        properties.getArchive().setPauseMs(0);
+        TaskLogServiceImpl service = service();
+        log(1, date(2024, 1, 10), 1);
+        log(2, date(2024, 1, 20), 2);
+        log(3, date(2024, 2, 5), 1);
+        log(4, date(2024, 2, 6), 0);
+        log(5, new Date(), 1);
+
+        assertEquals(3, service.archive());
+        assertEquals(Arrays.asList(4L, 5L), new ArrayList<>(mapper.table("taskinfo_logs").keySet()));
+        assertEquals(Arrays.asList(1L, 2L), new ArrayList<>(mapper.table("taskinfo_logs_202401").keySet()));
+        assertEquals(Arrays.asList(3L), new ArrayList<>(mapper.table("taskinfo_logs_202402").keySet()));
+        assertEquals(0, service.archive());
+    }
+
+    @Test
+    void queryAcrossHotAndArchivedLogs() throws Exception {
+        properties.getArchive().setPauseMs(0);
+        TaskLogServiceImpl service = service();
+        log(1, date(2024, 1, 10), 1);
+        log(2, date(2024, 2, 5), 1);
+        log(3, date(2024, 3, 1), 0);
+        service.archive();
+
+        assertEquals(1L, service.getLog(1).getTaskId());
+        assertEquals(3L, service.getLog(3).getTaskId());
+        assertNull(service.getLog(9));
+
+        List<TaskinfoLogs> logs = service.listLogs(date(2024, 1, 15), date(2024, 4, 1), null, 10);
+        assertEquals(Arrays.asList(2L, 3L), logs.stream().map(TaskinfoLogs::getTaskId).collect(Collectors.toList()));
+        assertEquals(1, service.listLogs(date(2024, 1, 1), date(2024, 4, 1), null, 1).size());
+    }
+
+    /**
+     * 按表名保存日志的内存实现
+     */
+    private static class FakeArchiveMapper implements TaskLogArchiveMapper {
+
+        private final Map<String, Map<Long, TaskinfoLogs>> tables = new TreeMap<>();
+
+        Map<Long, TaskinfoLogs> table(String table) {
+            return tables.computeIfAbsent(table, k -> new TreeMap<>());
+        }
+
+        @Override
+        public List<TaskinfoLogs> selectArchivable(Date before, int limit) {
+            return table("taskinfo_logs").values().stream()
+                    .filter(l -> l.getStatus() != 0 && l.getExecuteTime().before(before))
+                    .sorted((a, b) -> a.getExecuteTime().compareTo(b.getExecuteTime()))
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public int createArchiveTable(String table) {
+            table(table);
+            return 0;
+        }
+
+        @Override
+        public int copyToArchive(String table, List<Long> taskIds) {
+            for (Long taskId : taskIds) {
+                table(table).put(taskId, table("taskinfo_logs").get(taskId));
+            }
+            return taskIds.size();
+        }
+
+        @Override
+        public int deleteArchived(List<Long> taskIds) {
+            int deleted = 0;
+            for (Long taskId : taskIds) {
+                if (table("taskinfo_logs").remove(taskId) != null) {
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+
+        @Override
+        public List<String> listArchiveTables() {
+            return tables.keySet().stream().filter(t -> !t.equals("taskinfo_logs")).collect(Collectors.toList());
+        }
+
+        @Override
+        public TaskinfoLogs selectFromTable(String table, long taskId) {
+            return table(table).get(taskId);
+        }
+
+        @Override
+        public List<TaskinfoLogs> selectRangeFromTable(String table, Date from, Date to, Integer status, int limit) {
+            return table(table).values().stream()
+                    .filter(l -> !l.getExecuteTime().before(from) && l.getExecuteTime().before(to))
+                    .filter(l -> status == null || status.equals(l.getStatus()))
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.heima.schedule.shard;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.heima.schedule.config.ScheduleProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskShardRouterTest {
+
+    private TaskShardRouter router(int shards) {
+        ScheduleProperties properties = new ScheduleProperties();
+        properties.getShard().setCount(shards);
+        TaskShardRouter router = new TaskShardRouter();
+        ReflectionTestUtils.setField(router, "scheduleProperties", properties);
+        return router;
+    }
+
+    @Test
+    void singleShardKeepsLegacyKey() {
+        TaskShardRouter router = router(1);
+        assertEquals("1001_1", router.queueKey(1001, 1, 123L));
+        assertEquals(Arrays.asList("1001_1"), router.queueKeys(1001, 1));
+        assertEquals("*", router.shardPattern(0));
+    }
+
+    @Test
+    void shardKeyRoundTrip() {
+        TaskShardRouter router = router(8);
+        long taskId = IdWorker.getId();
+        String key = router.queueKey(1001, 1, taskId);
+        assertEquals("1001_1_{" + router.shardOf(taskId) + "}", key);
+        assertEquals("1001_1", router.logicalKey(key));
+        assertTrue(router.queueKeys(1001, 1).contains(key));
+    }
+
+    @Test
+    void snowflakeIdsSpreadAcrossShards() {
+        TaskShardRouter router = router(8);
+        int[] counts = new int[8];
+        for (int i = 0; i < 8000; i++) {
+            counts[router.shardOf(IdWorker.getId())]++;
+        }
+        //每个分片都应该接近1000个
+        for (int count : counts) {
+            assertTrue(count > 700 && count < 1300, Arrays.toString(counts));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.heima.schedule.store;
+
+import com.heima.schedule.config.ScheduleProperties;
+import com.heima.schedule.shard.TaskShardRouter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryTaskQueueStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private MemoryTaskQueueStore store(String journalPath) throws Exception {
+        ScheduleProperties properties = new ScheduleProperties();
+        properties.getStore().setType("memory");
+        properties.getStore().setJournalPath(journalPath);
+        properties.getStore().setJournalRegionMb(1);
+        TaskShardRouter router = new TaskShardRouter();
+        ReflectionTestUtils.setField(router, "scheduleProperties", properties);
+
+        MemoryTaskQueueStore store = new MemoryTaskQueueStore();
+        ReflectionTestUtils.setField(store, "scheduleProperties", properties);
+        ReflectionTestUtils.setField(store, "taskShardRouter", router);
+        ReflectionTestUtils.setField(store, "eventPublisher", (ApplicationEventPublisher) event -> {
+        });
+        store.start();
+        return store;
+    }
+
+    private static byte[] bytes(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(Collection<byte[]> payloads) {
+        List<String> result = new ArrayList<>();
+        for (byte[] payload : payloads) {
+            result.add(new String(payload, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    @Test
+    void popInOrderAndSkipRemoved() throws Exception {
+        MemoryTaskQueueStore store = store("");
+        store.addReady("1001_1", "1", bytes("a"));
+        store.addReady("1001_1", "2", bytes("b"));
+        store.addReady("1001_1", "3", bytes("c"));
+        store.remove("1001_1", "2");
+
+        assertEquals(Arrays.asList("a", "c"), strings(store.pop("1001_1", 10)));
+        assertTrue(store.pop("1001_1", 10).isEmpty());
+        store.stop();
+    }
+
+    @Test
+    void dueFutureTaskCanBePolled() throws Exception {
+        MemoryTaskQueueStore store = store("");
+        long now = System.currentTimeMillis();
+        store.addFuture("1001_1", "1", bytes("due"), now - 1);
+        store.addFuture("1001_1", "2", bytes("later"), now + 60000);
+
+        //到期的任务不依赖时间轮，拉取时直接返回
+        assertEquals(Collections.singletonList("due"), strings(store.pop("1001_1", 10)));
+        List<StoredTask> future = store.futureBefore(now + 120000);
+        assertEquals(1, future.size());
+        assertEquals("2", future.get(0).getTaskId());
+
+        assertTrue(store.moveToReady("1001_1", "2"));
+        assertFalse(store.moveToReady("1001_1", "2"));
+        assertEquals(Collections.singletonList("later"), strings(store.pop("1001_1", 10)));
+        store.stop();
+    }
+
+    @Test
+    void expiredLeaseIsRequeued() throws Exception {
+        MemoryTaskQueueStore store = store("");
+        long now = System.currentTimeMillis();
+        store.addReady("1001_1", "1", bytes("a"));
+
+        assertEquals(Collections.singletonList("a"), strings(store.lease("1001_1", 10, now - 1).values()));
+        assertTrue(store.pop("1001_1", 10).isEmpty());
+        assertEquals(1, store.requeueExpired(0, now));
+
+        Map<String, byte[]> leased = store.lease("1001_1", 10, now + 60000);
+        assertEquals(Collections.singleton("1"), leased.keySet());
+        assertEquals(Collections.singletonList("a"), strings(leased.values()));
+        assertEquals(1, store.ack("1001_1", Collections.singletonList("1")));
+        assertEquals(0, store.requeueExpired(0, now + 120000));
+        assertTrue(store.pop("1001_1", 10).isEmpty());
+        store.stop();
+    }
+
+    @Test
+    void batchSkipsTasksAlreadyStored() throws Exception {
+        MemoryTaskQueueStore store = store("");
+        long now = System.currentTimeMillis();
+        store.addReady("1001_1", "1", bytes("a"));
+        store.addReady("1001_1", "2", bytes("b"));
+        assertEquals(Collections.singletonList("a"), strings(store.lease("1001_1", 1, now + 60000).values()));
+
+        //ready和租约中的任务不会被重复写入，只补回丢失的任务
+        store.addFutureBatch(Arrays.asList(new StoredTask("1001_1", "1", bytes("x"), now - 1),
+                new StoredTask("1001_1", "2", bytes("x"), now - 1),
+                new StoredTask("1001_1", "3", bytes("c"), now - 1)));
+        assertEquals(Arrays.asList("b", "c"), strings(store.pop("1001_1", 10)));
+        assertTrue(store.pop("1001_1", 10).isEmpty());
+        store.stop();
+    }
+
+    @Test
+    void recoverFromJournal() throws Exception {
+        String journal = dir.resolve("tasks.journal").toString();
+        long now = System.currentTimeMillis();
+        MemoryTaskQueueStore store = store(journal);
+        store.addReady("1001_1", "1", bytes("a"));
+        store.addFuture("1001_1", "2", bytes("b"), now + 60000);
+        store.addReady("1001_1", "3", bytes("c"));
+        store.lease("1001_1", 1, now + 60000);
+        store.pop("1001_1", 1);
+        store.putWatermark(Collections.singletonMap("horizon", "100"));
+        store.stop();
+
+        //已拉取的任务不恢复，租约中未确认的任务重新放回ready
+        MemoryTaskQueueStore recovered = store(journal);
+        assertEquals(Collections.singletonList("a"), strings(recovered.pop("1001_1", 10)));
+        assertEquals(1, recovered.futureBefore(now + 120000).size());
+        assertEquals("100", recovered.getWatermark().get("horizon"));
+        recovered.stop();
+    }
+
+    @Test
+    void compactWhileLeasingAndMigrating() throws Exception {
+        String journal = dir.resolve("tasks.journal").toString();
+        MemoryTaskQueueStore store = store(journal);
+        long now = System.currentTimeMillis();
+        int count = 2000;
+        for (int i = 0; i < count; i++) {
+            //一半已到期，一半在拉取时迁移
+            store.addFuture("1001_1", String.valueOf(i), bytes("t" + i), i % 2 == 0 ? now - 1 : now + 200);
+        }
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread compactor = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    ReflectionTestUtils.invokeMethod(store, "compact");
+                }
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        compactor.start();
+
+        //租约立即过期，不断在ready、inflight、future之间移动
+        long deadline = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < deadline && error.get() == null) {
+            long time = System.currentTimeMillis();
+            store.lease("1001_1", 50, time - 1);
+            store.migrateDue(0, time);
+            store.requeueExpired(0, time);
+            store.moveToReady("1001_1", String.valueOf(time % count));
+        }
+        running.set(false);
+        compactor.join();
+        assertNull(error.get());
+        store.stop();
+
+        //没有确认的任务一个都不少
+        MemoryTaskQueueStore recovered = store(journal);
+        assertEquals(count, recovered.pop("1001_1", count * 2).size());
+        recovered.stop();
+    }
+
+    @Test
+    void lockWithToken() throws Exception {
+        MemoryTaskQueueStore store = store("");
+        String token = store.tryLock("FUTURE_TASK_SYNC", 30000);
+        assertNotNull(token);
+        assertNull(store.tryLock("FUTURE_TASK_SYNC", 30000));
+
+        store.unLock("FUTURE_TASK_SYNC", "other");
+        assertNull(store.tryLock("FUTURE_TASK_SYNC", 30000));
+        store.unLock("FUTURE_TASK_SYNC", token);
+        assertNotNull(store.tryLock("FUTURE_TASK_SYNC", 30000));
+        store.stop();
+    }
+}
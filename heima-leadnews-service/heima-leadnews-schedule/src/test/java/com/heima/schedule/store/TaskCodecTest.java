@@ -0,0 +1,91 @@
+package com.heima.schedule.store;
+
+import com.alibaba.fastjson.JSON;
+import com.heima.common.protostuff.ProtostuffMessageCodec;
+import com.heima.model.common.dtos.ResponseResult;
+import com.heima.model.common.enums.TaskTypeEnum;
+import com.heima.model.schedule.dtos.Task;
+import com.heima.utils.common.TaskCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskCodecTest {
+
+    private Task task(long taskId) {
+        Task task = new Task();
+        task.setTaskId(taskId);
+        task.setTaskType(TaskTypeEnum.NEWS_SCAN_TIME.getTaskType());
+        task.setPriority(TaskTypeEnum.NEWS_SCAN_TIME.getPriority());
+        task.setExecuteTime(System.currentTimeMillis());
+        task.setParameters(new byte[]{10, (byte) 0xc8, 0x01, 0, -1});
+        return task;
+    }
+
+    @Test
+    void roundTripSmallerThanJson() {
+        Task task = task(1580000000000000000L);
+        byte[] bytes = TaskCodec.encode(task);
+
+        assertEquals(TaskCodec.VERSION_1, bytes[0]);
+        assertEquals(task, TaskCodec.decode(bytes));
+        assertTrue(bytes.length < JSON.toJSONBytes(task).length / 2);
+    }
+
+    @Test
+    void decodeLegacyJson() {
+        Task task = task(1L);
+        assertEquals(task, TaskCodec.decode(JSON.toJSONBytes(task)));
+    }
+
+    @Test
+    void skipUnknownFieldAndRejectUnknownVersion() {
+        Task task = task(2L);
+        byte[] bytes = TaskCodec.encode(task);
+        //新版本增加的字段6(varint)
+        byte[] newer = Arrays.copyOf(bytes, bytes.length + 2);
+        newer[bytes.length] = 6 << 3;
+        newer[bytes.length + 1] = 1;
+        assertEquals(task, TaskCodec.decode(newer));
+
+        bytes[0] = 2;
+        assertThrows(IllegalArgumentException.class, () -> TaskCodec.decode(bytes));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void messageRoundTrip() throws Exception {
+        List<Task> tasks = Arrays.asList(task(3L), task(4L));
+        byte[] bytes = ProtostuffMessageCodec.toByteArray(ResponseResult.okResult(tasks));
+
+        ResponseResult result = (ResponseResult) ProtostuffMessageCodec.read(new ByteArrayInputStream(bytes));
+        assertEquals(200, result.getCode());
+        assertEquals(tasks, result.getData());
+        assertEquals(Arrays.asList(3L, 4L), ProtostuffMessageCodec.read(new ByteArrayInputStream(
+                ProtostuffMessageCodec.toByteArray(Arrays.asList(3L, 4L)))));
+    }
+
+    @Test
+    void messageWithoutClassNames() throws Exception {
+        byte[] bytes = ProtostuffMessageCodec.toByteArray(ResponseResult.okResult(Collections.singletonList(task(5L))));
+        assertFalse(new String(bytes, StandardCharsets.ISO_8859_1).contains("com.heima"));
+
+        assertEquals(Collections.emptyList(), ProtostuffMessageCodec.read(new ByteArrayInputStream(
+                ProtostuffMessageCodec.toByteArray(Collections.emptyList()))));
+        assertEquals(task(6L).getTaskId(), ProtostuffMessageCodec.read(new ByteArrayInputStream(
+                ProtostuffMessageCodec.toByteArray(task(6L))), Task.class).getTaskId());
+        //和声明的类型不一致
+        assertThrows(IOException.class, () -> ProtostuffMessageCodec.read(new ByteArrayInputStream(
+                ProtostuffMessageCodec.toByteArray(Arrays.asList(3L, 4L))), Task.class));
+        //不在支持范围内的类型
+        assertThrows(IllegalArgumentException.class, () -> ProtostuffMessageCodec.toByteArray(new Date()));
+    }
+}
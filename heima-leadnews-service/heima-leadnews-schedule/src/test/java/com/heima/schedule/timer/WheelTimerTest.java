@@ -0,0 +1,61 @@
+package com.heima.schedule.timer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WheelTimerTest {
+
+    @Test
+    void fireInOrderAndNeverEarly() throws InterruptedException {
+        WheelTimer timer = new WheelTimer("test", 10, 8, 1);
+        List<Integer> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(3);
+        long now = System.currentTimeMillis();
+
+        //跨越多层时间轮
+        long[] executeTimes = {now + 30, now + 200, now + 1200};
+        for (int i = executeTimes.length - 1; i >= 0; i--) {
+            int index = i;
+            long executeTime = executeTimes[i];
+            timer.schedule(executeTime, () -> {
+                assertTrue(System.currentTimeMillis() >= executeTime);
+                fired.add(index);
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 1, 2), fired);
+        assertEquals(0, timer.size());
+        timer.shutdown();
+    }
+
+    @Test
+    void cancel() throws InterruptedException {
+        WheelTimer timer = new WheelTimer("test", 10, 8, 1);
+        CountDownLatch latch = new CountDownLatch(1);
+        TimerTaskEntry entry = timer.schedule(System.currentTimeMillis() + 100, latch::countDown);
+        entry.cancel();
+
+        assertFalse(latch.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(0, timer.size());
+        timer.shutdown();
+    }
+
+    @Test
+    void expiredTaskRunsImmediately() throws InterruptedException {
+        WheelTimer timer = new WheelTimer("test", 10, 8, 1);
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(System.currentTimeMillis() - 1000, latch::countDown);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        timer.shutdown();
+    }
+}
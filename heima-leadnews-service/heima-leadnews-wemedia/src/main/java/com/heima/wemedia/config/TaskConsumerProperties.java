@@ -0,0 +1,37 @@
+package com.heima.wemedia.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 延迟任务消费配置
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "wemedia.task")
+public class TaskConsumerProperties {
+
+    /**
+     * 订阅任务的线程数，每个线程同时挂起一个订阅请求
+     */
+    private int concurrency = 2;
+
+    /**
+     * 单次订阅最多拉取的任务数量
+     */
+    private int batchSize = 20;
+
+    /**
+     * 没有任务时订阅请求在服务端的最长等待时间，需要小于订阅客户端的读超时
+     */
+    private long waitMs = 30000;
+
+    /**
+     * 等待一批任务审核完成的最长时间，需要小于延迟服务的租约时间(schedule.lease.timeout-seconds)
+     * 超时未完成的任务不确认，租约到期后重新投递
+     */
+    private long scanTimeoutMs = 50000;
+}
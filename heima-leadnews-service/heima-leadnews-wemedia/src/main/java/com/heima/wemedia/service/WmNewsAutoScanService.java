@@ -1,10 +1,13 @@
 package com.heima.wemedia.service;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface WmNewsAutoScanService {
 
     /**
      * 自媒体文章审核
      * @param id 自媒体文章id
+     * @return 审核结束后完成，审核异常时异常完成
      */
-    public void autoScanWmNews(Integer id);
+    public CompletableFuture<Void> autoScanWmNews(Integer id);
 }
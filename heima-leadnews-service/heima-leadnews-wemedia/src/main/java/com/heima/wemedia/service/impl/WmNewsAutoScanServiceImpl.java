@@ -34,6 +34,7 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Service
@@ -75,7 +76,7 @@ public class WmNewsAutoScanServiceImpl implements WmNewsAutoScanService {
      */
     @Override
     @Async  // 标明当前方法是一个异步方法
-    public void autoScanWmNews(Integer id) {
+    public CompletableFuture<Void> autoScanWmNews(Integer id) {
         //1.查询自媒体文章
         WmNews wmNews = wmNewsMapper.selectById(id);
         if (wmNews == null) {
@@ -87,7 +88,7 @@ public class WmNewsAutoScanServiceImpl implements WmNewsAutoScanService {
 
             //自管理的敏感词过滤
             boolean isSensitive = handleSensitiveScan((String) textAndImages.get("content"), wmNews);
-            if (!isSensitive) return;
+            if (!isSensitive) return CompletableFuture.completedFuture(null);
 
             //2.审核文本内容-->阿里云接口
 //            boolean isTextScan = handleTextScan((String) textAndImages.get("content"), wmNews);
@@ -95,7 +96,7 @@ public class WmNewsAutoScanServiceImpl implements WmNewsAutoScanService {
 
             //3.审核图片-->阿里云接口(已隐去)
             boolean isImageScan =  handleImageScan((List<String>) textAndImages.get("images"), wmNews);
-            if(!isImageScan) return;
+            if(!isImageScan) return CompletableFuture.completedFuture(null);
 
             //4.审核成功，保存app端的相关文章数据
             ResponseResult responseResult = saveAppArticle(wmNews);
@@ -107,7 +108,7 @@ public class WmNewsAutoScanServiceImpl implements WmNewsAutoScanService {
             wmNews.setArticleId((Long) responseResult.getData());
             updateWmNews(wmNews, (short) 9, "审核成功");
         }
-
+        return CompletableFuture.completedFuture(null);
     }
 
 
@@ -2,20 +2,34 @@ package com.heima.wemedia.service.impl;
 
 import com.alibaba.fastjson.JSON;
 import com.heima.apis.schedule.IScheduleClient;
+import com.heima.apis.schedule.ITaskSubscribeClient;
 import com.heima.model.common.dtos.ResponseResult;
 import com.heima.model.common.enums.TaskTypeEnum;
 import com.heima.model.schedule.dtos.Task;
 import com.heima.model.wemedia.pojos.WmNews;
 import com.heima.utils.common.ProtostuffUtil;
+import com.heima.wemedia.config.TaskConsumerProperties;
 import com.heima.wemedia.service.WmNewsAutoScanService;
 import com.heima.wemedia.service.WmNewsTaskService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 @Slf4j
@@ -27,6 +41,16 @@ public class WmNewsTaskServiceImpl implements WmNewsTaskService {
     @Autowired
     private WmNewsAutoScanService wmNewsAutoScanService;
 
+    @Autowired
+    private ITaskSubscribeClient taskSubscribeClient;
+
+    @Autowired
+    private TaskConsumerProperties taskConsumerProperties;
+
+    private ExecutorService consumers;
+
+    private volatile boolean running = true;
+
     /**
      * 添加任务到延迟队列中
      *
@@ -52,18 +76,99 @@ public class WmNewsTaskServiceImpl implements WmNewsTaskService {
         log.info("添加任务到延迟服务中----end");
     }
 
+    /**
+     * 启动订阅线程，每个线程循环挂起一个订阅请求，没有任务时不产生任何调用
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startConsumers() {
+        int concurrency = taskConsumerProperties.getConcurrency();
+        consumers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            consumers.execute(() -> {
+                while (running) {
+                    try {
+                        scanNewsByTask();
+                    } catch (Exception e) {
+                        //延迟服务不可用时稍后重试
+                        log.error("订阅延迟任务异常", e);
+                        try {
+                            TimeUnit.SECONDS.sleep(1);
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                    }
+                }
+            });
+        }
+        log.info("延迟任务订阅线程已启动 concurrency={}", concurrency);
+    }
+
+    @PreDestroy
+    public void stopConsumers() {
+        running = false;
+        if (consumers != null) {
+            consumers.shutdownNow();
+        }
+    }
+
     /**
      * 消费延迟队列数据
      * 消费任务，审核文章
+     * 长轮询订阅，没有任务时请求在延迟服务挂起，任务到期后立即返回
+     * 租约模式拉取，等待这一批任务审核结束后只确认审核成功的任务，失败或超时的任务租约到期后重新投递
      */
-    @Scheduled(fixedRate = 1000)
     @Override
     public void scanNewsByTask() {
-        ResponseResult responseResult = scheduleClient.poll(TaskTypeEnum.NEWS_SCAN_TIME.getTaskType(), TaskTypeEnum.NEWS_SCAN_TIME.getPriority());
-        if (responseResult.getCode().equals(200) && responseResult.getData() != null) {
-            Task task = JSON.parseObject(JSON.toJSONString(responseResult.getData()), Task.class);
-            WmNews wmNews = ProtostuffUtil.deserialize(task.getParameters(), WmNews.class);
-            wmNewsAutoScanService.autoScanWmNews(wmNews.getId());
+        int type = TaskTypeEnum.NEWS_SCAN_TIME.getTaskType();
+        int priority = TaskTypeEnum.NEWS_SCAN_TIME.getPriority();
+        ResponseResult responseResult = taskSubscribeClient.subscribe(type, priority,
+                taskConsumerProperties.getBatchSize(), taskConsumerProperties.getWaitMs());
+        if (!responseResult.getCode().equals(200) || responseResult.getData() == null) {
+            return;
+        }
+        List<Task> tasks = toTasks(responseResult.getData());
+        Map<Long, CompletableFuture<Void>> scans = new LinkedHashMap<>();
+        for (Task task : tasks) {
+            try {
+                WmNews wmNews = ProtostuffUtil.deserialize(task.getParameters(), WmNews.class);
+                scans.put(task.getTaskId(), wmNewsAutoScanService.autoScanWmNews(wmNews.getId()));
+            } catch (Exception e) {
+                //审核线程池拒绝等提交失败
+                log.error("延迟任务提交审核异常 taskId={}", task.getTaskId(), e);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + taskConsumerProperties.getScanTimeoutMs();
+        List<Long> done = new ArrayList<>(scans.size());
+        for (Map.Entry<Long, CompletableFuture<Void>> scan : scans.entrySet()) {
+            try {
+                scan.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                done.add(scan.getKey());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (TimeoutException e) {
+                log.warn("延迟任务审核超时，等待重新投递 taskId={}", scan.getKey());
+            } catch (ExecutionException e) {
+                log.error("延迟任务审核文章异常 taskId={}", scan.getKey(), e.getCause());
+            }
+        }
+        if (!done.isEmpty()) {
+            scheduleClient.ack(type, priority, done);
+        }
+    }
+
+    /**
+     * application/x-protostuff传输时data已经是Task，json传输时需要转换
+     *
+     * @param data
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private List<Task> toTasks(Object data) {
+        if (data instanceof List && ((List<?>) data).stream().allMatch(Task.class::isInstance)) {
+            return (List<Task>) data;
         }
+        return JSON.parseArray(JSON.toJSONString(data), Task.class);
     }
 }
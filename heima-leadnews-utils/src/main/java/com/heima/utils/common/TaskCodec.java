@@ -0,0 +1,164 @@
+package com.heima.utils.common;
+
+import com.alibaba.fastjson.JSON;
+import com.heima.model.schedule.dtos.Task;
+import io.protostuff.Input;
+import io.protostuff.LinkedBuffer;
+import io.protostuff.Output;
+import io.protostuff.ProtostuffIOUtil;
+import io.protostuff.Schema;
+
+import java.io.IOException;
+
+/**
+ * 延迟任务的二进制编码，用于redis中的任务数据和feign的application/x-protostuff传输
+ * 格式：[byte 版本号][protostuff编码的字段]，parameters原样写入，不再经过base64
+ * 版本1的字段编号：1 taskId  2 taskType  3 priority  4 executeTime  5 parameters
+ * 新增字段只能使用新的编号，旧代码解码时跳过不认识的字段；编码方式不兼容时增加版本号
+ * 以'{'开头的数据是旧版本的json，按json解码
+ */
+public class TaskCodec {
+
+    public static final byte VERSION_1 = 1;
+
+    private static final Schema<Task> SCHEMA = new TaskSchema();
+
+    private static final ThreadLocal<LinkedBuffer> BUFFER = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(512));
+
+    /**
+     * 编码
+     *
+     * @param task
+     * @return
+     */
+    public static byte[] encode(Task task) {
+        LinkedBuffer buffer = BUFFER.get();
+        byte[] body;
+        try {
+            body = ProtostuffIOUtil.toByteArray(task, SCHEMA, buffer);
+        } finally {
+            buffer.clear();
+        }
+        byte[] bytes = new byte[body.length + 1];
+        bytes[0] = VERSION_1;
+        System.arraycopy(body, 0, bytes, 1, body.length);
+        return bytes;
+    }
+
+    /**
+     * 解码，兼容旧版本的json
+     *
+     * @param bytes
+     * @return
+     */
+    public static Task decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == '{') {
+            return JSON.parseObject(bytes, Task.class);
+        }
+        if (bytes[0] != VERSION_1) {
+            throw new IllegalArgumentException("unsupported task encoding version: " + bytes[0]);
+        }
+        Task task = SCHEMA.newMessage();
+        ProtostuffIOUtil.mergeFrom(bytes, 1, bytes.length - 1, task, SCHEMA);
+        return task;
+    }
+
+    /**
+     * 任务的protostuff schema，字段编号固定，供其他编码方式复用
+     *
+     * @return
+     */
+    public static Schema<Task> schema() {
+        return SCHEMA;
+    }
+
+    private static class TaskSchema implements Schema<Task> {
+
+        private static final String[] FIELD_NAMES = {null, "taskId", "taskType", "priority", "executeTime", "parameters"};
+
+        @Override
+        public String getFieldName(int number) {
+            return number > 0 && number < FIELD_NAMES.length ? FIELD_NAMES[number] : null;
+        }
+
+        @Override
+        public int getFieldNumber(String name) {
+            for (int i = 1; i < FIELD_NAMES.length; i++) {
+                if (FIELD_NAMES[i].equals(name)) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public boolean isInitialized(Task task) {
+            return true;
+        }
+
+        @Override
+        public Task newMessage() {
+            return new Task();
+        }
+
+        @Override
+        public String messageName() {
+            return Task.class.getSimpleName();
+        }
+
+        @Override
+        public String messageFullName() {
+            return Task.class.getName();
+        }
+
+        @Override
+        public Class<? super Task> typeClass() {
+            return Task.class;
+        }
+
+        @Override
+        public void mergeFrom(Input input, Task task) throws IOException {
+            for (int number = input.readFieldNumber(this); number != 0; number = input.readFieldNumber(this)) {
+                switch (number) {
+                    case 1:
+                        task.setTaskId(input.readInt64());
+                        break;
+                    case 2:
+                        task.setTaskType(input.readInt32());
+                        break;
+                    case 3:
+                        task.setPriority(input.readInt32());
+                        break;
+                    case 4:
+                        task.setExecuteTime(input.readInt64());
+                        break;
+                    case 5:
+                        task.setParameters(input.readByteArray());
+                        break;
+                    default:
+                        input.handleUnknownField(number, this);
+                }
+            }
+        }
+
+        @Override
+        public void writeTo(Output output, Task task) throws IOException {
+            if (task.getTaskId() != null) {
+                output.writeInt64(1, task.getTaskId(), false);
+            }
+            if (task.getTaskType() != null) {
+                output.writeInt32(2, task.getTaskType(), false);
+            }
+            if (task.getPriority() != null) {
+                output.writeInt32(3, task.getPriority(), false);
+            }
+            output.writeInt64(4, task.getExecuteTime(), false);
+            if (task.getParameters() != null) {
+                output.writeByteArray(5, task.getParameters(), false);
+            }
+        }
+    }
+}